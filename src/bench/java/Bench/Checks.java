@@ -0,0 +1,40 @@
+package Bench;
+
+/**
+ * The checks made by a check or benchmark run. Every check is printed as it
+ * is made, and the run exits with a failure status if one of them failed.
+ */
+public class Checks {
+
+    /**
+     * Number of checks that failed
+     */
+    private int failed;
+
+    /**
+     * Print the outcome of a check.
+     * @param name What is checked
+     * @param passed If the check passed
+     */
+    public synchronized void check(String name, boolean passed) {
+        System.out.println((passed ? "PASS " : "FAIL ") + name);
+        if (!passed) {
+            failed++;
+        }
+    }
+
+    /**
+     * Check if every check so far passed.
+     * @return If no check failed
+     */
+    public synchronized boolean passed() {
+        return failed == 0;
+    }
+
+    /**
+     * Exit with a failure status if a check failed.
+     */
+    public void exit() {
+        System.exit(passed() ? 0 : 1);
+    }
+}
@@ -0,0 +1,78 @@
+package Controller;
+
+import Controller.Request.Request;
+import Model.Book.BookDB;
+import Model.Checkout.CheckoutDB;
+import Model.Library.LibrarySystem;
+import Model.Library.ReportGenerator;
+import Model.Library.TimeKeeper;
+import Model.Visitor.VisitorDB;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how requests sent in many fragments are joined. A buy request
+ * is parsed one ISBN fragment at a time, several rounds in a row, and the
+ * time and memory allocated by every round are printed. Only the parser is
+ * run, the joined request is not performed.
+ * Usage: FragmentStress [FRAGMENTS] [ROUNDS]
+ * with 10000 fragments and 3 rounds by default.
+ */
+public class FragmentStress {
+
+    /**
+     * Defaults of the measurement
+     */
+    private static final int DEFAULT_FRAGMENTS = 10000;
+    private static final int DEFAULT_ROUNDS = 3;
+    /**
+     * Fragments of the request, the last one completes it
+     */
+    private static final String FIRST = "0,buy,1";
+    private static final String FRAGMENT = "0,,9781781100486";
+    private static final String LAST = "0,;";
+
+    /**
+     * Parse fragmented requests and print the cost of each one.
+     * @param args Number of fragments and number of rounds
+     */
+    public static void main(String[] args) {
+        int fragments = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAGMENTS;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        TimeKeeper timeKeeper = new TimeKeeper();
+        ReportGenerator reportGenerator = new ReportGenerator(timeKeeper, BookDB.getInstance(),
+                VisitorDB.getInstance(), CheckoutDB.getInstance());
+        RequestParser parser = new RequestParser(new LibrarySystem(VisitorDB.getInstance(),
+                timeKeeper, reportGenerator), timeKeeper, reportGenerator);
+        for (int round = 0; round < rounds; round++) {
+            long before = allocatedBytes();
+            long start = System.nanoTime();
+            parser.processRequest(FIRST);
+            for (int i = 0; i < fragments; i++) {
+                parser.processRequest(FRAGMENT);
+            }
+            Request request = parser.processRequest(LAST);
+            long elapsed = System.nanoTime() - start;
+            long allocated = before < 0 ? -1 : allocatedBytes() - before;
+            System.out.printf("Fragments: %d, Time (ms): %d, Allocated (MB): %s, Request: %s%n",
+                    fragments, elapsed / 1000000, allocated < 0 ? "n/a" : allocated >> 20,
+                    request.getClass().getSimpleName());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Get the bytes allocated by the current thread so far.
+     * @return The allocated bytes or a negative number if the JVM does not
+     *         count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
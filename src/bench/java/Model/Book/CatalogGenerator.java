@@ -0,0 +1,104 @@
+package Model.Book;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes a synthetic books file in the format of the bookstore catalog, to
+ * measure how long the bookstore takes to load a large catalog.
+ * Usage: CatalogGenerator LINES FILE
+ */
+public class CatalogGenerator {
+
+    /**
+     * Words the titles, authors and publishers are made of
+     */
+    private static final String[] WORDS = {
+            "Running", "Harry", "Potter", "Dream", "Garden", "History", "Secret",
+            "River", "Stone", "Winter", "Kitchen", "Ocean", "Night", "Light",
+            "Mountain", "City", "Letters", "Journey", "Science", "Machine",
+            "Shadow", "Empire", "Silence", "Fire", "Island", "Music", "Bola\u00f1o"
+    };
+    /**
+     * First ISBN given to a generated book
+     */
+    private static final long FIRST_ISBN = 9790000000000L;
+
+    /**
+     * Write the given number of books to a file.
+     * @param args Number of lines and the file to write
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogGenerator LINES FILE");
+            System.exit(1);
+        }
+        try {
+            generate(Long.parseLong(args[0]), new File(args[1]));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the given number of books to a file. The same number of lines
+     * always gives the same file.
+     * @param lines Number of books
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    static void generate(long lines, File file) throws IOException {
+        Random random = new Random(lines);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder();
+            for (long i = 0; i < lines; i++) {
+                line.setLength(0);
+                line.append(FIRST_ISBN + i).append(",\"");
+                words(line, random, 1 + random.nextInt(5));
+                if (random.nextInt(4) == 0) {
+                    line.append(", ");
+                    words(line, random, 1 + random.nextInt(3));
+                }
+                line.append("\",{");
+                int authors = 1 + random.nextInt(3);
+                for (int a = 0; a < authors; a++) {
+                    if (a > 0) {
+                        line.append(", ");
+                    }
+                    words(line, random, 2);
+                }
+                line.append("},\"");
+                words(line, random, 1 + random.nextInt(2));
+                line.append("\",").append(1900 + random.nextInt(120));
+                if (random.nextBoolean()) {
+                    line.append(String.format("-%02d-%02d", 1 + random.nextInt(12),
+                            1 + random.nextInt(28)));
+                }
+                line.append(',').append(20 + random.nextInt(900)).append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Append random words separated by spaces.
+     * @param line The line to append to
+     * @param random The source of the words
+     * @param count Number of words
+     */
+    private static void words(StringBuilder line, Random random, int count) {
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                line.append(' ');
+            }
+            line.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package Model.Book;
+
+import Bench.Checks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Checks from many threads at once that copies of a book are never lost or
+ * lent more than once, then measures borrowing a popular title under
+ * contention. Prints every check and the cost of a borrow and return for
+ * each number of threads, and exits with a failure status if a check fails.
+ * Usage: CopyStress [THREADS]
+ * with 8 threads by default.
+ */
+public class CopyStress {
+
+    /**
+     * Defaults of the run
+     */
+    private static final int DEFAULT_THREADS = 8;
+    /**
+     * Trials of the races for the last copies and copies of their book
+     */
+    private static final int RACE_TRIALS = 20000;
+    private static final int RACE_COPIES = 3;
+    /**
+     * Trials of the races to borrow two books and copies of the scarce one
+     */
+    private static final int BORROW_TRIALS = 2000;
+    private static final int SCARCE_COPIES = 5;
+    /**
+     * Copies and operations of the mixed run and the benchmark
+     */
+    private static final int POPULAR_COPIES = 1000;
+    private static final int OPERATIONS = 2000000;
+
+    /**
+     * The checks made so far
+     */
+    private Checks checks = new Checks();
+
+    /**
+     * Run the checks and the benchmark.
+     * @param args Number of threads
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        CopyStress stress = new CopyStress();
+        try {
+            stress.checkLastCopies(threads);
+            stress.checkBorrow(threads);
+            stress.checkMixed(threads);
+            for (int n = 1; n <= threads; n *= 2) {
+                System.out.println(benchmark(n));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        stress.checks.exit();
+    }
+
+    /**
+     * Threads that start at once each try to take two copies of a book with
+     * fewer copies than that. Exactly the copies of the book are taken.
+     * @param threads Number of threads
+     * @throws Exception If a thread cannot be started or joined
+     */
+    private void checkLastCopies(int threads) throws Exception {
+        int wrong = 0;
+        for (int trial = 0; trial < RACE_TRIALS; trial++) {
+            BookInfo book = book("1", RACE_COPIES);
+            AtomicInteger taken = new AtomicInteger();
+            CyclicBarrier start = new CyclicBarrier(threads);
+            run(threads, thread -> {
+                await(start);
+                for (int i = 0; i < 2; i++) {
+                    if (book.checkOutCopy()) {
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            if (taken.get() != RACE_COPIES || book.getTotalCopiesAvailable() != 0 ||
+                    book.getTotalCopies() != RACE_COPIES) {
+                wrong++;
+            }
+        }
+        checks.check("last copies are taken exactly once (" + RACE_TRIALS + " trials)", wrong == 0);
+    }
+
+    /**
+     * Threads borrow a plentiful and a scarce book together. Once the scarce
+     * book runs out, the plentiful copy taken with it is given back.
+     * @param threads Number of threads
+     * @throws Exception If a thread cannot be started or joined
+     */
+    private void checkBorrow(int threads) throws Exception {
+        BookDB bookDB = BookDB.getInstance();
+        List<String> bookIDs = Arrays.asList("1", "2");
+        int wrong = 0;
+        for (int trial = 0; trial < BORROW_TRIALS; trial++) {
+            BookInfo plentiful = book("1", POPULAR_COPIES);
+            BookInfo scarce = book("2", SCARCE_COPIES);
+            SearchResult search = new SearchResult(Arrays.asList(plentiful, scarce), 1);
+            AtomicInteger borrowed = new AtomicInteger();
+            CyclicBarrier start = new CyclicBarrier(threads);
+            run(threads, thread -> {
+                await(start);
+                for (int i = 0; i < SCARCE_COPIES; i++) {
+                    if (bookDB.borrowBooks(search, bookIDs) != null) {
+                        borrowed.incrementAndGet();
+                    }
+                }
+            });
+            if (borrowed.get() != SCARCE_COPIES || scarce.getTotalCopiesAvailable() != 0 ||
+                    plentiful.getTotalCopiesAvailable() != POPULAR_COPIES - SCARCE_COPIES) {
+                wrong++;
+            }
+        }
+        checks.check("failed borrows give back their copies (" + BORROW_TRIALS + " trials)",
+                wrong == 0);
+    }
+
+    /**
+     * Threads borrow and return copies while another buys more. The copies
+     * available never leave the range of the copies owned, and every copy
+     * is back once all threads are done.
+     * @param threads Number of threads
+     * @throws Exception If a thread cannot be started or joined
+     */
+    private void checkMixed(int threads) throws Exception {
+        BookInfo book = book("1", POPULAR_COPIES);
+        AtomicInteger outOfRange = new AtomicInteger();
+        AtomicLong added = new AtomicLong();
+        int perThread = OPERATIONS / threads;
+        run(threads, thread -> {
+            List<Integer> held = new ArrayList<>();
+            for (int i = 0; i < perThread; i++) {
+                if (thread == 0 && i % 1000 == 0) {
+                    book.addCopy(1);
+                    added.incrementAndGet();
+                }
+                // Hold a few copies at a time so the book runs out now and then
+                if (held.size() < POPULAR_COPIES / threads && book.checkOutCopy()) {
+                    held.add(i);
+                }
+                else if (!held.isEmpty()) {
+                    held.remove(held.size() - 1);
+                    book.returnCopy();
+                }
+                int available = book.getTotalCopiesAvailable();
+                if (available < 0 || available > book.getTotalCopies()) {
+                    outOfRange.incrementAndGet();
+                }
+            }
+            for (int i = 0; i < held.size(); i++) {
+                book.returnCopy();
+            }
+        });
+        checks.check("available copies stay within the copies owned", outOfRange.get() == 0);
+        checks.check("no copies are lost", book.getTotalCopiesAvailable() == POPULAR_COPIES &&
+                book.getTotalCopies() == POPULAR_COPIES + added.get());
+    }
+
+    /**
+     * Borrow and return a copy of one book from several threads.
+     * @param threads Number of threads
+     * @return The number of threads and the cost of a borrow and return
+     * @throws Exception If a thread cannot be started or joined
+     */
+    private static String benchmark(int threads) throws Exception {
+        BookInfo book = book("1", POPULAR_COPIES);
+        int perThread = OPERATIONS / threads;
+        long start = System.nanoTime();
+        run(threads, thread -> {
+            for (int i = 0; i < perThread; i++) {
+                if (book.checkOutCopy()) {
+                    book.returnCopy();
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        return String.format("Threads: %d, Borrow and Return (ns): %.1f, Throughput (ops/ms): %.0f",
+                threads, elapsed / (double) (perThread * threads),
+                perThread * threads / (elapsed / 1e6));
+    }
+
+    /**
+     * Run a task on several threads and wait for all of them.
+     * @param threads Number of threads
+     * @param task The task each thread runs, given the index of the thread
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static void run(int threads, IntConsumer task) throws InterruptedException {
+        Thread[] started = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            started[t] = new Thread(() -> task.accept(index), "copy-stress-" + t);
+            started[t].start();
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Wait for the other threads of a race.
+     * @param start The barrier of the race
+     */
+    private static void await(CyclicBarrier start) {
+        try {
+            start.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Create a book owned by the library.
+     * @param isbn The ISBN of the book
+     * @param copies The copies owned
+     * @return The book
+     */
+    private static BookInfo book(String isbn, int copies) {
+        return new BookInfo(new BookInfo(isbn, "Title", Arrays.asList("Author"), "Publisher",
+                "2000", 1), copies);
+    }
+}
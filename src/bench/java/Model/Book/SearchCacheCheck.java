@@ -0,0 +1,331 @@
+package Model.Book;
+
+import Bench.Checks;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the search cache and the API bookstore against a stub web service
+ * on a local port, which answers every search with one book named after the
+ * query, or trickles a response that never ends. The cache files are kept
+ * in a temporary directory that is deleted afterwards. Prints every check
+ * and exits with a failure status if one of them fails.
+ * Usage: SearchCacheCheck
+ */
+public class SearchCacheCheck {
+
+    /**
+     * Limits of the caches that are checked
+     */
+    private static final long MAX_BYTES = 1L << 20;
+    private static final long MAX_DISK_BYTES = 4096;
+    private static final long TTL_MILLIS = 60 * 1000;
+    private static final long SHORT_TTL_MILLIS = 200;
+    /**
+     * Threads and operations of the concurrent check
+     */
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 500;
+    /**
+     * Longest a search of a stalled response may take, a little over the
+     * search timeout of the store, and the time between trickled bytes
+     */
+    private static final long STALL_LIMIT_MILLIS = 10000;
+    private static final long TRICKLE_MILLIS = 200;
+
+    /**
+     * Number of requests the stub web service answered
+     */
+    private AtomicInteger requests = new AtomicInteger();
+    /**
+     * Counted down once the client closes a stalled response
+     */
+    private CountDownLatch stallClosed = new CountDownLatch(1);
+    /**
+     * The checks made so far
+     */
+    private Checks checks = new Checks();
+
+    /**
+     * Run the checks.
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        SearchCacheCheck check = new SearchCacheCheck();
+        try {
+            check.run();
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        check.checks.exit();
+    }
+
+    /**
+     * Start the stub web service and run every check against it.
+     * @throws IOException If the stub or the temporary directory cannot be
+     *                     created
+     * @throws InterruptedException If interrupted while waiting
+     * @throws ExecutionException If a search fails instead of completing
+     */
+    private void run() throws IOException, InterruptedException, ExecutionException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // A stalled response must not hold up the other responses
+        ExecutorService handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/volumes", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = volumes(exchange.getRequestURI().getQuery())
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stalled", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (true) {
+                    out.write(' ');
+                    out.flush();
+                    Thread.sleep(TRICKLE_MILLIS);
+                }
+            } catch (IOException | InterruptedException e) {
+                stallClosed.countDown();
+            }
+        });
+        server.start();
+        String address = "http://127.0.0.1:" + server.getAddress().getPort();
+        File directory = File.createTempFile("search-cache", "");
+        try {
+            directory.delete();
+            directory.mkdirs();
+            checkStore(address + "/volumes");
+            checkStalled(address + "/stalled");
+            checkDiskLimit(directory);
+            checkRestart(directory);
+            checkExpiry(directory);
+            checkConcurrent(directory);
+        } finally {
+            server.stop(0);
+            handlers.shutdownNow();
+            clear(directory);
+            directory.delete();
+        }
+    }
+
+    /**
+     * Searches that differ only in case are answered by the cache after
+     * the first one reaches the web service.
+     * @param url Address of the stub volumes search
+     */
+    private void checkStore(String url) {
+        BookAPIStore store = new BookAPIStore(url);
+        List<String> authors = new ArrayList<>();
+        SearchResult first = store.searchBooks("Dune", authors, "*", "*", "title", 0, 10);
+        SearchResult second = store.searchBooks("DUNE", authors, "*", "*", "title", 0, 10);
+        checks.check("store searches the web service once", requests.get() == 1);
+        checks.check("store answers from the cache", first.size() == 1 && second.size() == 1 &&
+                first.getBook(0).getIsbn().equals(second.getBook(0).getIsbn()));
+    }
+
+    /**
+     * A response that keeps sending bytes but never ends fails the search
+     * at the search timeout, and the connection to it is closed.
+     * @param url Address of the stalled volumes search
+     * @throws InterruptedException If interrupted while waiting
+     * @throws ExecutionException If the search fails instead of completing
+     */
+    private void checkStalled(String url) throws InterruptedException, ExecutionException {
+        BookAPIStore store = new BookAPIStore(url);
+        long start = System.nanoTime();
+        CompletableFuture<SearchResult> search = store.searchBooksAsync("Stalled",
+                new ArrayList<>(), "*", "*", "title", 0, 10);
+        SearchResult result;
+        try {
+            result = search.get(STALL_LIMIT_MILLIS * 2, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result = null;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        checks.check("stalled search completes with no books",
+                result != null && result.size() == 0);
+        checks.check("stalled search completes within the timeout (" + elapsed + " ms)",
+                elapsed <= STALL_LIMIT_MILLIS);
+        checks.check("stalled response is disconnected",
+                stallClosed.await(STALL_LIMIT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * The oldest files are deleted once the directory holds too many bytes,
+     * and entries evicted from memory are still found on disk.
+     * @param directory The cache directory
+     */
+    private void checkDiskLimit(File directory) {
+        SearchCache cache = new SearchCache(directory, 1, MAX_BYTES, MAX_DISK_BYTES, TTL_MILLIS);
+        for (int i = 0; i < 20; i++) {
+            cache.put("query " + i, books("query " + i));
+        }
+        checks.check("disk limit is kept", size(directory) <= MAX_DISK_BYTES);
+        checks.check("oldest files are deleted", cache.get("query 0") == null);
+        List<BookInfo> evicted = cache.get("query 18");
+        checks.check("evicted entries are read from disk", evicted != null &&
+                evicted.get(0).getTitle().equals("query 18"));
+    }
+
+    /**
+     * A new cache finds the files left by the previous one.
+     * @param directory The cache directory
+     */
+    private void checkRestart(File directory) {
+        SearchCache cache = new SearchCache(directory, 1, MAX_BYTES, MAX_DISK_BYTES, TTL_MILLIS);
+        checks.check("files are kept across restarts", cache.get("query 19") != null);
+        checks.check("restart keeps the disk limit", size(directory) <= MAX_DISK_BYTES);
+    }
+
+    /**
+     * Expired entries are not returned and their files are deleted, both
+     * when they are looked up and when a cache is created.
+     * @param directory The cache directory
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void checkExpiry(File directory) throws InterruptedException {
+        clear(directory);
+        SearchCache cache = new SearchCache(directory, 1, MAX_BYTES, MAX_DISK_BYTES,
+                SHORT_TTL_MILLIS);
+        cache.put("expiring", books("expiring"));
+        cache.put("evicted", books("evicted"));
+        Thread.sleep(SHORT_TTL_MILLIS * 2);
+        checks.check("expired entries are missed", cache.get("expiring") == null);
+        checks.check("expired files are deleted on lookup", fileCount(directory) == 1);
+        new SearchCache(directory, 1, MAX_BYTES, MAX_DISK_BYTES, SHORT_TTL_MILLIS);
+        checks.check("expired files are deleted on restart", fileCount(directory) == 0);
+    }
+
+    /**
+     * Threads that search and cache the same queries at once leave every
+     * listed file readable and the directory within the disk limit.
+     * @param directory The cache directory
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void checkConcurrent(File directory) throws InterruptedException {
+        clear(directory);
+        SearchCache cache = new SearchCache(directory, 4, MAX_BYTES, MAX_DISK_BYTES, TTL_MILLIS);
+        List<String> wrong = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    String query = "shared " + (i * 7 + seed) % 32;
+                    List<BookInfo> books = cache.get(query);
+                    if (books == null) {
+                        cache.put(query, books(query));
+                    }
+                    else if (!books.get(0).getTitle().equals(query)) {
+                        wrong.add(query);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        checks.check("concurrent lookups return their own query", wrong.isEmpty());
+        checks.check("concurrent writes keep the disk limit", size(directory) <= MAX_DISK_BYTES);
+        SearchCache restarted = new SearchCache(directory, 4, MAX_BYTES, MAX_DISK_BYTES,
+                TTL_MILLIS);
+        int found = 0;
+        for (int i = 0; i < 32; i++) {
+            if (restarted.get("shared " + i) != null) {
+                found++;
+            }
+        }
+        checks.check("concurrent writes leave only readable files", found == fileCount(directory));
+    }
+
+
+    /**
+     * Create the response of the stub web service, one book named after the
+     * query that is for sale in the US.
+     * @param query The query of the request
+     * @return The JSON response
+     */
+    private static String volumes(String query) {
+        String title = query.replaceAll("[^A-Za-z0-9 ]", "");
+        return "{\"items\":[{\"volumeInfo\":{\"title\":\"" + title + "\"," +
+                "\"authors\":[\"Stub\"],\"publisher\":\"Stub\",\"publishedDate\":\"2000\"," +
+                "\"pageCount\":100,\"industryIdentifiers\":[{\"type\":\"ISBN_13\"," +
+                "\"identifier\":\"" + String.format("%013d", Math.abs((long) title.hashCode())) +
+                "\"}]},\"saleInfo\":{\"country\":\"US\",\"saleability\":\"FOR_SALE\"}}]}";
+    }
+
+    /**
+     * Create the books found by a query.
+     * @param query The query
+     * @return One book titled after the query
+     */
+    private static List<BookInfo> books(String query) {
+        List<BookInfo> books = new ArrayList<>();
+        books.add(new BookInfo(String.format("%013d", Math.abs((long) query.hashCode())), query,
+                new ArrayList<>(Arrays.asList("Stub")), "Stub", "2000", 100));
+        return books;
+    }
+
+    /**
+     * Count the cache files in a directory.
+     * @param directory The directory
+     * @return The number of files
+     */
+    private static int fileCount(File directory) {
+        File[] files = directory.listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    /**
+     * Add up the sizes of the files in a directory.
+     * @param directory The directory
+     * @return The total size in bytes
+     */
+    private static long size(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Delete the files in a directory.
+     * @param directory The directory
+     */
+    private static void clear(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package Model.Book;
+
+import Bench.Checks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares sorting search hits through the sorted views of the book index
+ * with sorting the hits by their comparator, and building the views in bulk
+ * with adding the books one at a time. Every operation is warmed up, then
+ * timed over several iterations, and the mean and standard deviation are
+ * printed. The sorted hits are checked against the comparator sort.
+ * Usage: SortBench [BOOKS]
+ * with 100000 books by default, all of them hits.
+ */
+public class SortBench {
+
+    /**
+     * Defaults of the run
+     */
+    private static final int DEFAULT_BOOKS = 100000;
+    /**
+     * Iterations before and while measuring
+     */
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+    /**
+     * Hits needed by a paged search
+     */
+    private static final int PAGE = 10;
+    /**
+     * Words the titles are made of
+     */
+    private static final String[] WORDS = {
+            "Running", "Harry", "Potter", "Dream", "Garden", "History", "Secret",
+            "River", "Stone", "Winter", "Kitchen", "Ocean", "Night", "Light"
+    };
+
+    /**
+     * Result of the operations, kept so they are not optimized away
+     */
+    private static long sink;
+
+    /**
+     * Run the comparison.
+     * @param args Number of books
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOOKS;
+        List<BookInfo> books = books(count);
+        BookIndex index = new BookIndex();
+        index.addAll(books);
+        Comparator<BookInfo> titleOrder = new TitleComparator();
+        Comparator<BookInfo> publishDateOrder = new PublishDateComparator();
+
+        Checks checks = new Checks();
+        checks.check("views sort like the comparators",
+                index.sortByTitle(new ArrayList<>(books), count)
+                        .equals(sorted(books, titleOrder, count)) &&
+                index.sortByPublishDate(new ArrayList<>(books), count)
+                        .equals(sorted(books, publishDateOrder, count)));
+
+        measure("Build views in bulk", () -> {
+            BookIndex built = new BookIndex();
+            built.addAll(books);
+            return built;
+        });
+        measure("Build views one book at a time", () -> {
+            BookIndex built = new BookIndex();
+            for (BookInfo book : books) {
+                built.add(book);
+            }
+            return built;
+        });
+        for (int needed : new int[]{PAGE, count}) {
+            measure("Title, " + needed + " of " + count + " hits, view",
+                    () -> index.sortByTitle(new ArrayList<>(books), needed));
+            measure("Title, " + needed + " of " + count + " hits, comparator",
+                    () -> sorted(books, titleOrder, needed));
+            measure("Date, " + needed + " of " + count + " hits, view",
+                    () -> index.sortByPublishDate(new ArrayList<>(books), needed));
+            measure("Date, " + needed + " of " + count + " hits, comparator",
+                    () -> sorted(books, publishDateOrder, needed));
+        }
+        checks.exit();
+    }
+
+    /**
+     * Time an operation and print its mean and standard deviation.
+     * @param name Name of the operation
+     * @param operation The operation
+     */
+    private static void measure(String name, Supplier<Object> operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += System.identityHashCode(operation.get());
+        }
+        double[] millis = new double[ITERATIONS];
+        double sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            sink += System.identityHashCode(operation.get());
+            millis[i] = (System.nanoTime() - start) / 1e6;
+            sum += millis[i];
+        }
+        double mean = sum / ITERATIONS;
+        double squares = 0;
+        for (double time : millis) {
+            squares += (time - mean) * (time - mean);
+        }
+        System.out.printf("%-45s %10.3f ms/op +- %.3f%n", name, mean,
+                Math.sqrt(squares / (ITERATIONS - 1)));
+    }
+
+    /**
+     * Sort hits by a comparator, as searches did before the views.
+     * @param hits The hits
+     * @param order The order of the hits
+     * @param count Number of leading hits needed
+     * @return The leading hits
+     */
+    private static List<BookInfo> sorted(List<BookInfo> hits, Comparator<BookInfo> order,
+                                         int count) {
+        List<BookInfo> copy = new ArrayList<>(hits);
+        copy.sort(order);
+        return copy.subList(0, count);
+    }
+
+    /**
+     * Create books with random titles and publish dates. The same number of
+     * books always gives the same books.
+     * @param count Number of books
+     * @return The books
+     */
+    private static List<BookInfo> books(int count) {
+        Random random = new Random(count);
+        List<BookInfo> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(' ');
+                }
+                title.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            String date = (1900 + random.nextInt(120)) + (random.nextBoolean() ? "" :
+                    String.format("-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            books.add(new BookInfo(String.valueOf(9790000000000L + i), title.toString(),
+                    Arrays.asList("Author"), "Publisher", date, 100));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,144 @@
+package Model.Checkout;
+
+import Controller.Request.ResponseWriter;
+import Model.Book.BookInfo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of the checkout ledgers from several threads.
+ * Each thread has its own visitors, who borrow three books, check their
+ * fines, list their borrowed books and return the books. The cycles are
+ * then run again by threads that share one visitor, so their borrows race
+ * for the book limit and only one of them succeeds at a time. Prints the
+ * cycles per second for each number of threads, the loans that were lost
+ * and the borrows that exceeded the book limit.
+ * Usage: CheckoutThroughput [THREADS...]
+ * with 1, 2, 4 and 8 threads by default.
+ */
+public class CheckoutThroughput {
+
+    /**
+     * Cycles run at every number of threads
+     */
+    private static final int CYCLES = 400000;
+    /**
+     * Visitors of each thread
+     */
+    private static final int VISITORS = 1000;
+    /**
+     * Visitors shared by all threads, one so their borrows race as often as possible
+     */
+    private static final int SHARED_VISITORS = 1;
+    /**
+     * First visitor ID of the threads and of the shared visitors
+     */
+    private static final int FIRST_VISITOR = 1000000000;
+    private static final int FIRST_SHARED_VISITOR = 2000000000;
+    /**
+     * Books borrowed in every cycle
+     */
+    private static final int BOOKS = 3;
+    /**
+     * Open loans a visitor who already borrowed never reaches by borrowing
+     */
+    private static final int BOOK_LIMIT = 5;
+
+    /**
+     * Run the cycles for each number of threads.
+     * @param args Numbers of threads
+     */
+    public static void main(String[] args) {
+        int[] threads = args.length == 0 ? new int[]{1, 2, 4, 8} :
+                Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        List<BookInfo> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            // Enough copies that no cycle runs out
+            books.add(new BookInfo(new BookInfo("isbn" + i, "Title " + i,
+                    Arrays.asList("Author"), "Publisher", "2000", 1), 1 << 30));
+        }
+        int wrong = 0;
+        try {
+            for (boolean shared : new boolean[]{false, true}) {
+                for (int n : threads) {
+                    wrong += run(n, books, shared);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(wrong == 0 ? 0 : 1);
+    }
+
+    /**
+     * Run the cycles on several threads and print their throughput.
+     * @param threads Number of threads
+     * @param books The books borrowed in every cycle
+     * @param shared If the threads share their visitors
+     * @return The number of loans that were lost or exceeded the book limit
+     * @throws Exception If a thread fails
+     */
+    private static int run(int threads, List<BookInfo> books, boolean shared) throws Exception {
+        CheckoutDB checkoutDB = CheckoutDB.getInstance();
+        LocalDateTime borrowed = LocalDateTime.of(2020, 1, 1, 9, 0);
+        LocalDateTime returned = borrowed.plusDays(1);
+        int perThread = CYCLES / threads;
+        int visitors = shared ? SHARED_VISITORS : VISITORS;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<int[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = shared ? FIRST_SHARED_VISITOR : FIRST_VISITOR + t * VISITORS;
+            results.add(pool.submit(() -> {
+                // Loans lost, borrows over the limit and borrows refused
+                int[] counts = new int[3];
+                for (int i = 0; i < perThread; i++) {
+                    String visitorID = String.valueOf(first + i % visitors);
+                    if (checkoutDB.checkout(borrowed, visitorID, books) == null) {
+                        counts[2]++;
+                        continue;
+                    }
+                    checkoutDB.hasOutstandingFine(visitorID);
+                    int borrowedBooks = checkoutDB.findBorrowedBooks(visitorID,
+                            ResponseWriter.begin()).size();
+                    if (borrowedBooks < BOOKS) {
+                        counts[0]++;
+                    }
+                    else if (borrowedBooks >= BOOK_LIMIT) {
+                        counts[1]++;
+                    }
+                    for (BookInfo book : books) {
+                        if (checkoutDB.returnBook(returned, visitorID, book.getIsbn()) == null) {
+                            counts[0]++;
+                        }
+                    }
+                }
+                return counts;
+            }));
+        }
+        int[] counts = new int[3];
+        for (Future<int[]> result : results) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += result.get()[i];
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        System.out.printf("Threads: %d, Visitors: %s, Cycles: %d, Throughput (cycles/s): %.0f, " +
+                        "Refused: %d, Lost: %d, Over limit: %d%n",
+                threads, shared ? "shared" : "own", perThread * threads,
+                perThread * threads / (elapsed / 1e9), counts[2], counts[0], counts[1]);
+        if (!shared && counts[2] > 0) {
+            // Visitors of their own thread never reach the limit
+            return counts[2];
+        }
+        return counts[0] + counts[1];
+    }
+}
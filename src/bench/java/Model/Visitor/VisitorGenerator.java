@@ -0,0 +1,121 @@
+package Model.Visitor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes a synthetic CSV file of visitors in the format read by
+ * VisitorImporter, to measure how long a large import takes. About one row
+ * in fifty repeats an earlier visitor with different case, spacing and
+ * phone formatting, and about one in a thousand is malformed.
+ * Usage: VisitorGenerator ROWS FILE
+ */
+public class VisitorGenerator {
+
+    /**
+     * First names of the visitors
+     */
+    private static final String[] FIRST_NAMES = {
+            "Ana", "Luis", "Michael", "Priya", "Chen", "Fatima", "Jos\u00e9", "Olga",
+            "Kwame", "Sofia", "Liam", "Noor", "Hiroshi", "Emma", "Mateo", "Zainab"
+    };
+    /**
+     * Last names of the visitors
+     */
+    private static final String[] LAST_NAMES = {
+            "Gutierrez", "Kha", "Smith", "Nakamura", "Okafor", "Rossi", "Novak",
+            "Haddad", "Kim", "Silva", "Johansson", "Patel", "M\u00fcller", "Garcia"
+    };
+    /**
+     * Streets of the addresses
+     */
+    private static final String[] STREETS = {
+            "Main St", "Lomb Memorial Dr", "Park Ave", "East Ave", "Lake Rd",
+            "University Ave", "Monroe Ave", "Elm St"
+    };
+
+    /**
+     * Write the given number of visitors to a file.
+     * @param args Number of rows and the file to write
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: VisitorGenerator ROWS FILE");
+            System.exit(1);
+        }
+        try {
+            generate(Long.parseLong(args[0]), new File(args[1]));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the given number of visitors to a file. The same number of rows
+     * always gives the same file, and visitors that are not repeated are
+     * told apart by their phone numbers.
+     * @param rows Number of visitors
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    static void generate(long rows, File file) throws IOException {
+        Random random = new Random(rows);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write("firstName,lastName,address,phoneNumber\n");
+            StringBuilder line = new StringBuilder();
+            long visitors = 0;
+            for (long i = 0; i < rows; i++) {
+                line.setLength(0);
+                int kind = random.nextInt(1000);
+                if (kind == 0) {
+                    line.append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(",\"unclosed\n");
+                }
+                else if (kind < 20 && visitors > 0) {
+                    visitor(line, Math.floorMod(random.nextLong(), visitors), true);
+                }
+                else {
+                    visitor(line, visitors++, false);
+                }
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Append the row of a visitor, or the row written the way someone else
+     * would write it: in upper case, with spaces around the fields and the
+     * phone number in another format.
+     * @param line The line to append to
+     * @param visitor Number of the visitor
+     * @param retyped If the row is written the other way
+     */
+    private static void visitor(StringBuilder line, long visitor, boolean retyped) {
+        Random random = new Random(visitor);
+        String separator = retyped ? " , " : ",";
+        String phone = phone(visitor);
+        String row = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + separator +
+                LAST_NAMES[random.nextInt(LAST_NAMES.length)] + separator + "\"" +
+                (1 + random.nextInt(9999)) + ' ' + STREETS[random.nextInt(STREETS.length)] +
+                ", Rochester\"" + separator +
+                (retyped ? "(" + phone.substring(0, 3) + ") " + phone.substring(4) : phone);
+        line.append(retyped ? row.toUpperCase() : row).append('\n');
+    }
+
+    /**
+     * Get the phone number of a visitor.
+     * @param visitor Number of the visitor
+     * @return A phone number that no other visitor has
+     */
+    private static String phone(long visitor) {
+        long number = 2000000000L + visitor;
+        return String.format("%03d-%03d-%04d", number / 10000000, number / 10000 % 1000,
+                number % 10000);
+    }
+}
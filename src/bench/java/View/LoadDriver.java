@@ -0,0 +1,237 @@
+package View;
+
+import Controller.Request.RequestUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a server running in network mode. Every
+ * simulated client opens its own connection from one selector thread,
+ * connects, then sends the next request as soon as the previous one is
+ * answered, until the time is up.
+ * Usage: LoadDriver HOST PORT CLIENTS SECONDS [REQUEST]
+ * where REQUEST is the command and parameters sent after the client ID,
+ * datetime by default.
+ */
+public class LoadDriver implements RequestUtil {
+
+    /**
+     * Connections that may be opening at the same time, so the server's
+     * accept backlog does not overflow
+     */
+    private static final int MAX_OPENING = 64;
+    /**
+     * Bytes read at a time from a connection
+     */
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    /**
+     * Address of the server
+     */
+    private InetSocketAddress address;
+    /**
+     * The request sent after the client ID
+     */
+    private String request;
+    /**
+     * Selector that multiplexes the clients
+     */
+    private Selector selector;
+    /**
+     * Clients that have a client ID
+     */
+    private int connected;
+    /**
+     * Requests answered and their total latency since the measurement began
+     */
+    private long answered;
+    private long latencyNanos;
+    /**
+     * If the measurement began, once every client has a client ID
+     */
+    private boolean measuring;
+
+    /**
+     * Create a driver for a server.
+     * @param address Address of the server
+     * @param request The request sent after the client ID
+     */
+    public LoadDriver(InetSocketAddress address, String request) {
+        this.address = address;
+        this.request = request;
+    }
+
+    /**
+     * Run the given number of clients against a server and print the
+     * throughput.
+     * @param args Host, port, number of clients, seconds and the request
+     */
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: LoadDriver HOST PORT CLIENTS SECONDS [REQUEST]");
+            System.exit(1);
+        }
+        LoadDriver driver = new LoadDriver(new InetSocketAddress(args[0], Integer.parseInt(args[1])),
+                args.length == 5 ? args[4] : DATE_TIME_REQUEST);
+        try {
+            System.out.println(driver.run(Integer.parseInt(args[2]), Integer.parseInt(args[3])));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Connect the clients, send requests for the given time once all of
+     * them are connected, and close them.
+     * @param clients Number of clients
+     * @param seconds Seconds to send requests for
+     * @return The number of requests answered, the throughput and the
+     *         mean latency
+     * @throws IOException If the selector cannot be opened
+     */
+    public String run(int clients, int seconds) throws IOException {
+        selector = Selector.open();
+        List<Client> all = new ArrayList<>(clients);
+        int opening = 0;
+        long start = 0;
+        long end = Long.MAX_VALUE;
+        while (System.nanoTime() < end) {
+            while (all.size() < clients && opening < MAX_OPENING) {
+                all.add(open());
+                opening++;
+            }
+            if (!measuring && connected == clients) {
+                measuring = true;
+                start = System.nanoTime();
+                end = start + TimeUnit.SECONDS.toNanos(seconds);
+            }
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (key.isConnectable()) {
+                    ((SocketChannel) key.channel()).finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    client.send(CONNECT_REQUEST + TERMINATOR);
+                }
+                else if (key.isReadable() && read(client)) {
+                    if (client.clientID == null) {
+                        opening--;
+                    }
+                    answer(client);
+                }
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Client client : all) {
+            client.channel.close();
+        }
+        selector.close();
+        return "Clients: " + clients + ", Requests: " + answered +
+                String.format(", Throughput (req/s): %.0f, Mean Latency (ms): %.2f",
+                        answered / elapsed, answered == 0 ? 0 : latencyNanos / 1e6 / answered);
+    }
+
+    /**
+     * Start opening the connection of a new client.
+     * @return The client
+     * @throws IOException If the connection cannot be started
+     */
+    private Client open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        if (channel.connect(address)) {
+            channel.register(selector, SelectionKey.OP_READ, client);
+            client.send(CONNECT_REQUEST + TERMINATOR);
+        }
+        else {
+            channel.register(selector, SelectionKey.OP_CONNECT, client);
+        }
+        return client;
+    }
+
+    /**
+     * Read the available bytes of a client and check if its response is
+     * complete. Responses end with the terminator and a line break.
+     * @param client The client
+     * @return If a whole response was read
+     * @throws IOException If the connection cannot be read or was closed
+     */
+    private boolean read(Client client) throws IOException {
+        if (!client.in.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(client.in.capacity() * 2);
+            client.in.flip();
+            client.in = larger.put(client.in);
+        }
+        if (client.channel.read(client.in) < 0) {
+            throw new IOException("Server closed the connection");
+        }
+        String end = TERMINATOR + NEW_LINE;
+        int length = client.in.position();
+        if (length < end.length()) {
+            return false;
+        }
+        String tail = new String(client.in.array(), length - end.length(), end.length(),
+                StandardCharsets.UTF_8);
+        return tail.equals(end);
+    }
+
+    /**
+     * Take in the response of a client and send its next request.
+     * @param client The client whose response was read
+     * @throws IOException If the request cannot be sent
+     */
+    private void answer(Client client) throws IOException {
+        String response = new String(client.in.array(), 0, client.in.position(),
+                StandardCharsets.UTF_8).trim();
+        client.in.clear();
+        if (client.clientID == null) {
+            // connect,ID;
+            client.clientID = response.substring(response.indexOf(DELIMITER) + 1,
+                    response.length() - TERMINATOR.length());
+            connected++;
+        }
+        else if (measuring) {
+            answered++;
+            latencyNanos += System.nanoTime() - client.sent;
+        }
+        client.send(client.clientID + DELIMITER + request + TERMINATOR);
+    }
+
+    /**
+     * A simulated client with one request outstanding at a time.
+     */
+    private static class Client {
+
+        private SocketChannel channel;
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private String clientID;
+        private long sent;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void send(String request) throws IOException {
+            ByteBuffer out = ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8));
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            sent = System.nanoTime();
+        }
+    }
+}
@@ -14,6 +14,9 @@ import java.util.Map;
  */
 public class ClientParser implements Parser {
 
+    /**
+     * The ID given to the next client that connects
+     */
     private static int CLIENT_ID = 0;
 
     /**
@@ -26,6 +29,11 @@ public class ClientParser implements Parser {
      */
     private Parser parser;
 
+    /**
+     * Finds the client ID of each request
+     */
+    private RequestTokenizer tokenizer;
+
     /**
      * Create a proxy parser with another parser.
      * @param parser Another parser to delegate further processing to
@@ -33,6 +41,24 @@ public class ClientParser implements Parser {
     public ClientParser(Parser parser, Map<String, Client> clients) {
         this.clients = clients;
         this.parser = parser;
+        this.tokenizer = new RequestTokenizer();
+    }
+
+    /**
+     * Get the ID the next client that connects is given.
+     * @return The next client ID
+     */
+    public static int getNextClientID() {
+        return CLIENT_ID;
+    }
+
+    /**
+     * Set the ID the next client that connects is given. Used to continue
+     * from a saved state.
+     * @param clientID The next client ID
+     */
+    public static void setNextClientID(int clientID) {
+        CLIENT_ID = clientID;
     }
 
     /**
@@ -48,14 +74,14 @@ public class ClientParser implements Parser {
             String id = connect();
             return new Simple(CONNECT_REQUEST + DELIMITER + id + TERMINATOR);
         }
-        String[] parts = request.split(DELIMITER, 2);
-        String id = parts[0];
+        tokenizer.tokenize(request);
+        String id = tokenizer.getClientID();
         // Check for client ID
         if (!clients.containsKey(id)) {
             return new Simple("invalid-client-id" + TERMINATOR);
         }
         // Check if disconnect command
-        if (parts[1].equals(DISCONNECT_REQUEST + TERMINATOR)) {
+        if (tokenizer.bodyEquals(DISCONNECT_REQUEST + TERMINATOR)) {
             disconnect(id);
             return new Simple(id + DELIMITER + DISCONNECT_REQUEST + TERMINATOR);
         }
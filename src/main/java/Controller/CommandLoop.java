@@ -0,0 +1,227 @@
+package Controller;
+
+import Controller.Request.RequestUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single thread that performs all work against the model. Network
+ * readers, the console and the time keeper post commands into a bounded
+ * queue, so the databases are only ever touched by this thread while input
+ * handling is free to run elsewhere.
+ */
+public class CommandLoop implements Executor, RequestUtil {
+
+    /**
+     * Default number of commands that may wait in the queue
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Commands waiting to be performed
+     */
+    private BlockingQueue<Command> queue;
+    /**
+     * The thread that performs the commands
+     */
+    private Thread worker;
+
+    /**
+     * Backpressure metrics
+     */
+    private AtomicLong executed;
+    private AtomicLong rejected;
+    private AtomicLong totalWaitNanos;
+    private AtomicLong maxWaitNanos;
+    private AtomicInteger peakDepth;
+
+    /**
+     * Create a command loop with the default queue capacity.
+     */
+    public CommandLoop() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a command loop whose queue holds at most the given number of
+     * commands.
+     * @param capacity The queue capacity
+     */
+    public CommandLoop(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        executed = new AtomicLong();
+        rejected = new AtomicLong();
+        totalWaitNanos = new AtomicLong();
+        maxWaitNanos = new AtomicLong();
+        peakDepth = new AtomicInteger();
+        worker = new Thread(this::run, "command-loop");
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Start performing commands.
+     */
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Post a command without waiting for room in the queue.
+     * @param action The command to perform
+     * @return If the command was queued, false if the queue is full
+     */
+    public boolean offer(Runnable action) {
+        if (!queue.offer(new Command(action))) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        peakDepth.accumulateAndGet(queue.size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Post a command, waiting for room in the queue if it is full.
+     * @param action The command to perform
+     */
+    @Override
+    public void execute(Runnable action) {
+        if (Thread.currentThread() == worker) {
+            action.run();
+            return;
+        }
+        try {
+            queue.put(new Command(action));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+        peakDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Perform a command on the loop and wait for its result.
+     * @param action The command to perform
+     * @return The result of the command
+     */
+    public <T> T call(Callable<T> action) {
+        FutureTask<T> task = new FutureTask<>(action);
+        execute(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Perform the queued commands one at a time until the thread dies.
+     */
+    private void run() {
+        while (true) {
+            Command command;
+            try {
+                command = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long wait = System.nanoTime() - command.enqueued;
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            executed.incrementAndGet();
+            try {
+                command.action.run();
+            } catch (RuntimeException e) {
+                // A failing command must not stop the loop
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the number of commands waiting to be performed.
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the deepest the queue has been.
+     * @return The peak queue depth
+     */
+    public int getPeakQueueDepth() {
+        return peakDepth.get();
+    }
+
+    /**
+     * Get the number of commands that were turned away by a full queue.
+     * @return The number of rejected commands
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the average time a command waited in the queue.
+     * @return The average wait in microseconds
+     */
+    public long getAverageWaitMicros() {
+        long count = executed.get();
+        if (count == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / count);
+    }
+
+    /**
+     * Get the longest time a command waited in the queue.
+     * @return The maximum wait in microseconds
+     */
+    public long getMaxWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get());
+    }
+
+    /**
+     * String representation of the loop metrics to be used as a response.
+     * @return The string form of the metrics
+     */
+    @Override
+    public String toString() {
+        return "Queue Depth: " + getQueueDepth() + NEW_LINE +
+                "Peak Queue Depth: " + getPeakQueueDepth() + NEW_LINE +
+                "Commands Executed: " + executed.get() + NEW_LINE +
+                "Commands Rejected: " + getRejected() + NEW_LINE +
+                "Average Queue Wait (us): " + getAverageWaitMicros() + NEW_LINE +
+                "Max Queue Wait (us): " + getMaxWaitMicros() + NEW_LINE;
+    }
+
+    /**
+     * A queued command and the time it entered the queue.
+     */
+    private static class Command {
+
+        private Runnable action;
+        private long enqueued;
+
+        private Command(Runnable action) {
+            this.action = action;
+            this.enqueued = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package Controller;
+
+/**
+ * Maps commands to the factories of their requests. A command is looked up
+ * by its position in the request text, so finding the request of a command
+ * does not copy the command into a string. Collisions are resolved by
+ * probing the next slot.
+ */
+class CommandTable {
+
+    /**
+     * Slots the table starts with
+     */
+    private static final int INITIAL_SLOTS = 16;
+
+    /**
+     * Command in each slot or null if the slot is free
+     */
+    private String[] commands;
+    /**
+     * Factory of the command in each slot
+     */
+    private RequestFactory<?>[] factories;
+    /**
+     * Number of commands in the table
+     */
+    private int size;
+
+    /**
+     * Create an empty table.
+     */
+    CommandTable() {
+        commands = new String[INITIAL_SLOTS];
+        factories = new RequestFactory<?>[INITIAL_SLOTS];
+    }
+
+    /**
+     * Add a command or replace the factory of a command.
+     * @param command The command
+     * @param factory Creates the requests of the command
+     */
+    void put(String command, RequestFactory<?> factory) {
+        // Keep at least half the slots free so probes stay short
+        if ((size + 1) * 2 > commands.length) {
+            grow();
+        }
+        int slot = find(command, 0, command.length());
+        if (commands[slot] == null) {
+            commands[slot] = command;
+            size++;
+        }
+        factories[slot] = factory;
+    }
+
+    /**
+     * Get the factory of a command that is part of a request.
+     * @param text The request
+     * @param start Position of the first character of the command
+     * @param end Position after the last character of the command
+     * @return The factory or null if the command does not exist
+     */
+    RequestFactory<?> get(CharSequence text, int start, int end) {
+        return factories[find(text, start, end)];
+    }
+
+    /**
+     * Find the slot of a command or the free slot it would go in.
+     * @param text Text that contains the command
+     * @param start Position of the first character of the command
+     * @param end Position after the last character of the command
+     * @return The slot
+     */
+    private int find(CharSequence text, int start, int end) {
+        int mask = commands.length - 1;
+        int slot = hash(text, start, end) & mask;
+        while (commands[slot] != null && !matches(commands[slot], text, start, end)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the number of slots.
+     */
+    private void grow() {
+        String[] oldCommands = commands;
+        RequestFactory<?>[] oldFactories = factories;
+        commands = new String[oldCommands.length * 2];
+        factories = new RequestFactory<?>[oldCommands.length * 2];
+        for (int i = 0; i < oldCommands.length; i++) {
+            if (oldCommands[i] != null) {
+                int slot = find(oldCommands[i], 0, oldCommands[i].length());
+                commands[slot] = oldCommands[i];
+                factories[slot] = oldFactories[i];
+            }
+        }
+    }
+
+    /**
+     * Hash the characters of a command the way String.hashCode does, with
+     * the high bits spread into the low bits the table uses.
+     * @param text Text that contains the command
+     * @param start Position of the first character of the command
+     * @param end Position after the last character of the command
+     * @return The hash
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Check if a command has the same characters as part of a text.
+     * @param command The command
+     * @param text Text that may contain the command
+     * @param start Position of the first character in the text
+     * @param end Position after the last character in the text
+     * @return If the characters are the same
+     */
+    private static boolean matches(String command, CharSequence text, int start, int end) {
+        if (command.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < command.length(); i++) {
+            if (command.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+package Controller;
+
+import Controller.Request.Partial;
+import Controller.Request.Request;
+import Controller.Request.SearchResultRequest;
+import Model.Book.BookDB;
+import Model.Book.SearchResult;
+import Model.Library.TimeKeeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Proxy parser that appends every request that changes the system to the
+ * request log before it is performed, so the request can be replayed after
+ * a restart. Requests that only read the system are not logged, with one
+ * exception: the last fragment of a request is logged if its earlier
+ * fragments were, so the replayed fragments are joined the same way.
+ * Searches are not logged either, so a request that picks books from the
+ * last search of its client is logged after the books it may pick, and
+ * those are given back to it when it is replayed instead of searching
+ * again. Requests must be processed on the command loop so the log holds
+ * them in the order they were performed.
+ */
+public class LoggingParser implements Parser {
+
+    /**
+     * Parser to send a follow up process request to
+     */
+    private Parser parser;
+    /**
+     * Log the requests are appended to
+     */
+    private RequestLog log;
+    /**
+     * Clock stored with every request
+     */
+    private TimeKeeper timeKeeper;
+    /**
+     * Finds the client ID of request fragments
+     */
+    private RequestTokenizer tokenizer;
+    /**
+     * Clients whose logged fragments do not end in a logged request yet
+     */
+    private Set<String> fragmented;
+    /**
+     * Books read from the log to give to the next replayed request
+     */
+    private SearchResult replayedBooks;
+
+    /**
+     * Create a proxy parser that logs requests before processing them in
+     * another parser.
+     * @param parser Another parser to delegate further processing to
+     * @param log The log to append requests to
+     * @param timeKeeper The library clock
+     */
+    public LoggingParser(Parser parser, RequestLog log, TimeKeeper timeKeeper) {
+        this.parser = parser;
+        this.log = log;
+        this.timeKeeper = timeKeeper;
+        tokenizer = new RequestTokenizer();
+        fragmented = new HashSet<>();
+    }
+
+    /**
+     * Process the request in the next parser and log it unless it only
+     * reads the system. Nothing is performed until the returned request is
+     * executed, so the request is logged before it is performed.
+     * @param request Request to process
+     * @return A request provided by subsequent parsers
+     */
+    @Override
+    public Request processRequest(String request) {
+        Request next = parser.processRequest(request);
+        if (next instanceof Partial) {
+            fragmented.add(clientID(request));
+        }
+        else if (next.isReadOnly() && (fragmented.isEmpty() || !fragmented.remove(clientID(request)))) {
+            return next;
+        }
+        if (next instanceof SearchResultRequest) {
+            log.append(RequestLog.RESULT, timeKeeper.getPreciseClock(),
+                    encode(((SearchResultRequest) next).getPickableBooks()));
+        }
+        log.append(RequestLog.REQUEST, timeKeeper.getPreciseClock(), request);
+        return next;
+    }
+
+    /**
+     * Perform a logged record again without logging it. Books logged for a
+     * request are kept until the request that follows them is replayed.
+     * @param kind The kind of record, a request or the books of a request
+     * @param line The logged line
+     */
+    public void replay(byte kind, String line) {
+        if (kind == RequestLog.RESULT) {
+            replayedBooks = decode(line);
+            return;
+        }
+        Request request = parser.processRequest(line);
+        if (request instanceof SearchResultRequest) {
+            ((SearchResultRequest) request).setSearchResult(replayedBooks);
+        }
+        replayedBooks = null;
+        if (!request.isReadOnly()) {
+            request.execute();
+        }
+    }
+
+    /**
+     * Find the client ID of a request.
+     * @param request The request
+     * @return The client ID
+     */
+    private String clientID(String request) {
+        tokenizer.tokenize(request);
+        return tokenizer.getClientID();
+    }
+
+    /**
+     * Encode books to be logged as a line.
+     * @param books The books or null
+     * @return The line, empty for null
+     */
+    private static String encode(SearchResult books) {
+        if (books == null) {
+            return "";
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            books.write(out, BookDB.getInstance());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decode books logged by encode.
+     * @param line The logged line
+     * @return The books or null
+     */
+    private static SearchResult decode(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(line)))) {
+            return SearchResult.read(in, BookDB.getInstance());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package Controller;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * The unfinished request of a client. Fragments are appended to a buffer
+ * that doubles when it is full, so a request sent in many fragments is not
+ * copied again for every fragment. A request that grows past the limit
+ * stops being buffered and is rejected once it is terminated. A request
+ * that was not added to for a while is abandoned.
+ */
+public class PartialRequest implements Serializable {
+
+    private static final long serialVersionUID = -2139724168630373766L;
+
+    /**
+     * Characters the buffer has room for when it is created
+     */
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Most characters a request may have
+     */
+    private static final int MAX_LENGTH = 1 << 20;
+    /**
+     * Minutes of library time after which a request is abandoned
+     */
+    private static final long IDLE_MINUTES = 10;
+
+    /**
+     * The characters received so far
+     */
+    private char[] chars;
+    /**
+     * Number of characters received so far
+     */
+    private int length;
+    /**
+     * If the request grew past the limit
+     */
+    private boolean overflowed;
+    /**
+     * Library time the last fragment was received
+     */
+    private LocalDateTime lastAppended;
+
+    /**
+     * Create an empty request.
+     * @param time The library time the request was started
+     */
+    PartialRequest(LocalDateTime time) {
+        chars = new char[INITIAL_CAPACITY];
+        lastAppended = time;
+    }
+
+    /**
+     * Create a request from the text of a partial request saved by an older
+     * version.
+     * @param text The text received so far
+     * @param time The library time the request is restored at
+     */
+    public PartialRequest(String text, LocalDateTime time) {
+        this(time);
+        append(text, 0, time);
+    }
+
+    /**
+     * Append the end of a fragment.
+     * @param text The fragment
+     * @param start Position of the first character to append
+     * @param time The library time the fragment was received
+     */
+    void append(String text, int start, LocalDateTime time) {
+        lastAppended = time;
+        int added = text.length() - start;
+        if (overflowed || added > MAX_LENGTH - length) {
+            overflowed = true;
+            chars = null;
+            return;
+        }
+        if (length + added > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(length + added,
+                    (int) Math.min(MAX_LENGTH, chars.length * 2L)));
+        }
+        text.getChars(start, text.length(), chars, length);
+        length += added;
+    }
+
+    /**
+     * Check if the request grew past the limit.
+     * @return If the request is too long
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Check if no fragment was received for too long.
+     * @param now The library time
+     * @return If the request is abandoned
+     */
+    boolean isIdle(LocalDateTime now) {
+        return !lastAppended.plusMinutes(IDLE_MINUTES).isAfter(now);
+    }
+
+    /**
+     * Save the request without the unused part of the buffer.
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (chars != null && chars.length > length) {
+            chars = Arrays.copyOf(chars, length);
+        }
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Get the text received so far.
+     * @return The request
+     */
+    @Override
+    public String toString() {
+        return overflowed ? "" : new String(chars, 0, length);
+    }
+}
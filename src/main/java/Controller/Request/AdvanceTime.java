@@ -35,7 +35,7 @@ public class AdvanceTime implements Request {
     /**
      * the parameters for the command.
      */
-    private String params;
+    private Params params;
     /**
      * Days to add
      */
@@ -50,7 +50,7 @@ public class AdvanceTime implements Request {
      * @param params The parameters for the command.
      */
     public AdvanceTime(ReportGenerator reportGenerator,
-                       TimeKeeper timeKeeper, String clientID, String params) {
+                       TimeKeeper timeKeeper, String clientID, Params params) {
         this.timeKeeper = timeKeeper;
         this.reportGenerator = reportGenerator;
         this.visitorDB = VisitorDB.getInstance();
@@ -64,11 +64,10 @@ public class AdvanceTime implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length > 0) {
-            days = Integer.parseInt(parts[0]);
-            if (parts.length > 1) {
-                hours = Integer.parseInt(parts[1]);
+        if (params.size() > 0) {
+            days = params.getInt(0);
+            if (params.size() > 1) {
+                hours = params.getInt(1);
             }
             return true;
         }
@@ -84,13 +83,13 @@ public class AdvanceTime implements Request {
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
+        LocalDateTime startTimeCopy = timeKeeper.getClock();
         //Move simulation time forward by "days" and "hours"
         timeKeeper.addDays(days);
         timeKeeper.addHours(hours);
 
         if(days>0){
             //End visit of visitors currently in library. End time is same day, closing hour
-            LocalDateTime startTimeCopy = LocalDateTime.now();
             LocalDateTime endVisitTime = startTimeCopy.withHour(19);
             visitorDB.clearCurrentVisitors(endVisitTime);
             //For each day moved forward generate a new daily report
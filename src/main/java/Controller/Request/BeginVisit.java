@@ -1,11 +1,15 @@
 package Controller.Request;
 
+import Model.Client.Account;
 import Model.Client.AccountDB;
 import Model.Library.LibrarySystem;
 import Model.Library.TimeKeeper;
 import Model.Visitor.Visit;
 import Model.Visitor.VisitorDB;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.time.LocalDateTime;
 
 /**
@@ -13,7 +17,10 @@ import java.time.LocalDateTime;
  *
  * @author Michael Kha
  */
-public class BeginVisit implements Request {
+public class BeginVisit implements Request, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     /**
      * Message for missing parameters
      */
@@ -22,15 +29,15 @@ public class BeginVisit implements Request {
     /**
      * The librarySystem. Used to check library closed or open state.
      */
-    private LibrarySystem librarySystem;
+    private transient LibrarySystem librarySystem;
     /**
      * The Visitor database. Used to add the visitor to the collection of current visitors.
      */
-    private VisitorDB visitorDB;
+    private transient VisitorDB visitorDB;
     /**
      * Account database. Used to add the beginVisit request to account who requested it.
      */
-    private AccountDB accountDB;
+    private transient AccountDB accountDB;
     /**
      * The client that made this request
      */
@@ -38,11 +45,15 @@ public class BeginVisit implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private transient Params params;
     /**
      * The visitor ID to start the visit for
      */
     private String visitorID;
+    /**
+     * The account logged in on the client, looked up once when executed
+     */
+    private transient Account account;
     /**
      * Hold the visit started by beginVisit to maintain visit start time when redoing request
      */
@@ -59,7 +70,7 @@ public class BeginVisit implements Request {
      * @param params The parameters that follow a request command
      */
     public BeginVisit(TimeKeeper timeKeeper, LibrarySystem librarySystem,
-                      String clientID, String params) {
+                      String clientID, Params params) {
         this.timeKeeper = timeKeeper;
         this.librarySystem = librarySystem;
         this.visitorDB = VisitorDB.getInstance();
@@ -74,15 +85,14 @@ public class BeginVisit implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
         //visitorID given
-        if (parts.length == 1) {
-            visitorID = parts[0];
+        if (params.size() == 1) {
+            visitorID = params.get(0);
             return true;
         }
         //visitorID not given
-        else if (parts.length == 0) {
-            visitorID = accountDB.getVisitorIDFromClientID(clientID);
+        else if (params.size() == 0) {
+            visitorID = account.getVisitorID();
             return true;
         }
         return false;
@@ -94,6 +104,7 @@ public class BeginVisit implements Request {
      */
     @Override
     public String execute() {
+        account = accountDB.getActiveAccount(clientID);
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
@@ -101,7 +112,7 @@ public class BeginVisit implements Request {
         String[] parts = response.split(",");
         //Only add successful beginVisit requests to account commandHistory
         if(parts.length == 4){
-            accountDB.addRequestToCommandHistory(this, clientID);
+            account.addPerformedRequest(this);
         }
         //Library.beginVisit()->currentLibraryState.beginVisit()->
         return visitorID + DELIMITER + librarySystem.beginVisit(visitorID);
@@ -125,4 +136,16 @@ public class BeginVisit implements Request {
         LocalDateTime startVisitTime = startVisit.getStart();
         visitorDB.beginVisit(visitorID, startVisitTime, timeKeeper.readDate(startVisitTime), timeKeeper.readTime(startVisitTime));
     }
+
+    /**
+     * Read a begin visit request saved in an account's command history. The
+     * time keeper is given back by the stream that saved it.
+     * @param in The stream to read from
+     * @throws IOException If the stream cannot be read
+     * @throws ClassNotFoundException If a saved class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        visitorDB = VisitorDB.getInstance();
+    }
 }
@@ -1,20 +1,17 @@
 package Controller.Request;
 
 import Model.Book.BookDB;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Client.AccountDB;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Book purchase request to add books to the library.
  *
  * @author Michael Kha
  */
-public class BookPurchase implements Request {
+public class BookPurchase implements SearchResultRequest {
     /**
      * Message for missing parameters
      */
@@ -31,7 +28,7 @@ public class BookPurchase implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * Quantity of books to purchase
      */
@@ -47,7 +44,7 @@ public class BookPurchase implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public BookPurchase(String clientID, String params) {
+    public BookPurchase(String clientID, Params params) {
         this.bookDB = BookDB.getInstance();
         this.clientID = clientID;
         this.params = params;
@@ -59,11 +56,9 @@ public class BookPurchase implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length > 1) {
-            quantity = Integer.parseInt(parts[0]);
-            bookIDs = new ArrayList<>();
-            bookIDs.addAll(Arrays.asList(parts).subList(1, parts.length));
+        if (params.size() > 1) {
+            quantity = params.getInt(0);
+            bookIDs = params.subList(1, params.size());
             return true;
         }
         return false;
@@ -79,10 +74,31 @@ public class BookPurchase implements Request {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
         AccountDB accountDB = AccountDB.getInstance();
-        Map<String, BookInfo> search = accountDB.getStoreSearch(clientID);
+        SearchResult search = accountDB.getStoreSearch(clientID);
         if (search == null) {
             return clientID + DELIMITER + NOT_AUTHORIZED;
         }
-        return clientID + DELIMITER + bookDB.purchase(search, quantity, bookIDs);
+        ResponseWriter out = ResponseWriter.begin().append(clientID).delimiter();
+        bookDB.purchase(search, quantity, bookIDs, out);
+        return out.toString();
+    }
+
+    /**
+     * Get the books of the client's store search that the request may pick.
+     * @return The books or null if the client has no store search
+     */
+    @Override
+    public SearchResult getPickableBooks() {
+        SearchResult search = AccountDB.getInstance().getStoreSearch(clientID);
+        return search == null ? null : search.select(params.subList(0, params.size()));
+    }
+
+    /**
+     * Make the given books the store search of the client.
+     * @param books The books or null if the client had no store search
+     */
+    @Override
+    public void setSearchResult(SearchResult books) {
+        AccountDB.getInstance().setStoreSearch(books, clientID);
     }
 }
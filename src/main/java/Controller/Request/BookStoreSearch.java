@@ -2,26 +2,27 @@ package Controller.Request;
 
 import Model.Book.BookDB;
 import Model.Book.BookInfo;
+import Model.Book.SearchResult;
+import Model.Client.Account;
 import Model.Client.AccountDB;
-import Model.Client.Service;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Book store search request to query for specific books.
  *
  * @author Michael Kha
  */
-public class BookStoreSearch implements Request {
+public class BookStoreSearch implements ReusableRequest {
     /**
      * Message for missing parameters
      */
     private static final String PARAM_MESSAGE = String.format(MISSING_PARAM,
             SEARCH_REQUEST) + DELIMITER + "title,[{authors},isbn" +
-            "[,publisher[,sort order]]]";
+            "[,publisher[,sort order[,limit[,offset]]]]]";
     /**
      * Book database used to buy and store new library books
      */
@@ -33,7 +34,7 @@ public class BookStoreSearch implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * Book title
      */
@@ -54,6 +55,14 @@ public class BookStoreSearch implements Request {
      * Sort ordering
      */
     private String sort;
+    /**
+     * Largest number of books to return
+     */
+    private int limit;
+    /**
+     * Number of books to skip
+     */
+    private int offset;
 
     /**
      * Create a new book store search request given the book database
@@ -61,36 +70,61 @@ public class BookStoreSearch implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public BookStoreSearch(String clientID, String params) {
+    public BookStoreSearch(String clientID, Params params) {
         this.bookDB = BookDB.getInstance();
         this.clientID = clientID;
         this.params = params;
     }
 
+    /**
+     * Prepare the request to be performed again with new parameters.
+     * @param clientID The client making the request
+     * @param params The parameters that follow a request command
+     */
+    @Override
+    public void reset(String clientID, Params params) {
+        this.clientID = clientID;
+        this.params = params;
+    }
+
     /**
      * Check the parameters to validate that the request is
      * @return If the parameters are correct
      */
     @Override
     public boolean checkParams() {
-        if (!params.contains("}") || !params.contains("{")) {
+        if (!params.hasGroup()) {
             return false;
         }
-        String[] firstSplit = params.split("[{}]");
-        authors = new ArrayList<>(Arrays.asList(firstSplit[1].split(",")));
-        if (authors.size() == 1 && authors.get(0).equals(IGNORE)) {
-            authors.clear();
+        Params group = params.getGroup();
+        if (group.size() == 1 && group.is(0, IGNORE)) {
+            authors = new ArrayList<>();
         }
-        String[] titleArr = firstSplit[0].split(",(?!\\s)");
-        title = titleArr[0];
-        String[] isbnPublisherSort = firstSplit[2].split(",(?!\\s)");
-        if (isbnPublisherSort.length != 4) {
+        else {
+            authors = group.subList(0, group.size());
+        }
+        title = params.getBeforeGroup().get(0);
+        Params isbnPublisherSort = params.getAfterGroup();
+        if (isbnPublisherSort.size() < 4 || isbnPublisherSort.size() > 6) {
             return false;
         }
-        isbn = isbnPublisherSort[1];
-        publisher = isbnPublisherSort[2];
-        sort = isbnPublisherSort[3];
-        return true;
+        isbn = isbnPublisherSort.get(1);
+        publisher = isbnPublisherSort.get(2);
+        sort = isbnPublisherSort.get(3);
+        // Paging is optional and every book is returned without it
+        limit = Integer.MAX_VALUE;
+        offset = 0;
+        try {
+            if (isbnPublisherSort.size() > 4 && !isbnPublisherSort.is(4, IGNORE)) {
+                limit = isbnPublisherSort.getInt(4);
+            }
+            if (isbnPublisherSort.size() > 5) {
+                offset = isbnPublisherSort.getInt(5);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return limit >= 0 && offset >= 0;
     }
 
     /**
@@ -99,40 +133,99 @@ public class BookStoreSearch implements Request {
      */
     @Override
     public String execute() {
+        String error = check();
+        if (error != null) {
+            return error;
+        }
+        Account account = AccountDB.getInstance().getActiveAccount(clientID);
+        SearchResult search = bookDB.searchStore(account.getService(), title, authors,
+                isbn, publisher, sort, offset, limit);
+        return respond(account, clientID, search);
+    }
+
+    /**
+     * Search the book store off the command loop, so a search of the web
+     * service does not hold up the requests of other clients. The books
+     * found are kept for the client and the response is built back on the
+     * command loop.
+     * @param loop The command loop
+     * @return String containing the results of the book search once found
+     */
+    @Override
+    public CompletableFuture<String> executeAsync(Executor loop) {
+        String error = check();
+        if (error != null) {
+            return CompletableFuture.completedFuture(error);
+        }
+        Account account = AccountDB.getInstance().getActiveAccount(clientID);
+        // The request is reused before the search completes
+        String clientID = this.clientID;
+        return bookDB.searchStoreAsync(account.getService(), title, authors,
+                isbn, publisher, sort, offset, limit)
+                .thenApplyAsync(search -> respond(account, clientID, search), loop);
+    }
+
+    /**
+     * Check the parameters and that the client is logged in to an account
+     * with a book store.
+     * @return The response to the failed check or null if it passed
+     */
+    private String check() {
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
-        AccountDB accountDB = AccountDB.getInstance();
-        Service service = accountDB.getService(clientID);
-        if (service == null) {
+        Account account = AccountDB.getInstance().getActiveAccount(clientID);
+        if (account == null || account.getService() == null) {
             return clientID + DELIMITER + NOT_AUTHORIZED;
         }
-        Map<String, BookInfo> search = bookDB.searchStore(service, title, authors,
-                isbn, publisher, sort);
-        accountDB.setStoreSearch(search, clientID);
-        return clientID + DELIMITER + buildString(search);
+        return null;
     }
 
     /**
-     * Build the formatted string to return as a response.
-     * @param search Mapping of ID to book info
-     * @return Readable string representation of the map
+     * Keep the books found for the account to purchase from and build the
+     * response.
+     * @param account The account of the client
+     * @param clientID The client that made the request
+     * @param search The books found by the search
+     * @return String containing the results of the book search
      */
-    private String buildString(Map<String, BookInfo> search) {
+    private String respond(Account account, String clientID, SearchResult search) {
+        account.setStoreSearch(search);
+        ResponseWriter out = ResponseWriter.begin().append(clientID).delimiter();
+        buildString(search, out);
+        return out.toString();
+    }
+
+    /**
+     * Build the formatted response from the books found.
+     * @param search The books found by the search
+     * @param out The response to write the books to
+     */
+    private void buildString(SearchResult search, ResponseWriter out) {
         if (search == null) {
-            return INFO_REQUEST + DELIMITER + "invalid-sort-order" + TERMINATOR;
+            out.append(INFO_REQUEST).delimiter().append("invalid-sort-order").terminate();
+            return;
         }
         int size = search.size();
-        String result = "" + SEARCH_REQUEST + DELIMITER
-                + size + DELIMITER;
-        for (String id : search.keySet()) {
-            BookInfo book = search.get(id);
-            result += NEW_LINE;
-            result += id + DELIMITER;
-            result += book + DELIMITER;
+        out.append(SEARCH_REQUEST).delimiter().append(size).delimiter();
+        for (int i = 0; i < size; i++) {
+            BookInfo book = search.getBook(i);
+            int id = search.getOffset() + i;
+            out.newLine();
+            out.append(id).delimiter();
+            book.write(out);
+            out.delimiter();
         }
-        result += TERMINATOR;
-        return result;
+        out.terminate();
     }
 
+
+    /**
+     * Searching the bookstore changes nothing.
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
@@ -1,23 +1,21 @@
 package Controller.Request;
 
 import Model.Book.BookDB;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Checkout.CheckoutDB;
+import Model.Client.Account;
 import Model.Client.AccountDB;
 import Model.Library.LibrarySystem;
 import Model.Visitor.VisitorDB;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Borrow book request to allow visitors to checkout books.
  *
  * @author Michael Kha
  */
-public class BorrowBook implements Request {
+public class BorrowBook implements SearchResultRequest {
     /**
      * Message for missing parameters
      */
@@ -34,11 +32,15 @@ public class BorrowBook implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * The visitor ID to borrow with
      */
     private String visitorID;
+    /**
+     * The account logged in on the client, looked up once when executed
+     */
+    private Account account;
     /**
      * The list of book IDs to borrow
      */
@@ -51,7 +53,7 @@ public class BorrowBook implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public BorrowBook(LibrarySystem librarySystem, String clientID, String params) {
+    public BorrowBook(LibrarySystem librarySystem, String clientID, Params params) {
         this.librarySystem = librarySystem;
         this.clientID = clientID;
         this.params = params;
@@ -63,17 +65,15 @@ public class BorrowBook implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length > 1) {
-            bookIDs = new ArrayList<>();
-            if (parts[parts.length - 1].length() == 10) {
-                visitorID = parts[parts.length - 1];
-                bookIDs.addAll(Arrays.asList(parts).subList(0, parts.length - 1));
+        int size = params.size();
+        if (size > 1) {
+            if (params.length(size - 1) == 10) {
+                visitorID = params.get(size - 1);
+                bookIDs = params.subList(0, size - 1);
             }
             else {
-                AccountDB accountDB = AccountDB.getInstance();
-                visitorID = accountDB.getVisitorIDFromClientID(clientID);
-                bookIDs.addAll(Arrays.asList(parts));
+                visitorID = account.getVisitorID();
+                bookIDs = params.subList(0, size);
             }
             return true;
         }
@@ -87,15 +87,34 @@ public class BorrowBook implements Request {
      */
     @Override
     public String execute() {
+        account = AccountDB.getInstance().getActiveAccount(clientID);
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
         //library.checkoutBooks()->currLibraryState.checkoutBooks()->checkoutDB.checkout()
-        AccountDB accountDB = AccountDB.getInstance();
-        Map<String, BookInfo> search = accountDB.getLibrarySearch(clientID);
+        SearchResult search = account == null ? null : account.getLibrarySearch();
         if (search == null) {
             return clientID + DELIMITER + NOT_AUTHORIZED;
         }
         return clientID + DELIMITER + librarySystem.checkoutBooks(search, visitorID,bookIDs);
     }
+
+    /**
+     * Get the books of the client's library search that the request may pick.
+     * @return The books or null if the client has no library search
+     */
+    @Override
+    public SearchResult getPickableBooks() {
+        SearchResult search = AccountDB.getInstance().getLibrarySearch(clientID);
+        return search == null ? null : search.select(params.subList(0, params.size()));
+    }
+
+    /**
+     * Make the given books the library search of the client.
+     * @param books The books or null if the client had no library search
+     */
+    @Override
+    public void setSearchResult(SearchResult books) {
+        AccountDB.getInstance().setLibrarySearch(books, clientID);
+    }
 }
@@ -31,7 +31,7 @@ public class CreateAccount implements Request {
     /**
      * The request parameters
      */
-    private String params;
+    private Params params;
     private String username;
     private String password;
     private Role role;
@@ -43,7 +43,7 @@ public class CreateAccount implements Request {
      * for the request.
      * @param params The request parameters
      */
-    public CreateAccount(String clientID, String params) {
+    public CreateAccount(String clientID, Params params) {
         this.visitorDB = VisitorDB.getInstance();
         this.clientID = clientID;
         this.params = params;
@@ -56,24 +56,22 @@ public class CreateAccount implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length != 4) {
+        if (params.size() != 4) {
             return false;
         }
-        username = parts[0];
-        password = parts[1];
+        username = params.get(0);
+        password = params.get(1);
         // Interpret the role
-        switch (parts[2]) {
-            case "employee":
-                role = new EmployeeRole();
-                break;
-            case "visitor":
-                role = new VisitorRole();
-                break;
-            default:
-                return false;
+        if (params.is(2, "employee")) {
+            role = new EmployeeRole();
         }
-        visitorID = parts[3];
+        else if (params.is(2, "visitor")) {
+            role = new VisitorRole();
+        }
+        else {
+            return false;
+        }
+        visitorID = params.get(3);
         return true;
     }
 
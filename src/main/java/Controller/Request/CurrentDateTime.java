@@ -6,7 +6,7 @@ import Model.Library.TimeKeeper;
  * Gives the system's current date and time.
  * @author Jack Li
  */
-public class CurrentDateTime implements Request {
+public class CurrentDateTime implements ReusableRequest {
 
     /**
      * Used to build a response returned to the user including the simulation's date and time.
@@ -25,6 +25,16 @@ public class CurrentDateTime implements Request {
         this.clientID = clientID;
     }
 
+    /**
+     * Prepare the request to give the date and time to another client.
+     * @param clientID The client making the request
+     * @param params Not used
+     */
+    @Override
+    public void reset(String clientID, Params params) {
+        this.clientID = clientID;
+    }
+
     /**
      * Executes the CurrentDateTime command to return the current date and time.
      * @return The current date and time within the system.
@@ -34,4 +44,13 @@ public class CurrentDateTime implements Request {
         return clientID + DELIMITER + timeKeeper.readTime() +
                 DELIMITER + timeKeeper.readDate() + TERMINATOR;
     }
+
+    /**
+     * Reading the date and time changes nothing.
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
@@ -1,15 +1,21 @@
 package Controller.Request;
 
+import Model.Client.Account;
 import Model.Client.AccountDB;
 import Model.Library.TimeKeeper;
 import Model.Visitor.VisitorDB;
 
+import java.io.Serializable;
+
 /**
  * End visit request to start a visit for a visitor.
  *
  * @author Michael Kha
  */
-public class EndVisit implements Request {
+public class EndVisit implements Request, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     /**
      * Message for missing parameters
      */
@@ -18,16 +24,16 @@ public class EndVisit implements Request {
     /**
      * Visitor database used to update currentVisitors by removing visitor ending their visit.
      */
-    private VisitorDB visitorDB;
+    private transient VisitorDB visitorDB;
     /**
      * Account database to retrieve visitor ID from account if not provided
      */
-    private AccountDB accountDB;
+    private transient AccountDB accountDB;
     /**
      * TimeKeeper used to build response to user by including the simulation date and time,
      * which represent the time the visitor left the library.
      */
-    private TimeKeeper timeKeeper;
+    private transient TimeKeeper timeKeeper;
     /**
      * The client that made this request
      */
@@ -35,11 +41,15 @@ public class EndVisit implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private transient Params params;
     /**
      * The visitor ID to start the visit for
      */
     private String visitorID;
+    /**
+     * The account logged in on the client, looked up once when executed
+     */
+    private transient Account account;
 
     /**
      * Create a new end visit request given the visitor database
@@ -49,7 +59,7 @@ public class EndVisit implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public EndVisit(TimeKeeper timeKeeper, String clientID, String params) {
+    public EndVisit(TimeKeeper timeKeeper, String clientID, Params params) {
         this.visitorDB = VisitorDB.getInstance();
         accountDB = AccountDB.getInstance();
         this.timeKeeper = timeKeeper;
@@ -63,15 +73,14 @@ public class EndVisit implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
         //visitorID given
-        if (parts.length == 1) {
-            visitorID = parts[0];
+        if (params.size() == 1) {
+            visitorID = params.get(0);
             return true;
         }
         //visitorID not given
-        else if (parts.length == 0) {
-            visitorID = accountDB.getVisitorIDFromClientID(clientID);
+        else if (params.size() == 0) {
+            visitorID = account.getVisitorID();
             return true;
         }
         return false;
@@ -84,6 +93,7 @@ public class EndVisit implements Request {
      */
     @Override
     public String execute() {
+        account = accountDB.getActiveAccount(clientID);
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
@@ -92,7 +102,7 @@ public class EndVisit implements Request {
         String[] parts = response.split(",");
         //Only add successful endVisit requests to account commandHistory
         if(parts.length == 4){
-            accountDB.addRequestToCommandHistory(this, clientID);
+            account.addPerformedRequest(this);
         }
         return response;
     }
@@ -1,6 +1,8 @@
 package Controller.Request;
 
+import Model.Book.SearchResult;
 import Model.Checkout.CheckoutDB;
+import Model.Client.Account;
 import Model.Client.AccountDB;
 
 /**
@@ -8,7 +10,7 @@ import Model.Client.AccountDB;
  *
  * @author Michael Kha
  */
-public class FindBorrowedBooks implements Request {
+public class FindBorrowedBooks implements ReusableRequest {
     /**
      * Message for missing parameters
      */
@@ -25,11 +27,15 @@ public class FindBorrowedBooks implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * The visitor ID to check
      */
     private String visitorID;
+    /**
+     * The account logged in on the client, looked up again each time it is executed
+     */
+    private Account account;
 
     /**
      * Create a new find borrowed books request given the visitor database
@@ -37,26 +43,35 @@ public class FindBorrowedBooks implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public FindBorrowedBooks(String clientID, String params) {
+    public FindBorrowedBooks(String clientID, Params params) {
         this.checkoutDB = CheckoutDB.getInstance();
         this.clientID = clientID;
         this.params = params;
     }
 
+    /**
+     * Prepare the request to be performed again with new parameters.
+     * @param clientID The client making the request
+     * @param params The parameters that follow a request command
+     */
+    @Override
+    public void reset(String clientID, Params params) {
+        this.clientID = clientID;
+        this.params = params;
+    }
+
     /**
      * Check the parameters to validate what the request is.
      * @return If the parameters are correct
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length == 1) {
-            if (parts[0].length() == 10) {
-                visitorID = parts[0];
+        if (params.size() == 1) {
+            if (params.length(0) == 10) {
+                visitorID = params.get(0);
             }
             else {
-                AccountDB accountDB = AccountDB.getInstance();
-                visitorID = accountDB.getVisitorIDFromClientID(clientID);
+                visitorID = account.getVisitorID();
             }
             return true;
         }
@@ -69,12 +84,24 @@ public class FindBorrowedBooks implements Request {
      */
     @Override
     public String execute() {
+        account = AccountDB.getInstance().getActiveAccount(clientID);
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
-        String response = checkoutDB.findBorrowedBooks(visitorID);
-        AccountDB accountDB = AccountDB.getInstance();
-        accountDB.setBorrowedSearch(checkoutDB.getLastBorrowedBooks(), clientID);
-        return clientID + DELIMITER + response;
+        ResponseWriter out = ResponseWriter.begin().append(clientID).delimiter();
+        SearchResult search = checkoutDB.findBorrowedBooks(visitorID, out);
+        if (account != null) {
+            account.setBorrowedSearch(search);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Finding the borrowed books changes nothing.
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
 }
@@ -2,25 +2,24 @@ package Controller.Request;
 
 import Model.Book.BookDB;
 import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Client.AccountDB;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Library book search request to query for specific books.
  *
  * @author Michael Kha
  */
-public class LibraryBookSearch implements Request {
+public class LibraryBookSearch implements ReusableRequest {
     /**
      * Message for missing parameters
      */
     private static final String PARAM_MESSAGE = String.format(MISSING_PARAM,
             ARRIVE_REQUEST) + DELIMITER + "title,[{authors},isbn" +
-            "[,publisher[,sort order]]]";
+            "[,publisher[,sort order[,limit[,offset]]]]]";
     /**
      * Used to search collection of books contained in book database
      */
@@ -32,7 +31,7 @@ public class LibraryBookSearch implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * Book title
      */
@@ -53,6 +52,14 @@ public class LibraryBookSearch implements Request {
      * Sort ordering
      */
     private String sort;
+    /**
+     * Largest number of books to return
+     */
+    private int limit;
+    /**
+     * Number of books to skip
+     */
+    private int offset;
 
     /**
      * Create a new library book search request given the book database
@@ -60,36 +67,61 @@ public class LibraryBookSearch implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public LibraryBookSearch(String clientID, String params) {
+    public LibraryBookSearch(String clientID, Params params) {
         this.bookDB = BookDB.getInstance();
         this.clientID = clientID;
         this.params = params;
     }
 
+    /**
+     * Prepare the request to be performed again with new parameters.
+     * @param clientID The client making the request
+     * @param params The parameters that follow a request command
+     */
+    @Override
+    public void reset(String clientID, Params params) {
+        this.clientID = clientID;
+        this.params = params;
+    }
+
     /**
      * Check the parameters to validate that the request is
      * @return If the parameters are correct
      */
     @Override
     public boolean checkParams() {
-        if (!params.contains("}") || !params.contains("{")) {
+        if (!params.hasGroup()) {
             return false;
         }
-        String[] firstSplit = params.split("[{}]");
-        authors = new ArrayList<>(Arrays.asList(firstSplit[1].split(",")));
-        if (authors.size() == 1 && authors.get(0).equals(IGNORE)) {
-            authors.clear();
+        Params group = params.getGroup();
+        if (group.size() == 1 && group.is(0, IGNORE)) {
+            authors = new ArrayList<>();
+        }
+        else {
+            authors = group.subList(0, group.size());
         }
-        String[] titleArr = firstSplit[0].split(",(?!\\s)");
-        title = titleArr[0];
-        String[] isbnPublisherSort = firstSplit[2].split(",(?!\\s)");
-        if (isbnPublisherSort.length != 4) {
+        title = params.getBeforeGroup().get(0);
+        Params isbnPublisherSort = params.getAfterGroup();
+        if (isbnPublisherSort.size() < 4 || isbnPublisherSort.size() > 6) {
             return false;
         }
-        isbn = isbnPublisherSort[1];
-        publisher = isbnPublisherSort[2];
-        sort = isbnPublisherSort[3];
-        return true;
+        isbn = isbnPublisherSort.get(1);
+        publisher = isbnPublisherSort.get(2);
+        sort = isbnPublisherSort.get(3);
+        // Paging is optional and every book is returned without it
+        limit = Integer.MAX_VALUE;
+        offset = 0;
+        try {
+            if (isbnPublisherSort.size() > 4 && !isbnPublisherSort.is(4, IGNORE)) {
+                limit = isbnPublisherSort.getInt(4);
+            }
+            if (isbnPublisherSort.size() > 5) {
+                offset = isbnPublisherSort.getInt(5);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return limit >= 0 && offset >= 0;
     }
 
     /**
@@ -101,34 +133,46 @@ public class LibraryBookSearch implements Request {
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
-        Map<String, BookInfo> books = bookDB.searchBooks(title,
-                authors,isbn,publisher,sort);
+        SearchResult books = bookDB.searchBooks(title,
+                authors,isbn,publisher,sort,offset,limit);
         AccountDB accountDB = AccountDB.getInstance();
         accountDB.setLibrarySearch(books, clientID);
-        return clientID + DELIMITER + buildString(books);
+        ResponseWriter out = ResponseWriter.begin().append(clientID).delimiter();
+        buildString(books, out);
+        return out.toString();
     }
 
     /**
-     * Build the formatted string to return as a response.
-     * @param search Mapping of ID to book info
-     * @return Readable string representation of the map
+     * Build the formatted response from the books found.
+     * @param search The books found by the search
+     * @param out The response to write the books to
      */
-    private String buildString(Map<String, BookInfo> search) {
+    private void buildString(SearchResult search, ResponseWriter out) {
         if (search == null) {
-            return INFO_REQUEST + DELIMITER + "invalid-sort-order" + TERMINATOR;
+            out.append(INFO_REQUEST).delimiter().append("invalid-sort-order").terminate();
+            return;
         }
         int size = search.size();
-        String result = "" + INFO_REQUEST + DELIMITER
-                + size + DELIMITER;
-        for (String id : search.keySet()) {
-            BookInfo book = search.get(id);
-            result += NEW_LINE;
-            result += book.getTotalCopiesAvailable() + DELIMITER;
-            result += id + DELIMITER;
-            result += book + DELIMITER + book.getPageCount();
+        out.append(INFO_REQUEST).delimiter().append(size).delimiter();
+        for (int i = 0; i < size; i++) {
+            BookInfo book = search.getBook(i);
+            int id = search.getOffset() + i;
+            out.newLine();
+            out.append(book.getTotalCopiesAvailable()).delimiter();
+            out.append(id).delimiter();
+            book.write(out);
+            out.delimiter().append(book.getPageCount());
         }
-        result += String.format("{%d}", size);
-        result += TERMINATOR;
-        return result;
+        out.append('{').append(size).append('}');
+        out.terminate();
+    }
+
+    /**
+     * Searching the library changes nothing.
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
 }
@@ -8,7 +8,7 @@ import Model.Library.ReportGenerator;
  *
  * @author Michael Kha
  */
-public class LibraryStatisticsReport implements Request{
+public class LibraryStatisticsReport implements ReusableRequest {
     /**
      * Message for missing parameters
      */
@@ -25,7 +25,7 @@ public class LibraryStatisticsReport implements Request{
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * Number of days to report back on
      */
@@ -37,25 +37,35 @@ public class LibraryStatisticsReport implements Request{
      * @param reportGenerator ReportGenerator
      * @param params The parameters that follow a request command
      */
-    public LibraryStatisticsReport(ReportGenerator reportGenerator, String clientID, String params) {
+    public LibraryStatisticsReport(ReportGenerator reportGenerator, String clientID, Params params) {
         this.reportGenerator = reportGenerator;
         this.clientID = clientID;
         this.params = params;
     }
 
+    /**
+     * Prepare the request to be performed again with new parameters.
+     * @param clientID The client making the request
+     * @param params The parameters that follow a request command
+     */
+    @Override
+    public void reset(String clientID, Params params) {
+        this.clientID = clientID;
+        this.params = params;
+    }
+
     /**
      * Check the parameters to validate what the request is.
      * @return If the parameters are correct
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(",");
-        if (parts.length == 1) {
-            if(parts[0].equals("")){
+        if (params.size() == 1) {
+            if(params.length(0) == 0){
                 days = 0;
             }
             else{
-                days = Integer.parseInt(parts[0]);
+                days = params.getInt(0);
             }
         }
         else{
@@ -75,4 +85,13 @@ public class LibraryStatisticsReport implements Request{
         }
         return clientID + DELIMITER + reportGenerator.generateInfoReport(days);
     }
+
+    /**
+     * Generating a report changes nothing.
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
@@ -19,7 +19,7 @@ public class Login implements Request {
     /**
      * The parameters of the login request
      */
-    private String params;
+    private Params params;
     /**
      * The username
      */
@@ -34,7 +34,7 @@ public class Login implements Request {
      * @param clientID The client making the request
      * @param params The parameters to log in with
      */
-    public Login(String clientID, String params) {
+    public Login(String clientID, Params params) {
         this.clientID = clientID;
         this.params = params;
     }
@@ -45,10 +45,9 @@ public class Login implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length == 2) {
-            username = parts[0];
-            password = parts[1];
+        if (params.size() == 2) {
+            username = params.get(0);
+            password = params.get(1);
             return true;
         }
         return false;
@@ -0,0 +1,345 @@
+package Controller.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parameters of a request, kept as a range of the request text. The
+ * range is split into fields in one pass the first time a field is read and
+ * the fields are kept as offsets, so a field is only copied into a string
+ * when a request asks for it as one. Fields are split the way
+ * String.split splits them: a range without a delimiter is one field even
+ * if it is empty, and empty fields at the end are dropped.
+ */
+public class Params implements RequestUtil {
+
+    /**
+     * Fields a range has room for before the offsets grow
+     */
+    private static final int INITIAL_FIELDS = 8;
+
+    /**
+     * The request text the parameters are part of
+     */
+    private CharSequence text;
+    /**
+     * Position of the first character of the parameters
+     */
+    private int start;
+    /**
+     * Position after the last character of the parameters
+     */
+    private int end;
+    /**
+     * If a delimiter followed by whitespace does not end a field, the way
+     * titles and publishers are split
+     */
+    private boolean spaced;
+    /**
+     * Position after the end of each field, set by the first read
+     */
+    private int[] ends;
+    /**
+     * Number of fields or -1 before the range is split
+     */
+    private int size = -1;
+
+    /**
+     * Create the parameters found in part of a request.
+     * @param text The request text
+     * @param start Position of the first character of the parameters
+     * @param end Position after the last character of the parameters
+     */
+    public Params(CharSequence text, int start, int end) {
+        this(text, start, end, false);
+    }
+
+    /**
+     * Create the parameters found in part of a request.
+     * @param text The request text
+     * @param start Position of the first character of the parameters
+     * @param end Position after the last character of the parameters
+     * @param spaced If a delimiter followed by whitespace does not end a field
+     */
+    private Params(CharSequence text, int start, int end, boolean spaced) {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.spaced = spaced;
+    }
+
+    /**
+     * Find the ends of the fields if they were not found yet.
+     */
+    private void split() {
+        if (size >= 0) {
+            return;
+        }
+        ends = new int[INITIAL_FIELDS];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (isDelimiter(i)) {
+                if (count == ends.length - 1) {
+                    int[] grown = new int[ends.length * 2];
+                    System.arraycopy(ends, 0, grown, 0, count);
+                    ends = grown;
+                }
+                ends[count++] = i;
+            }
+        }
+        ends[count++] = end;
+        // Without a delimiter the whole range is the only field
+        if (count > 1) {
+            while (count > 0 && fieldStart(count - 1) == ends[count - 1]) {
+                count--;
+            }
+        }
+        size = count;
+    }
+
+    /**
+     * Check if the character at a position ends a field.
+     * @param i Position in the range
+     * @return If it is a delimiter
+     */
+    private boolean isDelimiter(int i) {
+        if (text.charAt(i) != DELIMITER.charAt(0)) {
+            return false;
+        }
+        return !spaced || i + 1 == end || !isWhitespace(text.charAt(i + 1));
+    }
+
+    /**
+     * Check if a character is whitespace as matched by the regex \s.
+     * @param c The character
+     * @return If it is whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Get the position of the first character of a field.
+     * @param index The field
+     * @return The position in the text
+     */
+    private int fieldStart(int index) {
+        return index == 0 ? start : ends[index - 1] + 1;
+    }
+
+    /**
+     * Check that a field exists.
+     * @param index The field
+     */
+    private void checkIndex(int index) {
+        split();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Field: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Get the number of fields.
+     * @return The number of fields
+     */
+    public int size() {
+        split();
+        return size;
+    }
+
+    /**
+     * Get a field as a string.
+     * @param index The field
+     * @return The field
+     */
+    public String get(int index) {
+        checkIndex(index);
+        return text.subSequence(fieldStart(index), ends[index]).toString();
+    }
+
+    /**
+     * Get the length of a field without copying it.
+     * @param index The field
+     * @return Number of characters in the field
+     */
+    public int length(int index) {
+        checkIndex(index);
+        return ends[index] - fieldStart(index);
+    }
+
+    /**
+     * Check if a field is equal to a value without copying it.
+     * @param index The field
+     * @param value The value to compare to
+     * @return If the field has the same characters as the value
+     */
+    public boolean is(int index, String value) {
+        if (length(index) != value.length()) {
+            return false;
+        }
+        int from = fieldStart(index);
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(from + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as a decimal number without copying it. Accepts the
+     * same numbers as Integer.parseInt.
+     * @param index The field
+     * @return The number
+     * @throws NumberFormatException If the field is not a number
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        int i = fieldStart(index);
+        int to = ends[index];
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            if (negative) {
+                limit = Integer.MIN_VALUE;
+            }
+            i++;
+        }
+        if (i == to) {
+            throw notANumber(index);
+        }
+        // Accumulate negatively so the smallest int can be parsed
+        int min = limit / 10;
+        int result = 0;
+        for (; i < to; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0 || result < min) {
+                throw notANumber(index);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw notANumber(index);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Create the exception for a field that is not a number.
+     * @param index The field
+     * @return The exception
+     */
+    private NumberFormatException notANumber(int index) {
+        return new NumberFormatException("For input string: \"" + get(index) + "\"");
+    }
+
+    /**
+     * Get a range of fields as strings.
+     * @param from The first field
+     * @param to The field after the last field
+     * @return A new list of the fields
+     */
+    public List<String> subList(int from, int to) {
+        List<String> fields = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            fields.add(get(i));
+        }
+        return fields;
+    }
+
+    /**
+     * Check if the parameters contain a group of authors, which is
+     * surrounded by curly brackets.
+     * @return If both brackets are in the parameters
+     */
+    public boolean hasGroup() {
+        return indexOf('{', start) >= 0 && indexOf('}', start) >= 0;
+    }
+
+    /**
+     * Get the parameters before the group of authors. A delimiter followed
+     * by whitespace does not end these fields.
+     * @return The parameters before the first bracket
+     */
+    public Params getBeforeGroup() {
+        return section(0, true);
+    }
+
+    /**
+     * Get the authors in the group.
+     * @return The parameters between the first and second bracket
+     */
+    public Params getGroup() {
+        return section(1, false);
+    }
+
+    /**
+     * Get the parameters after the group of authors. A delimiter followed
+     * by whitespace does not end these fields.
+     * @return The parameters between the second and third bracket
+     */
+    public Params getAfterGroup() {
+        return section(2, true);
+    }
+
+    /**
+     * Get the part of the parameters between two brackets, the way
+     * splitting at every bracket would give it. Parts past the last bracket
+     * are empty.
+     * @param index Number of brackets before the part
+     * @param spaced If a delimiter followed by whitespace does not end a field
+     * @return The part
+     */
+    private Params section(int index, boolean spaced) {
+        int from = start;
+        for (int i = 0; i < index; i++) {
+            int bracket = indexOfBracket(from);
+            if (bracket < 0) {
+                return new Params(text, end, end, spaced);
+            }
+            from = bracket + 1;
+        }
+        int to = indexOfBracket(from);
+        return new Params(text, from, to < 0 ? end : to, spaced);
+    }
+
+    /**
+     * Find the next curly bracket of either kind.
+     * @param from Position to start looking at
+     * @return Position of the bracket or -1 if there is none
+     */
+    private int indexOfBracket(int from) {
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == '{' || text.charAt(i) == '}') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the next position of a character.
+     * @param c The character
+     * @param from Position to start looking at
+     * @return Position of the character or -1 if it is not in the range
+     */
+    private int indexOf(char c, int from) {
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the parameters as they were given.
+     * @return The parameters as a string
+     */
+    @Override
+    public String toString() {
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -31,7 +31,7 @@ public class PayFine implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * The visitor ID
      */
@@ -47,7 +47,7 @@ public class PayFine implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public PayFine(String clientID, String params) {
+    public PayFine(String clientID, Params params) {
         this.checkoutDB = CheckoutDB.getInstance();
         this.visitorDB = VisitorDB.getInstance();
         this.clientID = clientID;
@@ -60,13 +60,12 @@ public class PayFine implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(",");
-        amount = Integer.parseInt(parts[0]);
-        if (parts.length == 1) {
+        amount = params.getInt(0);
+        if (params.size() == 1) {
             AccountDB accountDB = AccountDB.getInstance();
             visitorID = accountDB.getVisitorIDFromClientID(clientID);
-        } else if (parts.length == 2) {
-            visitorID = parts[1];
+        } else if (params.size() == 2) {
+            visitorID = params.get(1);
         }
         return false;
     }
@@ -29,7 +29,7 @@ public class RegisterVisitor implements Request{
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * The first name
      */
@@ -55,7 +55,7 @@ public class RegisterVisitor implements Request{
      * @param params The parameters that follow a request command
      */
     public RegisterVisitor(TimeKeeper timeKeeper,
-                           String clientID, String params) {
+                           String clientID, Params params) {
         this.visitorDB = VisitorDB.getInstance();
         this.timeKeeper = timeKeeper;
         this.clientID = clientID;
@@ -68,12 +68,11 @@ public class RegisterVisitor implements Request{
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length == 4) {
-            firstName = parts[0];
-            lastName = parts[1];
-            address = parts[2];
-            phoneNumber = parts[3];
+        if (params.size() == 4) {
+            firstName = params.get(0);
+            lastName = params.get(1);
+            address = params.get(2);
+            phoneNumber = params.get(3);
             return true;
         }
         return false;
@@ -1,12 +1,37 @@
 package Controller.Request;
 
+import Model.Client.Account;
 import Model.Client.AccountDB;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 public interface Request extends RequestUtil {
     default boolean checkParams() {
         return true;
     }
     String execute();
+
+    /**
+     * Perform the request without holding up the command loop while it
+     * waits for anything outside the library. Called on the command loop,
+     * which the rest of the request is performed on once the wait is over.
+     * Most requests are performed at once.
+     * @param loop The command loop
+     * @return The response once the request is performed
+     */
+    default CompletableFuture<String> executeAsync(Executor loop) {
+        return CompletableFuture.completedFuture(execute());
+    }
+
+    /**
+     * Check if the request only reads the state of the library, so it does
+     * not have to be logged or replayed.
+     * @return If the request changes nothing
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
     default void undo() {
 
     }
@@ -14,17 +39,17 @@ public interface Request extends RequestUtil {
 
     }
     default void addToCommandHistory(Request request, String clientID) {
-        AccountDB accountDB = AccountDB.getInstance();
-        if (!accountDB.isActiveAccount(clientID)) {
+        Account account = AccountDB.getInstance().getActiveAccount(clientID);
+        if (account == null) {
             return;
         }
-        accountDB.addToCommandHistory(request, clientID);
+        account.addPerformedRequest(request);
     }
     default void addToUndoHistory(Request request, String clientID) {
-        AccountDB accountDB = AccountDB.getInstance();
-        if (!accountDB.isActiveAccount(clientID)) {
+        Account account = AccountDB.getInstance().getActiveAccount(clientID);
+        if (account == null) {
             return;
         }
-        accountDB.addToUndoHistory(request, clientID);
+        account.addUndoneCommand(request);
     }
 }
@@ -39,6 +39,7 @@ public interface RequestUtil {
     String MISSING_PARAM = "%s" + DELIMITER + "missing-parameters" + TERMINATOR;
     String PROPER_PARAM = "";
     String ILLEGAL_COMMAND = "illegal-command";
+    String REQUEST_TOO_LONG = "request-too-long";
     String DUPLICATE = "duplicate";
     String INVALID_ID = "invalid-id";
     String INVALID_VISITOR_ID = "invalid-visitor-id";
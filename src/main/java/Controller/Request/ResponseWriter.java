@@ -0,0 +1,118 @@
+package Controller.Request;
+
+/**
+ * Builds a response by appending its fields to one buffer, instead of
+ * concatenating a new string for every field. Each thread has a writer
+ * that is reused for every response the thread builds, so the buffer only
+ * grows for the largest response instead of for every response.
+ */
+public class ResponseWriter implements RequestUtil {
+
+    /**
+     * Characters the buffer starts with
+     */
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * Largest buffer kept for the next response
+     */
+    private static final int MAX_KEPT_CAPACITY = 1 << 20;
+    /**
+     * The writer of each thread
+     */
+    private static final ThreadLocal<ResponseWriter> WRITERS =
+            ThreadLocal.withInitial(ResponseWriter::new);
+
+    /**
+     * The response built so far
+     */
+    private StringBuilder buffer;
+
+    /**
+     * Create a writer with its own buffer.
+     */
+    public ResponseWriter() {
+        buffer = new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Get the writer of the current thread, emptied for a new response. A
+     * thread must finish a response before it begins the next one.
+     * @return The writer
+     */
+    public static ResponseWriter begin() {
+        ResponseWriter writer = WRITERS.get();
+        if (writer.buffer.capacity() > MAX_KEPT_CAPACITY) {
+            writer.buffer = new StringBuilder(INITIAL_CAPACITY);
+        }
+        else {
+            writer.buffer.setLength(0);
+        }
+        return writer;
+    }
+
+    /**
+     * Append a field or part of a field.
+     * @param value The text to append
+     * @return This writer
+     */
+    public ResponseWriter append(String value) {
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Append a number.
+     * @param value The number to append
+     * @return This writer
+     */
+    public ResponseWriter append(int value) {
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Append a character.
+     * @param value The character to append
+     * @return This writer
+     */
+    public ResponseWriter append(char value) {
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Append the delimiter that separates fields.
+     * @return This writer
+     */
+    public ResponseWriter delimiter() {
+        buffer.append(DELIMITER);
+        return this;
+    }
+
+    /**
+     * Append a line break, which starts the next item of a list.
+     * @return This writer
+     */
+    public ResponseWriter newLine() {
+        buffer.append(NEW_LINE);
+        return this;
+    }
+
+    /**
+     * Append the terminator that ends a response.
+     * @return This writer
+     */
+    public ResponseWriter terminate() {
+        buffer.append(TERMINATOR);
+        return this;
+    }
+
+    /**
+     * Get the response.
+     * @return The response built so far
+     */
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
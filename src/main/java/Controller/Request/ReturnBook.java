@@ -1,22 +1,20 @@
 package Controller.Request;
 
 import Model.Book.BookDB;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Checkout.CheckoutDB;
+import Model.Client.Account;
 import Model.Client.AccountDB;
 import Model.Library.TimeKeeper;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Return book request to return the specified books of a visitor.
  *
  * @author Michael Kha
  */
-public class ReturnBook implements Request {
+public class ReturnBook implements SearchResultRequest {
     /**
      * Message for missing parameters
      */
@@ -35,11 +33,15 @@ public class ReturnBook implements Request {
     /**
      * Params in the command
      */
-    private String params;
+    private Params params;
     /**
      * The visitor ID to return the books for
      */
     private String visitorID;
+    /**
+     * The account logged in on the client, looked up once when executed
+     */
+    private Account account;
     /**
      * List of books from their IDs of the most recent find borrowed
      * books search
@@ -52,7 +54,7 @@ public class ReturnBook implements Request {
      * @param clientID The client making the request
      * @param params The parameters that follow a request command
      */
-    public ReturnBook(TimeKeeper timeKeeper, String clientID, String params) {
+    public ReturnBook(TimeKeeper timeKeeper, String clientID, Params params) {
         this.checkoutDB = CheckoutDB.getInstance();
         this.bookDB = BookDB.getInstance();
         this.timeKeeper = timeKeeper;
@@ -66,20 +68,18 @@ public class ReturnBook implements Request {
      */
     @Override
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length > 0) {
-            bookIDs = new ArrayList<>();
-            if (parts[0].length() == 10) {
-                visitorID = parts[0];
-                if (parts.length == 1) {
+        int size = params.size();
+        if (size > 0) {
+            if (params.length(0) == 10) {
+                visitorID = params.get(0);
+                if (size == 1) {
                     return false;
                 }
-                bookIDs.addAll(Arrays.asList(parts).subList(1, parts.length));
+                bookIDs = params.subList(1, size);
             }
             else {
-                AccountDB accountDB = AccountDB.getInstance();
-                visitorID = accountDB.getVisitorIDFromClientID(clientID);
-                bookIDs.addAll(Arrays.asList(parts));
+                visitorID = account.getVisitorID();
+                bookIDs = params.subList(0, size);
             }
             return true;
         }
@@ -93,15 +93,34 @@ public class ReturnBook implements Request {
      */
     @Override
     public String execute() {
+        account = AccountDB.getInstance().getActiveAccount(clientID);
         if (!checkParams()) {
             return clientID + DELIMITER + PARAM_MESSAGE;
         }
-        AccountDB accountDB = AccountDB.getInstance();
-        Map<String, BookInfo> search = accountDB.getBorrowedSearch(clientID);
+        SearchResult search = account == null ? null : account.getBorrowedSearch();
         if (search == null) {
             return clientID + DELIMITER + NOT_AUTHORIZED;
         }
         return clientID + DELIMITER + checkoutDB.returnBooks(search, visitorID,
                 bookIDs, bookDB, timeKeeper);
     }
+
+    /**
+     * Get the books of the client's borrowed books search that the request may pick.
+     * @return The books or null if the client has no borrowed books search
+     */
+    @Override
+    public SearchResult getPickableBooks() {
+        SearchResult search = AccountDB.getInstance().getBorrowedSearch(clientID);
+        return search == null ? null : search.select(params.subList(0, params.size()));
+    }
+
+    /**
+     * Make the given books the borrowed books search of the client.
+     * @param books The books or null if the client had no borrowed books search
+     */
+    @Override
+    public void setSearchResult(SearchResult books) {
+        AccountDB.getInstance().setBorrowedSearch(books, clientID);
+    }
 }
@@ -0,0 +1,17 @@
+package Controller.Request;
+
+/**
+ * A request that keeps nothing once it was performed, so a parser can keep
+ * one instance of it and hand it the next client and parameters instead of
+ * creating a new one. Requests that are kept in an account's command
+ * history must not be reusable.
+ */
+public interface ReusableRequest extends Request {
+
+    /**
+     * Prepare the request to be performed again for a client.
+     * @param clientID The client making the request
+     * @param params The parameters that follow the request command
+     */
+    void reset(String clientID, Params params);
+}
@@ -0,0 +1,24 @@
+package Controller.Request;
+
+import Model.Book.SearchResult;
+
+/**
+ * A request that picks books by their IDs from the last search of its
+ * client. Searches are not logged, so the books a request may pick are
+ * logged with it and given back to it before it is replayed.
+ */
+public interface SearchResultRequest extends Request {
+
+    /**
+     * Get the books of the client's search whose ID is one of the
+     * parameters of the request.
+     * @return The books or null if the client has no search to pick from
+     */
+    SearchResult getPickableBooks();
+
+    /**
+     * Make the given books the search of the client the request picks from.
+     * @param books The books or null if the client had no search
+     */
+    void setSearchResult(SearchResult books);
+}
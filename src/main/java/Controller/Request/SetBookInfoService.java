@@ -11,14 +11,14 @@ public class SetBookInfoService implements Request {
             SERVICE_REQUEST) + DELIMITER + "visitor ID,id[,ids]";
     private AccountDB accountDB;
     private String clientID;
-    private String params;
+    private Params params;
 
     /**
      * Create a set book info service request with the given service.
      * @param clientID The client ID to set for
      * @param params The service to set to
      */
-    public SetBookInfoService(String clientID, String params) {
+    public SetBookInfoService(String clientID, Params params) {
         this.accountDB = AccountDB.getInstance();
         this.clientID = clientID;
         this.params = params;
@@ -29,11 +29,10 @@ public class SetBookInfoService implements Request {
      * @return If the params are correct
      */
     public boolean checkParams() {
-        String[] parts = params.split(DELIMITER);
-        if (parts.length != 1) {
+        if (params.size() != 1) {
             return false;
         }
-        return Service.isService(params);
+        return Service.isService(params.toString());
     }
 
     /**
@@ -0,0 +1,19 @@
+package Controller;
+
+import Controller.Request.Params;
+import Controller.Request.Request;
+
+/**
+ * Creates the request of a command.
+ * @param <T> The type of request created
+ */
+interface RequestFactory<T extends Request> {
+
+    /**
+     * Create the request made by a client.
+     * @param clientID The client making the request
+     * @param params The parameters that follow the command
+     * @return The request
+     */
+    T create(String clientID, Params params);
+}
@@ -0,0 +1,564 @@
+package Controller;
+
+import Controller.Request.RequestUtil;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of everything that changes the system, so the state can be
+ * rebuilt after a crash by replaying the log on top of the last saved
+ * snapshot. Every record holds a sequence number, the library clock at the
+ * time and the request line, and is protected by a checksum. Records are
+ * appended to memory by the command loop and written by a flusher thread
+ * that syncs every record gathered since its last sync at once, so many
+ * requests share one sync. Responses are only sent once their record is
+ * durable. Once a saved state includes the oldest records they are removed
+ * by rewriting the rest of the log to a new file. If a record cannot be
+ * written or synced the log fails: nothing more is appended, and the
+ * actions waiting for records that are not durable are told they never
+ * will be.
+ */
+public class RequestLog implements RequestUtil {
+
+    /**
+     * Kinds of records
+     */
+    public static final byte REQUEST = 0;
+    public static final byte TIME = 1;
+    public static final byte RESULT = 2;
+
+    /**
+     * Bytes at the start of a log file
+     */
+    private static final long MAGIC = 0x4c424d534c4f4731L;
+    private static final int FILE_HEADER_SIZE = Long.BYTES;
+    /**
+     * Bytes of the length and checksum in front of a record
+     */
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    /**
+     * Bytes of the sequence number, clock and kind at the start of a record
+     */
+    private static final int PAYLOAD_HEADER_SIZE = 2 * Long.BYTES + Integer.BYTES + 1;
+    /**
+     * Largest record that is accepted when reading the log
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 21;
+
+    /**
+     * The log file
+     */
+    private File file;
+    /**
+     * Channel records are written through, null until the log is opened
+     */
+    private FileChannel channel;
+    /**
+     * Encoded records waiting for the flusher
+     */
+    private List<ByteBuffer> pending;
+    /**
+     * Actions waiting for a record to become durable, in sequence order
+     */
+    private Queue<Waiter> waiting;
+    /**
+     * Thread that writes and syncs the pending records
+     */
+    private Thread flusher;
+    /**
+     * Sequence number of the last appended record
+     */
+    private volatile long appended;
+    /**
+     * Sequence number of the last durable record
+     */
+    private long durable;
+    /**
+     * If no more records may be appended
+     */
+    private boolean closed;
+    /**
+     * If a record could not be written or synced
+     */
+    private boolean failed;
+    /**
+     * Offset of the first record to keep when the flusher next rewrites the
+     * log, or -1 if the log is not to be rewritten
+     */
+    private long truncateFrom;
+    /**
+     * Why the flusher could not rewrite the log, or null if it could
+     */
+    private IOException truncateError;
+
+    /**
+     * Log metrics
+     */
+    private long records;
+    private long syncs;
+    private long bytes;
+    private long syncNanos;
+    private long failures;
+    private long truncations;
+    private long replayed;
+    private long recoveryMillis;
+
+    /**
+     * Create a log over the given file. The log must be opened before
+     * records are appended.
+     * @param file The log file
+     */
+    public RequestLog(File file) {
+        this.file = file;
+        pending = new ArrayList<>();
+        waiting = new ArrayDeque<>();
+        truncateFrom = -1;
+    }
+
+    /**
+     * Replay the records after the given sequence number and open the log
+     * for appending. A record that was only partly written when the server
+     * stopped is cut off, along with anything after it.
+     * @param after Sequence number of the last record already in the state
+     * @param replayer Receives the records to replay in order
+     * @throws IOException If the log cannot be read or opened, or records
+     *                     between the state and the log are missing
+     */
+    public void open(long after, Replayer replayer) throws IOException {
+        long start = System.nanoTime();
+        long last = after;
+        long end = FILE_HEADER_SIZE;
+        if (file.length() >= FILE_HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readLong() != MAGIC) {
+                    throw new IOException("Not a request log: " + file);
+                }
+                CRC32 crc = new CRC32();
+                while (true) {
+                    ByteBuffer payload;
+                    try {
+                        int length = in.readInt();
+                        int checksum = in.readInt();
+                        if (length < PAYLOAD_HEADER_SIZE || length > MAX_RECORD_SIZE) {
+                            break;
+                        }
+                        payload = ByteBuffer.allocate(length);
+                        in.readFully(payload.array());
+                        crc.reset();
+                        crc.update(payload.array(), 0, length);
+                        if ((int) crc.getValue() != checksum) {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    end += RECORD_HEADER_SIZE + payload.capacity();
+                    long seq = payload.getLong();
+                    LocalDateTime clock = LocalDateTime.ofEpochSecond(
+                            payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+                    byte kind = payload.get();
+                    if (seq > last + 1) {
+                        throw new IOException("Request log " + file + " is missing records " +
+                                (last + 1) + " to " + (seq - 1));
+                    }
+                    if (seq > after) {
+                        String line = new String(payload.array(), payload.position(),
+                                payload.remaining(), StandardCharsets.UTF_8);
+                        replayer.replay(kind, clock, line);
+                        replayed++;
+                    }
+                    last = Math.max(last, seq);
+                }
+            }
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putLong(MAGIC).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        else if (channel.size() > end) {
+            System.err.println("Discarding " + (channel.size() - end) +
+                    " unreadable bytes at the end of " + file);
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+        appended = last;
+        durable = last;
+        recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        flusher = new Thread(this::flush, "request-log");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Append a record. The record is durable once the flusher has synced it.
+     * @param kind The kind of record
+     * @param clock The library clock when the record was made
+     * @param line The request line, empty for time records
+     * @return The sequence number of the record
+     */
+    public synchronized long append(byte kind, LocalDateTime clock, String line) {
+        if (failed) {
+            throw new IllegalStateException("Request log failed");
+        }
+        if (closed || channel == null) {
+            throw new IllegalStateException("Request log is not open");
+        }
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        int length = PAYLOAD_HEADER_SIZE + text.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        long seq = appended + 1;
+        record.position(RECORD_HEADER_SIZE);
+        record.putLong(seq);
+        record.putLong(clock.toEpochSecond(ZoneOffset.UTC));
+        record.putInt(clock.getNano());
+        record.put(kind);
+        record.put(text);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+        pending.add(record);
+        appended = seq;
+        records++;
+        notifyAll();
+        return seq;
+    }
+
+    /**
+     * Get the sequence number of the last appended record.
+     * @return The sequence number
+     */
+    public long getAppended() {
+        return appended;
+    }
+
+    /**
+     * Perform an action once the given record is durable, or another action
+     * if the log failed before it was. Actions are performed in the order
+     * they are given, either right away or on the flusher thread, so they
+     * must be short.
+     * @param seq Sequence number of the record
+     * @param action The action to perform once the record is durable
+     * @param failure The action to perform if the record never will be
+     */
+    public synchronized void whenDurable(long seq, Runnable action, Runnable failure) {
+        if (seq <= durable && waiting.isEmpty()) {
+            action.run();
+        }
+        else if (failed) {
+            failure.run();
+        }
+        else {
+            waiting.add(new Waiter(seq, action, failure));
+        }
+    }
+
+    /**
+     * Wait until the given record is durable.
+     * @param seq Sequence number of the record
+     * @return If the record is durable, false if the log failed first
+     */
+    public synchronized boolean awaitDurable(long seq) {
+        try {
+            while (durable < seq && !failed && flusher != null && flusher.isAlive()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return durable >= seq;
+    }
+
+    /**
+     * Remove the records up to the given sequence number, because a saved
+     * state includes them. Waits until they are durable and the flusher has
+     * rewritten the log without them.
+     * @param position Sequence number of the last record in the saved state
+     * @throws IOException If the log cannot be read, failed, or could not be
+     *                     rewritten; the records are then still in the log
+     */
+    public void truncate(long position) throws IOException {
+        if (!awaitDurable(position)) {
+            throw new IOException("Request log failed before record " + position + " was durable");
+        }
+        long offset = find(position);
+        synchronized (this) {
+            truncateFrom = offset;
+            truncateError = null;
+            notifyAll();
+            try {
+                while (truncateFrom >= 0 && !closed && !failed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (truncateError != null) {
+                IOException error = truncateError;
+                truncateError = null;
+                throw new IOException("Request log could not be truncated after record " +
+                        position, error);
+            }
+            if (truncateFrom >= 0) {
+                throw new IOException("Request log was not truncated after record " + position);
+            }
+        }
+    }
+
+    /**
+     * Find the first record after the given sequence number. Only durable
+     * records are read, which the flusher no longer changes.
+     * @param position The sequence number
+     * @return Offset of the first later record or of the end of the log
+     * @throws IOException If the log cannot be read
+     */
+    private long find(long position) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            in.readLong();
+            long offset = FILE_HEADER_SIZE;
+            while (true) {
+                int length;
+                long seq;
+                try {
+                    length = in.readInt();
+                    in.readInt();
+                    seq = in.readLong();
+                } catch (EOFException e) {
+                    return offset;
+                }
+                if (seq > position) {
+                    return offset;
+                }
+                offset += RECORD_HEADER_SIZE + length;
+                in.skipBytes(length - Long.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Copy the records from the given offset to a new log file and replace
+     * the log with it. The old log stays complete until the new one has
+     * replaced it.
+     * @param from Offset of the first record to keep
+     * @throws IOException If the new log cannot be written
+     */
+    private void rewrite(long from) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putLong(MAGIC).flip();
+            out.write(header);
+            long size = channel.size();
+            for (long position = from; position < size; ) {
+                position += channel.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Write and sync the pending records until the log is closed or fails,
+     * and rewrite the log when it is truncated.
+     */
+    private void flush() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long target;
+            long from;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && truncateFrom < 0 && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.isEmpty() && truncateFrom < 0) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                target = appended;
+                from = truncateFrom;
+            }
+            if (!batch.isEmpty() && !write(batch, target)) {
+                return;
+            }
+            if (from >= 0) {
+                IOException error = null;
+                try {
+                    rewrite(from);
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (this) {
+                    truncateFrom = -1;
+                    truncateError = error;
+                    if (error == null) {
+                        truncations++;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write and sync a batch of records, then perform the actions waiting
+     * for them. If the batch cannot be written or synced, part of it may be
+     * in the file, so the log fails: the durable records stay as they were
+     * and every waiting action is told its record will not be durable. The
+     * partly written records are cut off when the log is next opened.
+     * @param batch The encoded records
+     * @param target Sequence number of the last record in the batch
+     * @return If the batch is durable
+     */
+    private boolean write(List<ByteBuffer> batch, long target) {
+        long written = 0;
+        try {
+            ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+            for (ByteBuffer buffer : buffers) {
+                written += buffer.remaining();
+            }
+            long remaining = written;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            long start = System.nanoTime();
+            channel.force(false);
+            synchronized (this) {
+                syncNanos += System.nanoTime() - start;
+                syncs++;
+                bytes += written;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                failures++;
+                failed = true;
+                pending.clear();
+                while (!waiting.isEmpty()) {
+                    waiting.poll().failure.run();
+                }
+                notifyAll();
+            }
+            return false;
+        }
+        synchronized (this) {
+            durable = target;
+            while (!waiting.isEmpty() && waiting.peek().seq <= durable) {
+                waiting.poll().action.run();
+            }
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Sync every appended record and close the log.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            if (flusher != null && flusher != Thread.currentThread()) {
+                flusher.join();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * String representation of the log metrics to be used as a response.
+     * @return The string form of the metrics
+     */
+    @Override
+    public synchronized String toString() {
+        return "Log Records Appended: " + records + NEW_LINE +
+                "Log Syncs: " + syncs + NEW_LINE +
+                "Log Records Per Sync: " + (syncs == 0 ? 0 : records / syncs) + NEW_LINE +
+                "Average Log Sync (us): " +
+                (syncs == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(syncNanos / syncs)) + NEW_LINE +
+                "Log Written (KB): " + (bytes >> 10) + NEW_LINE +
+                "Log Write Failures: " + failures + NEW_LINE +
+                "Log Truncations: " + truncations + NEW_LINE +
+                "Log Records Replayed: " + replayed + NEW_LINE +
+                "Log Recovery Time (ms): " + recoveryMillis + NEW_LINE;
+    }
+
+    /**
+     * Receives the records of the log when it is replayed.
+     */
+    public interface Replayer {
+
+        /**
+         * Replay a record.
+         * @param kind The kind of record
+         * @param clock The library clock when the record was made
+         * @param line The request line, empty for time records
+         */
+        void replay(byte kind, LocalDateTime clock, String line);
+    }
+
+    /**
+     * An action waiting for a record to become durable.
+     */
+    private static class Waiter {
+
+        private long seq;
+        private Runnable action;
+        private Runnable failure;
+
+        private Waiter(long seq, Runnable action, Runnable failure) {
+            this.seq = seq;
+            this.action = action;
+            this.failure = failure;
+        }
+    }
+}
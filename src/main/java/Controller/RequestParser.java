@@ -9,6 +9,7 @@ import Model.Library.ReportGenerator;
 import Model.Library.TimeKeeper;
 import Model.Visitor.VisitorDB;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,10 +22,24 @@ import java.util.Map;
 public class RequestParser implements Parser {
 
     /**
-     * Clients to their possible partial requests. Clients do not have a
-     * partial request if the string is empty.
+     * Request of every command that does not exist
      */
-    private Map<String, String> partialRequests;
+    private static final Request ILLEGAL = new Illegal();
+
+    /**
+     * Request of every request that is not complete yet
+     */
+    private static final Request PARTIAL = new Partial();
+
+    /**
+     * Clients to their unfinished requests
+     */
+    private Map<String, PartialRequest> partialRequests;
+
+    /**
+     * Library time abandoned partial requests are removed at next
+     */
+    private LocalDateTime nextEviction;
 
     /**
      * Library system to keep track of library state and system databases
@@ -35,6 +50,16 @@ public class RequestParser implements Parser {
 
     private ReportGenerator reportGenerator;
 
+    /**
+     * Finds the parts of each request
+     */
+    private RequestTokenizer tokenizer;
+
+    /**
+     * Commands to the factories of their requests
+     */
+    private CommandTable commands;
+
     /**
      * Creates a new RequestParser
      * @param librarySystem The LibrarySystem containing the visitor, checkout, and book databases.
@@ -45,6 +70,63 @@ public class RequestParser implements Parser {
         this.librarySystem = librarySystem;
         this.timeKeeper = timeKeeper;
         this.reportGenerator = reportGenerator;
+        this.tokenizer = new RequestTokenizer();
+        this.commands = new CommandTable();
+        registerCommands();
+    }
+
+    /**
+     * Register the request of every command. Requests that only read the
+     * state of the library are reused, which is safe because a parser is
+     * only used by the thread of the command loop. Requests that change the
+     * state are created for every command so they can be kept in the
+     * command history of an account.
+     */
+    private void registerCommands() {
+        commands.put(REGISTER_REQUEST, (clientID, params) ->
+                new RegisterVisitor(timeKeeper, clientID, params));
+        commands.put(ARRIVE_REQUEST, (clientID, params) ->
+                new BeginVisit(timeKeeper, librarySystem, clientID, params));
+        commands.put(DEPART_REQUEST, (clientID, params) ->
+                new EndVisit(timeKeeper, clientID, params));
+        commands.put(INFO_REQUEST, new Reused(LibraryBookSearch::new));
+        commands.put(BORROW_REQUEST, (clientID, params) ->
+                new BorrowBook(librarySystem, clientID, params));
+        commands.put(BORROWED_REQUEST, new Reused(FindBorrowedBooks::new));
+        commands.put(RETURN_REQUEST, (clientID, params) ->
+                new ReturnBook(timeKeeper, clientID, params));
+        commands.put(PAY_REQUEST, PayFine::new);
+        commands.put(SEARCH_REQUEST, new Reused(BookStoreSearch::new));
+        commands.put(BUY_REQUEST, BookPurchase::new);
+        commands.put(ADVANCE_REQUEST, (clientID, params) ->
+                new AdvanceTime(reportGenerator, timeKeeper, clientID, params));
+        commands.put(DATE_TIME_REQUEST, new Reused((clientID, params) ->
+                new CurrentDateTime(timeKeeper, clientID)));
+        commands.put(REPORT_REQUEST, new Reused((clientID, params) ->
+                new LibraryStatisticsReport(reportGenerator, clientID, params)));
+        commands.put(CREATE_REQUEST, CreateAccount::new);
+        commands.put(LOGIN_REQUEST, Login::new);
+        commands.put(LOGOUT_REQUEST, (clientID, params) -> new Logout(clientID));
+        commands.put(SERVICE_REQUEST, SetBookInfoService::new);
+        commands.put(UNDO_REQUEST, (clientID, params) -> new Undo(clientID));
+        commands.put(REDO_REQUEST, (clientID, params) -> new Redo(clientID));
+    }
+
+    /**
+     * Get the partial requests of the clients.
+     * @return Clients to their partial requests
+     */
+    public Map<String, PartialRequest> getPartialRequests() {
+        return partialRequests;
+    }
+
+    /**
+     * Set the partial requests of the clients. Used to continue from a saved
+     * state.
+     * @param partialRequests Clients to their partial requests
+     */
+    public void setPartialRequests(Map<String, PartialRequest> partialRequests) {
+        this.partialRequests = partialRequests;
     }
 
     /**
@@ -58,139 +140,90 @@ public class RequestParser implements Parser {
     }
 
     /**
-     * Checks if the client ID has a partial request stored in the parser.
-     * @param clientID The client to check for
-     * @return If a partial request exists.
-     */
-    private boolean hasPartial(String clientID) {
-        if (partialRequests.containsKey(clientID)) {
-            String partial = partialRequests.get(clientID);
-            return !partial.isEmpty();
-        }
-        return false;
-    }
-
-    /**
-     * Determines if a request is unfinished or not.
+     * Determines if a request is unfinished or not. Fragments of an
+     * unfinished request are buffered until a fragment ends with the
+     * terminator, so only the newest fragment is checked for the end.
      * @param request The request to be parsed.
      * @return a partial request, or a call to create the request depending on whether the request was complete.
      */
     private Request determineRequest(String request) {
-        String[] parts = request.split(DELIMITER, 2);
-        String clientID = parts[0];
-        String req = parts[1];
-        // Check if partial request first
-        if (!req.endsWith(TERMINATOR) || hasPartial(clientID)) {
-            String partial = partialRequests.get(clientID);
-            // Make null value of map always empty string
-            if (partial == null) {
-                partial = "";
-            }
-            partial += req;
-            if (req.endsWith(TERMINATOR)) {
-                partialRequests.put(clientID, "");
-                return helpCreateRequest(clientID, partial);
-            }
+        tokenizer.tokenize(request);
+        String clientID = tokenizer.getClientID();
+        LocalDateTime now = timeKeeper.getPreciseClock();
+        evictIdle(now);
+        PartialRequest partial = partialRequests.get(clientID);
+        // An abandoned request is dropped even if it was not evicted yet
+        if (partial != null && partial.isIdle(now)) {
+            partial = null;
+        }
+        if (partial == null && tokenizer.isTerminated()) {
+            return createRequest(clientID);
+        }
+        if (partial == null) {
+            partial = new PartialRequest(now);
             partialRequests.put(clientID, partial);
-            // return partial request
-            return new Partial();
         }
-        else {
-            return helpCreateRequest(clientID, req);
+        partial.append(request, tokenizer.getBodyStart(), now);
+        if (!tokenizer.isTerminated()) {
+            return PARTIAL;
+        }
+        partialRequests.remove(clientID);
+        if (partial.isOverflowed()) {
+            return new Simple(clientID + DELIMITER + REQUEST_TOO_LONG + TERMINATOR);
         }
+        tokenizer.tokenizeBody(partial.toString());
+        return createRequest(clientID);
     }
 
     /**
-     * Splits the request into the command and its parameters, and calls createRequest with the parts.
-     * @param clientID The client ID to be used by requests
-     * @param request the request to be split.
-     * @return a new request based on the command and parameters given.
+     * Remove the partial requests that were abandoned, at most once a
+     * minute of library time.
+     * @param now The library time
      */
-    private Request helpCreateRequest(String clientID, String request) {
-        // Break request into a command and its parameters
-        String[] parts = request.split(DELIMITER, 2);
-        return createRequest(clientID, parts);
+    private void evictIdle(LocalDateTime now) {
+        if (nextEviction != null && now.isBefore(nextEviction)) {
+            return;
+        }
+        partialRequests.values().removeIf(partial -> partial.isIdle(now));
+        nextEviction = now.plusMinutes(1);
     }
 
     /**
-     * Creates, executes, and returns the request, given a command, and parameters.
+     * Creates and returns the request from the command and parameters found
+     * by the tokenizer.
      * @param clientID The client ID to be used by requests
-     * @param parts The parts of the request, a command and possibly its parameters
-     * @return The request that was executed.
-     */
-    private Request createRequest(String clientID, String[] parts) {
-        Request request;
-        String command = parts[0];
-        String params = "";
-        if (parts.length == 2) {
-            params = parts[1];
-            // Remove terminating character
-            params = params.substring(0, params.length() - 1);
-        } else {
-            command = command.substring(0, command.length() - 1);
+     * @return The request that was created.
+     */
+    private Request createRequest(String clientID) {
+        RequestFactory<?> factory = tokenizer.getFactory(commands);
+        if (factory == null) {
+            return ILLEGAL;
+        }
+        return factory.create(clientID, tokenizer.getParams());
+    }
+
+    /**
+     * Factory that creates its request once and then resets it for every
+     * following command.
+     */
+    private static class Reused implements RequestFactory<Request> {
+
+        private RequestFactory<? extends ReusableRequest> factory;
+        private ReusableRequest request;
+
+        private Reused(RequestFactory<? extends ReusableRequest> factory) {
+            this.factory = factory;
         }
-        switch (command) {
-            case REGISTER_REQUEST:
-                request = new RegisterVisitor(timeKeeper, clientID, params);
-                break;
-            case ARRIVE_REQUEST:
-                request = new BeginVisit(timeKeeper, librarySystem, clientID, params);
-                break;
-            case DEPART_REQUEST:
-                request = new EndVisit(timeKeeper, clientID, params);
-                break;
-            case INFO_REQUEST:
-                request = new LibraryBookSearch(clientID, params);
-                break;
-            case BORROW_REQUEST:
-                request = new BorrowBook(librarySystem, clientID, params);
-                break;
-            case BORROWED_REQUEST:
-                request = new FindBorrowedBooks(clientID, params);
-                break;
-            case RETURN_REQUEST:
-                request = new ReturnBook(timeKeeper, clientID, params);
-                break;
-            case PAY_REQUEST:
-                request = new PayFine(clientID, params);
-                break;
-            case SEARCH_REQUEST:
-                request = new BookStoreSearch(clientID, params);
-                break;
-            case BUY_REQUEST:
-                request = new BookPurchase(clientID, params);
-                break;
-            case ADVANCE_REQUEST:
-                request = new AdvanceTime(reportGenerator, timeKeeper, clientID, params);
-                break;
-            case DATE_TIME_REQUEST:
-                request = new CurrentDateTime(timeKeeper, clientID);
-                break;
-            case REPORT_REQUEST:
-                request = new LibraryStatisticsReport(reportGenerator, clientID, params);
-                break;
-            case CREATE_REQUEST:
-                request = new CreateAccount(clientID, params);
-                break;
-            case LOGIN_REQUEST:
-                request = new Login(clientID, params);
-                break;
-            case LOGOUT_REQUEST:
-                request = new Logout(clientID);
-                break;
-            case SERVICE_REQUEST:
-                request = new SetBookInfoService(clientID, params);
-                break;
-            case UNDO_REQUEST:
-                request = new Undo(clientID);
-                break;
-            case REDO_REQUEST:
-                request = new Redo(clientID);
-                break;
-            default:
-                request = new Illegal();
-                break;
+
+        @Override
+        public Request create(String clientID, Params params) {
+            if (request == null) {
+                request = factory.create(clientID, params);
+            }
+            else {
+                request.reset(clientID, params);
+            }
+            return request;
         }
-        return request;
     }
 }
@@ -0,0 +1,160 @@
+package Controller;
+
+import Controller.Request.Params;
+import Controller.Request.RequestUtil;
+
+/**
+ * Finds the client ID, command and parameters of a request in one pass over
+ * its text. The parts are kept as offsets into the text, so a parser can
+ * check them without copying them. A tokenizer is reused for every request
+ * a parser reads.
+ */
+class RequestTokenizer implements RequestUtil {
+
+    /**
+     * The request being read
+     */
+    private CharSequence text;
+    /**
+     * Position of the delimiter after the client ID or -1 if there is none
+     */
+    private int clientEnd;
+    /**
+     * Position of the first character after the client ID
+     */
+    private int bodyStart;
+    /**
+     * Position of the first character of the command
+     */
+    private int commandStart;
+    /**
+     * Position after the last character of the command
+     */
+    private int commandEnd;
+    /**
+     * Position of the first character of the parameters
+     */
+    private int paramsStart;
+    /**
+     * Position after the last character of the parameters
+     */
+    private int paramsEnd;
+
+    /**
+     * Read a request that starts with a client ID.
+     * @param text The request
+     */
+    void tokenize(CharSequence text) {
+        this.text = text;
+        clientEnd = indexOfDelimiter(0);
+        bodyStart = clientEnd < 0 ? text.length() : clientEnd + 1;
+        findCommand(bodyStart);
+    }
+
+    /**
+     * Read a request without its client ID, such as a reassembled partial
+     * request.
+     * @param text The request
+     */
+    void tokenizeBody(CharSequence text) {
+        this.text = text;
+        clientEnd = -1;
+        bodyStart = 0;
+        findCommand(bodyStart);
+    }
+
+    /**
+     * Find the command and its parameters. Like the terminator, the last
+     * character of a request is not part of them.
+     * @param start Position of the first character of the command
+     */
+    private void findCommand(int start) {
+        int length = text.length();
+        commandStart = start;
+        int delimiter = indexOfDelimiter(start);
+        if (delimiter < 0) {
+            commandEnd = Math.max(start, length - 1);
+            paramsStart = paramsEnd = commandEnd;
+        }
+        else {
+            commandEnd = delimiter;
+            paramsStart = delimiter + 1;
+            paramsEnd = Math.max(paramsStart, length - 1);
+        }
+    }
+
+    /**
+     * Find the next delimiter.
+     * @param from Position to start looking at
+     * @return Position of the delimiter or -1 if there is none
+     */
+    private int indexOfDelimiter(int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == DELIMITER.charAt(0)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the client ID.
+     * @return The text before the first delimiter
+     */
+    String getClientID() {
+        return text.subSequence(0, clientEnd < 0 ? text.length() : clientEnd).toString();
+    }
+
+    /**
+     * Get the position of everything after the client ID.
+     * @return Position after the first delimiter
+     */
+    int getBodyStart() {
+        return bodyStart;
+    }
+
+    /**
+     * Check if everything after the client ID is equal to a value without
+     * copying it.
+     * @param value The value to compare to
+     * @return If the text after the first delimiter is the value
+     */
+    boolean bodyEquals(String value) {
+        if (text.length() - bodyStart != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(bodyStart + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the text after the client ID ends with the terminator.
+     * @return If the request is complete
+     */
+    boolean isTerminated() {
+        int length = text.length();
+        return length > bodyStart && text.charAt(length - 1) == TERMINATOR.charAt(0);
+    }
+
+    /**
+     * Look up the command without copying it.
+     * @param commands The commands that exist
+     * @return The factory of the command or null if it does not exist
+     */
+    RequestFactory<?> getFactory(CommandTable commands) {
+        return commands.get(text, commandStart, commandEnd);
+    }
+
+    /**
+     * Get the parameters of the command. The fields are only split when a
+     * request reads them.
+     * @return The parameters
+     */
+    Params getParams() {
+        return new Params(text, paramsStart, paramsEnd);
+    }
+}
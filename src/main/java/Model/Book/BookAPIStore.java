@@ -1,10 +1,12 @@
 package Model.Book;
 
 import Controller.Request.RequestUtil;
-import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -14,6 +16,16 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The API bookstore that uses the Google Books API to search for books.
@@ -29,54 +41,288 @@ public class BookAPIStore extends BookStorage implements RequestUtil {
     private static final String Q_AUTHOR = "inauthor=";
     private static final String Q_ISBN = "isbn=";
     private static final String Q_PUBLISHER = "inpublisher=";
+    /**
+     * Paging parameters
+     */
+    private static final String Q_START_INDEX = "startIndex=";
+    private static final String Q_MAX_RESULTS = "maxResults=";
+    /**
+     * Most results the API returns for one request
+     */
+    private static final int MAX_RESULTS = 40;
 
     /**
      * Parts of the url you will need to create a connection.
      */
     private static final String URL = "https://www.googleapis.com/books/v1/volumes";
     // See this page for search parameters: https://developers.google.com/books/docs/v1/using
+    /**
+     * Directory that keeps cached searches across restarts if it exists
+     */
+    private static final String CACHE_PATH = "assets/google-cache";
+    /**
+     * Limits on waiting for the web service
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long SEARCH_TIMEOUT_MILLIS = 8000;
+    /**
+     * Number of requests that may be sent to the web service at once
+     */
+    private static final int REQUEST_THREADS = 4;
+    /**
+     * Size of the buffer used to discard error responses
+     */
+    private static final int DRAIN_BUFFER_SIZE = 512;
+
+    /**
+     * Address of the volumes search of the web service
+     */
+    private String url;
+    /**
+     * Cache of the books found by previous searches
+     */
+    private SearchCache cache;
+    /**
+     * Threads that send requests to the web service
+     */
+    private ExecutorService requests;
+    /**
+     * Thread that fails the searches the web service takes too long for
+     */
+    private ScheduledExecutorService deadlines;
+    /**
+     * Requests waiting for the web service by query
+     */
+    private Map<String, CompletableFuture<List<BookInfo>>> inFlight;
+    /**
+     * Request metrics
+     */
+    private AtomicLong coalesced;
+    private AtomicLong failures;
+
+    /**
+     * Create an API bookstore that searches the Google Books API.
+     */
+    public BookAPIStore() {
+        this(URL);
+    }
+
+    /**
+     * Create an API bookstore that searches a web service at the given
+     * address, which must answer like the Google Books API.
+     * @param url Address of the volumes search
+     */
+    public BookAPIStore(String url) {
+        super();
+        this.url = url;
+        File directory = new File(CACHE_PATH);
+        cache = new SearchCache(directory.isDirectory() ? directory : null);
+        requests = Executors.newFixedThreadPool(REQUEST_THREADS, task -> {
+            Thread thread = new Thread(task, "books-api");
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadlines = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "books-api-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        inFlight = new ConcurrentHashMap<>();
+        coalesced = new AtomicLong();
+        failures = new AtomicLong();
+    }
 
     /**
      * Search the books through the Google Books API web service. The JSON
-     * response must be interpreted into book information.
+     * response must be interpreted into book information. The calling
+     * thread waits until the search completes, which takes at most the
+     * search timeout.
      * @param title Title search parameter
      * @param authors Authors search parameter
      * @param isbn ISBN search parameter
      * @param publisher Publisher search parameter
      * @param sort Sort the search by either title or publish-date
-     * @return Mapping of the books
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The books found by the search
      */
     @Override
-    public Map<String, BookInfo> searchBooks(String title,
-                                             List<String> authors,
-                                             String isbn,
-                                             String publisher, String sort) {
-        Map<String, BookInfo> searchedBooks;
-        List<BookInfo> hits = null;
-        String query = createQuery(title, authors, isbn, publisher);
+    public SearchResult searchBooks(String title,
+                                    List<String> authors,
+                                    String isbn,
+                                    String publisher, String sort,
+                                    int offset, int limit) {
+        CompletableFuture<SearchResult> search = searchBooksAsync(title,
+                authors, isbn, publisher, sort, offset, limit);
         try {
-            URL BookURL = new URL(URL + query);
-            HttpURLConnection conn = (HttpURLConnection) BookURL.openConnection();
-            conn.setRequestMethod("GET");
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            // Build a single one line string of JSON
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-            }
-            in.close();
-            hits = parseJSONString(response.toString());
+            return search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        failures.incrementAndGet();
+        return createResult(new ArrayList<>(), offset);
+    }
+
+    /**
+     * Search the books through the Google Books API web service without
+     * waiting for the response. Identical searches that are still waiting
+     * for the web service share one request. A search that fails or is not
+     * answered within the search timeout completes with no books.
+     * @param title Title search parameter
+     * @param authors Authors search parameter
+     * @param isbn ISBN search parameter
+     * @param publisher Publisher search parameter
+     * @param sort Sort the search by either title or publish-date
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The books found by the search once they arrive
+     */
+    public CompletableFuture<SearchResult> searchBooksAsync(String title,
+                                                           List<String> authors,
+                                                           String isbn,
+                                                           String publisher,
+                                                           String sort,
+                                                           int offset, int limit) {
+        String query = createQuery(title, authors, isbn, publisher) +
+                createPage(offset, limit);
+        return fetch(query).handle((hits, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                failures.incrementAndGet();
+                hits = new ArrayList<>();
+            }
             hits = sortBooks(hits, sort);
             if (hits == null) {
                 return null;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            // The API already skipped the offset, so only the limit applies
+            return createResult(page(hits, 0, limit), offset);
+        });
+    }
+
+    /**
+     * Get the books found by a query from the cache, from a request already
+     * waiting for the same query or from a new request on the request pool.
+     * @param query The search query
+     * @return The books found, in a list the caller may change
+     */
+    private CompletableFuture<List<BookInfo>> fetch(String query) {
+        // Searches made recently or before a restart skip the web service
+        List<BookInfo> cached = cache.get(query);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<List<BookInfo>> created = new CompletableFuture<>();
+        CompletableFuture<List<BookInfo>> waiting = inFlight.putIfAbsent(query, created);
+        if (waiting != null) {
+            coalesced.incrementAndGet();
+            return waiting.thenApply(ArrayList::new);
+        }
+        ScheduledFuture<?> deadline = deadlines.schedule(() ->
+                created.completeExceptionally(new TimeoutException(
+                        "Books API did not respond within " + SEARCH_TIMEOUT_MILLIS + " ms")),
+                SEARCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        requests.execute(() -> {
+            try {
+                List<BookInfo> hits = request(query, created);
+                cache.put(query, hits);
+                created.complete(hits);
+            } catch (IOException | RuntimeException e) {
+                created.completeExceptionally(e);
+            } finally {
+                deadline.cancel(false);
+                inFlight.remove(query, created);
+            }
+        });
+        return created.thenApply(ArrayList::new);
+    }
+
+    /**
+     * Send a query to the web service and read the books in its response.
+     * The response is always read to the end and closed so the connection
+     * can be kept alive for the next request. The connection is closed if
+     * the search fails first, which stops a response that never ends.
+     * @param query The search query
+     * @param search The search waiting for the books
+     * @return The books found
+     * @throws IOException If the web service cannot be reached or fails
+     */
+    private List<BookInfo> request(String query, CompletableFuture<?> search)
+            throws IOException {
+        URL bookURL = new URL(url + query);
+        HttpURLConnection conn = (HttpURLConnection) bookURL.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        // Connected first, so a search that already failed closes the socket
+        conn.connect();
+        search.whenComplete((hits, error) -> {
+            if (error != null) {
+                conn.disconnect();
+            }
+        });
+        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            InputStream error = conn.getErrorStream();
+            if (error != null) {
+                drain(error);
+            }
+            throw new IOException("Books API responded " + conn.getResponseCode());
+        }
+        try (InputStream body = conn.getInputStream()) {
+            // Decode the books straight off the stream
+            JsonReader reader = new JsonReader(new InputStreamReader(body,
+                    StandardCharsets.UTF_8));
+            List<BookInfo> hits = parseResponse(reader);
+            drain(body);
+            return hits;
+        }
+    }
+
+    /**
+     * Read a stream to the end and close it.
+     * @param in The stream to drain
+     * @throws IOException If the stream cannot be read
+     */
+    private void drain(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (stream.read(buffer) >= 0) {
+                // Discard the error body
+            }
         }
-        searchedBooks = createMap(hits);
-        return searchedBooks;
+    }
+
+    /**
+     * String representation of the search cache and request metrics to be
+     * used as a response.
+     * @return The string form of the metrics
+     */
+    public String getSearchStats() {
+        return cache +
+                "Google Searches In Flight: " + inFlight.size() + NEW_LINE +
+                "Google Searches Coalesced: " + coalesced.get() + NEW_LINE +
+                "Google Search Failures: " + failures.get() + NEW_LINE;
+    }
+
+    /**
+     * Create the paging parameters of the search query. The API sorts by
+     * relevance, so a sort order only applies within the page.
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The paging parameters to add to the query
+     */
+    private String createPage(int offset, int limit) {
+        String page = "";
+        if (offset > 0) {
+            page += "&" + Q_START_INDEX + offset;
+        }
+        if (limit != Integer.MAX_VALUE) {
+            page += "&" + Q_MAX_RESULTS + Math.max(1, Math.min(limit, MAX_RESULTS));
+        }
+        return page;
     }
 
     /**
@@ -132,107 +378,242 @@ public class BookAPIStore extends BookStorage implements RequestUtil {
     }
 
     /**
-     * Parse the JSON response book by book.
-     * @param response The JSON response produced by a web request
+     * Parse the JSON response book by book. Only the fields used by book
+     * info are decoded and items that are not for sale in the US are
+     * skipped without decoding the rest of them.
+     * @param reader Reader over the JSON response
+     * @return The books in the response
+     * @throws IOException If the response is not a JSON object
      */
-    private List<BookInfo> parseJSONString(String response) {
-        // Tutorial: http://tutorials.jenkov.com/java-json/gson-jsonparser.html
-        JsonParser jsonParser = new JsonParser();
-        JsonElement jsonTree = jsonParser.parse(response);
-        if (!jsonTree.isJsonObject()) {
-            return null;
+    private List<BookInfo> parseResponse(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new IOException("Books API response is not a JSON object");
         }
         List<BookInfo> hits = new ArrayList<>();
-        JsonObject jsonObject = jsonTree.getAsJsonObject();
-        JsonArray booksArray = jsonObject.getAsJsonArray("items");
-        // Iterate over each book or item
-        for (int i = 0; i < booksArray.size(); i++) {
-            String title;
-            List<String> authors = new ArrayList<>();
-            String isbn = null;
-            String publisher;
-            String publishDate;
-            int pageCount;
-            // Retrieve book and needed info
-            JsonObject book = booksArray.get(i).getAsJsonObject();
-            JsonObject volumeInfo = book.getAsJsonObject("volumeInfo");
-            JsonObject saleInfo = book.getAsJsonObject("saleInfo");
-            // Check saleability is "FOR_SALE"
-            JsonElement saleField = saleInfo.get("saleability");
-            if (!saleField.toString().equals("\"FOR_SALE\"")) {
-                continue;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("items") &&
+                    reader.peek() == JsonToken.BEGIN_ARRAY) {
+                // Iterate over each book or item
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    BookInfo book = readItem(reader);
+                    if (book != null) {
+                        hits.add(book);
+                    }
+                }
+                reader.endArray();
             }
-            // Check country is "US"
-            JsonElement countryField = saleInfo.get("country");
-            if (!countryField.toString().equals("\"US\"")) {
-                continue;
+            else {
+                reader.skipValue();
             }
-            // Check title exists
-            JsonElement titleField = volumeInfo.get("title");
-            if (titleField == null) {
-                continue;
+        }
+        reader.endObject();
+        return hits;
+    }
+
+    /**
+     * Read one item of the response.
+     * @param reader Reader positioned at the item
+     * @return The book of the item or null if it is incomplete or not for
+     *         sale in the US
+     * @throws IOException If the item cannot be read
+     */
+    private BookInfo readItem(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        Volume volume = new Volume();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // Once the item is known to be ineligible the rest is skipped
+            if (volume.eligible && name.equals("volumeInfo") &&
+                    reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readVolumeInfo(reader, volume);
             }
-            title = titleField.toString();
-            title = trimQuotes(title);
-            // Check authors exist
-            JsonArray authorsArray = volumeInfo.getAsJsonArray("authors");
-            if (authorsArray == null) {
-                continue;
+            else if (volume.eligible && name.equals("saleInfo") &&
+                    reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readSaleInfo(reader, volume);
             }
-            for (int a = 0; a < authorsArray.size(); a++) {
-                JsonElement authorElement = authorsArray.get(a);
-                String authorField = authorElement.toString();
-                authorField = trimQuotes(authorField);
-                authors.add(authorField);
+            else {
+                reader.skipValue();
             }
-            // Check isbn exists
-            JsonArray identifiers = volumeInfo.getAsJsonArray("industryIdentifiers");
-            if (identifiers == null) {
-                continue;
+        }
+        reader.endObject();
+        return volume.toBookInfo();
+    }
+
+    /**
+     * Read the sale info of an item. Only books for sale in the US are
+     * eligible.
+     * @param reader Reader positioned at the sale info
+     * @param volume The volume being read
+     * @throws IOException If the sale info cannot be read
+     */
+    private void readSaleInfo(JsonReader reader, Volume volume) throws IOException {
+        boolean forSale = false;
+        boolean inUS = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "saleability":
+                    forSale = "FOR_SALE".equals(readString(reader));
+                    break;
+                case "country":
+                    inUS = "US".equals(readString(reader));
+                    break;
+                default:
+                    reader.skipValue();
             }
-            for (int z = 0; z < identifiers.size(); z++) {
-                JsonElement isbnElement = identifiers.get(z).getAsJsonObject().get("identifier");
-                String isbnField = isbnElement.toString();
-                // We want ISBN_13
-                if (isbnField.length() == 13 + 2) {
-                    // Remove quotes
-                    isbn = trimQuotes(isbnField);
+        }
+        reader.endObject();
+        volume.saleInfoRead = true;
+        volume.eligible = forSale && inUS;
+    }
+
+    /**
+     * Read the volume info of an item.
+     * @param reader Reader positioned at the volume info
+     * @param volume The volume being read
+     * @throws IOException If the volume info cannot be read
+     */
+    private void readVolumeInfo(JsonReader reader, Volume volume) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    volume.title = readString(reader);
                     break;
-                }
+                case "authors":
+                    volume.authors = readAuthors(reader);
+                    break;
+                case "industryIdentifiers":
+                    volume.isbn = readIsbn(reader);
+                    break;
+                case "publisher":
+                    volume.publisher = readString(reader);
+                    break;
+                case "publishedDate":
+                    volume.publishDate = readString(reader);
+                    break;
+                case "pageCount":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        volume.pageCount = reader.nextInt();
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
             }
-            // Check publisher exists
-            JsonElement publisherField = volumeInfo.get("publisher");
-            if (publisherField == null) {
-                continue;
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the authors of a volume.
+     * @param reader Reader positioned at the authors
+     * @return The authors or null if they are not an array
+     * @throws IOException If the authors cannot be read
+     */
+    private List<String> readAuthors(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        List<String> authors = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String author = readString(reader);
+            if (author != null) {
+                authors.add(author);
             }
-            publisher = publisherField.toString();
-            publisher = trimQuotes(publisher);
-            // Grab page count and publish date for book info object
-            JsonElement pageCountField = volumeInfo.get("pageCount");
-            if (pageCountField == null) {
+        }
+        reader.endArray();
+        return authors;
+    }
+
+    /**
+     * Read the identifiers of a volume and keep the ISBN 13.
+     * @param reader Reader positioned at the identifiers
+     * @return The first 13 character identifier or null if there is none
+     * @throws IOException If the identifiers cannot be read
+     */
+    private String readIsbn(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        String isbn = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (isbn != null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
                 continue;
             }
-            pageCount = Integer.parseInt(pageCountField.toString());
-            JsonElement publishedDateField = volumeInfo.get("publishedDate");
-            if (publishedDateField == null) {
-                continue;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("identifier")) {
+                    String identifier = readString(reader);
+                    // We want ISBN_13
+                    if (identifier != null && identifier.length() == 13) {
+                        isbn = identifier;
+                    }
+                }
+                else {
+                    reader.skipValue();
+                }
             }
-            publishDate = publishedDateField.toString();
-            publishDate = trimQuotes(publishDate);
-            // Add to hits by creating a BookInfo object
-            hits.add(new BookInfo(isbn, title, authors, publisher, publishDate, pageCount));
+            reader.endObject();
         }
-        return hits;
+        reader.endArray();
+        return isbn;
     }
 
     /**
-     * Trim the quotes of the element using substring.
-     * The element should have quotes.
-     * @param element The element to remove the quotes of
-     * @return The element without quotes
+     * Read a string value.
+     * @param reader Reader positioned at the value
+     * @return The string or null if the value is not a string
+     * @throws IOException If the value cannot be read
      */
-    private String trimQuotes(String element) {
-        return element.substring(1, element.length() - 1);
+    private String readString(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * The fields of a response item that are needed for its book info.
+     */
+    private static class Volume {
+
+        private boolean eligible = true;
+        private boolean saleInfoRead;
+        private String title;
+        private List<String> authors;
+        private String isbn;
+        private String publisher;
+        private String publishDate;
+        private Integer pageCount;
+
+        /**
+         * Create the book info of the volume.
+         * @return The book info or null if the volume is not eligible or a
+         *         field is missing
+         */
+        private BookInfo toBookInfo() {
+            if (!eligible || !saleInfoRead || title == null || authors == null ||
+                    isbn == null || publisher == null || publishDate == null ||
+                    pageCount == null) {
+                return null;
+            }
+            return new BookInfo(isbn, title, authors, publisher, publishDate, pageCount);
+        }
     }
 
 }
@@ -1,13 +1,18 @@
 package Model.Book;
 
 import Controller.Request.RequestUtil;
+import Controller.Request.ResponseWriter;
 
 import Model.Client.Service;
+import Model.Library.StateWriter;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The book database that is used by the library to manage book purchases,
@@ -20,13 +25,14 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
     private static BookDB instance;
 
     /**
-     * Local bookstore to purchase books from
+     * Local bookstore to purchase books from. Not saved, it is read from
+     * the books file again.
      */
-    private Bookstore bookstore;
+    private transient Bookstore bookstore;
     /**
      * Google bookstore to purchase books from
      */
-    private BookAPIStore apiStore;
+    private transient BookAPIStore apiStore;
 
     /**
      * Number of books purchased during the current simulation day (Used for ReportGenerator)
@@ -49,6 +55,55 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
         return instance;
     }
 
+    /**
+     * Read a saved book database and open the bookstores again.
+     * @param in The stream to read from
+     * @throws IOException If the stream cannot be read
+     * @throws ClassNotFoundException If a saved class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        bookstore = new Bookstore();
+        apiStore = new BookAPIStore();
+    }
+
+    /**
+     * Make a restored book database the instance.
+     * @return The restored database
+     */
+    private Object readResolve() {
+        instance = this;
+        return this;
+    }
+
+    /**
+     * Capture the books of the library and the number purchased today, to
+     * be written while the library keeps changing. The books are copied.
+     * @return The writer of the captured books
+     */
+    public StateWriter capture() {
+        int purchased = numBooksPurchased;
+        List<BookInfo> books = copyBooks();
+        return out -> {
+            out.writeInt(purchased);
+            writeBooks(out, books);
+        };
+    }
+
+    /**
+     * Read a book database written by capture and make it the instance.
+     * @param in The input to read from
+     * @return The book database
+     * @throws IOException If the input cannot be read
+     */
+    public static BookDB read(DataInput in) throws IOException {
+        BookDB bookDB = new BookDB();
+        bookDB.numBooksPurchased = in.readInt();
+        bookDB.readBooks(in);
+        instance = bookDB;
+        return bookDB;
+    }
+
     /**
      * Search the book store for books with the given information.
      * @param title The title
@@ -56,55 +111,86 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
      * @param isbn The isbn
      * @param publisher The publisher
      * @param sort The sort order
-     * @return The mapping of hits to a unique ID
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The hits identified by their position in the search
      */
-    public Map<String, BookInfo> searchStore(Service service, String title,
-                                             List<String> authors,
-                                             String isbn,
-                                             String publisher, String sort) {
-        Map<String, BookInfo> search = null;
+    public SearchResult searchStore(Service service, String title,
+                                    List<String> authors,
+                                    String isbn,
+                                    String publisher, String sort,
+                                    int offset, int limit) {
+        SearchResult search = null;
         switch (service) {
             case LOCAL:
-                search = bookstore.searchBooks(title, authors, isbn, publisher, sort);
+                search = bookstore.searchBooks(title, authors, isbn, publisher, sort,
+                        offset, limit);
                 break;
             case GOOGLE:
-                search = apiStore.searchBooks(title, authors, isbn, publisher, sort);
+                search = apiStore.searchBooks(title, authors, isbn, publisher, sort,
+                        offset, limit);
                 break;
         }
         return search;
     }
 
+    /**
+     * Search the book store for books with the given information without
+     * waiting for a web service.
+     * @param service The bookstore to search
+     * @param title The title
+     * @param authors The authors
+     * @param isbn The isbn
+     * @param publisher The publisher
+     * @param sort The sort order
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The hits identified by their position in the search once found
+     */
+    public CompletableFuture<SearchResult> searchStoreAsync(Service service, String title,
+                                                           List<String> authors,
+                                                           String isbn,
+                                                           String publisher, String sort,
+                                                           int offset, int limit) {
+        if (service == Service.GOOGLE) {
+            return apiStore.searchBooksAsync(title, authors, isbn, publisher,
+                    sort, offset, limit);
+        }
+        return CompletableFuture.completedFuture(searchStore(service, title,
+                authors, isbn, publisher, sort, offset, limit));
+    }
+
     /**
      * Purchase new books for the library based on the last search
      * made on the bookstore. The books are mapped to the last search's IDs.
      * Used to fulfill BookPurchase.
      * @param quantity Number of books to purchase for each book ID
      * @param bookIDs List of book IDs from the last search to purchase
+     * @param out The response to write the purchased books to
      */
-    public String purchase(Map<String, BookInfo> search, int quantity, List<String> bookIDs) {
-        String response = "" + BUY_REQUEST + DELIMITER + SUCCESS + DELIMITER;
+    public void purchase(SearchResult search, int quantity, List<String> bookIDs,
+                         ResponseWriter out) {
         List<BookInfo> booksPurchased = bookstore.purchaseBooks(search,
                 quantity, bookIDs);
-        response += booksPurchased.size() * quantity + DELIMITER;
+        out.append(BUY_REQUEST).delimiter().append(SUCCESS).delimiter()
+                .append(booksPurchased.size() * quantity).delimiter();
         String isbn;
         BookInfo temp;
         for (BookInfo book : booksPurchased) {
-            response += NEW_LINE;
+            out.newLine();
             isbn = book.getIsbn();
             // If book already in library, add copies
             if (books.containsKey(isbn)) {
                 temp = books.get(isbn);
                 book.addCopy(temp.getTotalCopies());
-                books.put(isbn, book);
-            } else {
-                books.put(isbn, book);
             }
+            addBook(book);
             // Build response string
-            response += book.toString();
-            response += DELIMITER + book.getTotalCopies();
+            book.write(out);
+            out.delimiter().append(book.getTotalCopies());
         }
         numBooksPurchased += booksPurchased.size();
-        return response + TERMINATOR;
+        out.terminate();
     }
 
     /**
@@ -114,9 +200,9 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
      * @param bookIds The list of book IDs to check
      * @return If there is no mismatch
      */
-    public boolean checkIDsMatch(Map<String, BookInfo> search, List<String> bookIds){
+    public boolean checkIDsMatch(SearchResult search, List<String> bookIds){
         for (String id : bookIds) {
-            if (!search.containsKey(id)) {
+            if (!search.contains(id)) {
                 return false;
             }
         }
@@ -125,20 +211,24 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
 
     /**
      * Borrow books from a list of book IDs referring to books in the last
-     * search.
+     * search. Either a copy of every book is taken or none are.
      * @param search The book search
      * @param bookIDs The book IDs to checkout
-     * @return List of books to be borrowed or null if invalid book ID
+     * @return List of books to be borrowed or null if a book has no copies left
      */
-    public List<BookInfo> borrowBooks(Map<String, BookInfo> search, List<String> bookIDs) {
-        List<BookInfo> books = new ArrayList<>();
+    public List<BookInfo> borrowBooks(SearchResult search, List<String> bookIDs) {
+        List<BookInfo> books = new ArrayList<>(bookIDs.size());
         for (String bookID : bookIDs) {
             BookInfo book = search.get(bookID);
-            books.add(book);
             // Book no longer available. Not enough copies
             if (!book.checkOutCopy()) {
+                // Give back the copies already taken so none are lost
+                for (BookInfo taken : books) {
+                    taken.returnCopy();
+                }
                 return null;
             }
+            books.add(book);
         }
         return books;
     }
@@ -152,6 +242,24 @@ public class BookDB extends BookStorage implements Serializable, RequestUtil {
             books.get(book).returnCopy();
     }
 
+    /**
+     * Estimate the memory the bookstore's search index uses for every
+     * million books.
+     * @return Estimated bytes per million indexed books
+     */
+    public long getStoreIndexBytesPerMillion() {
+        return bookstore.getIndexBytesPerMillion();
+    }
+
+    /**
+     * String representation of the Google Books search metrics to be used
+     * as a response.
+     * @return The string form of the metrics
+     */
+    public String getGoogleSearchStats() {
+        return apiStore.getSearchStats();
+    }
+
     /**
      * Helper method for reportGenerator to retrieve number of books in library
      * @return number of books in library
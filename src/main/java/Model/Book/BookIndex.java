@@ -0,0 +1,647 @@
+package Model.Book;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Index over the books of a book storage. Every book is given an ordinal in
+ * the order it was added. Publishers, and the trigrams and lower cased words
+ * of titles and author names, map to posting lists of those ordinals.
+ * Searches start from the most selective indexed parameter to find candidate
+ * books, which are then verified against the search parameters. Views of
+ * the ordinals sorted by title and by publish date are kept up to date as
+ * books are added, so sorted searches can walk them instead of sorting.
+ * Books added to an empty index in bulk are sorted into the views at once.
+ * Only the books are serialized; the index is rebuilt from them when read.
+ */
+class BookIndex implements Serializable {
+
+    private static final long serialVersionUID = 6996818200415746803L;
+
+    /**
+     * Length of the substrings kept in the trigram index
+     */
+    private static final int GRAM = 3;
+    /**
+     * Bits in a set of ordinals, used to find the ordinals of a book
+     */
+    private static final int INT_BITS = 32;
+
+    /**
+     * Books by ordinal
+     */
+    private transient List<BookInfo> entries;
+    /**
+     * Ordinals by ISBN
+     */
+    private transient Map<String, Integer> ordinals;
+    /**
+     * Posting lists of the words found in titles
+     */
+    private transient Map<String, PostingList> titleWords;
+    /**
+     * Posting lists of the words found in author names
+     */
+    private transient Map<String, PostingList> authorWords;
+    /**
+     * Posting lists of the trigrams found in titles
+     */
+    private transient Map<Long, PostingList> titleGrams;
+    /**
+     * Posting lists of the trigrams found in author names
+     */
+    private transient Map<Long, PostingList> authorGrams;
+    /**
+     * Posting lists of the publishers
+     */
+    private transient Map<String, PostingList> publishers;
+    /**
+     * Orders of the books
+     */
+    private transient Comparator<BookInfo> titleOrder;
+    private transient Comparator<BookInfo> publishDateOrder;
+    /**
+     * Ordinals sorted by title, ties in the order the books were added
+     */
+    private transient NavigableSet<Integer> byTitle;
+    /**
+     * Ordinals sorted by publish date, ties in the order the books were added
+     */
+    private transient NavigableSet<Integer> byPublishDate;
+
+    /**
+     * Create an empty index.
+     */
+    BookIndex() {
+        init();
+    }
+
+    /**
+     * Set up the empty structures of the index.
+     */
+    private void init() {
+        entries = new ArrayList<>();
+        ordinals = new HashMap<>();
+        titleWords = new HashMap<>();
+        authorWords = new HashMap<>();
+        titleGrams = new HashMap<>();
+        authorGrams = new HashMap<>();
+        publishers = new HashMap<>();
+        titleOrder = new TitleComparator();
+        publishDateOrder = new PublishDateComparator();
+        byTitle = new TreeSet<>(inOrder(titleOrder));
+        byPublishDate = new TreeSet<>(inOrder(publishDateOrder));
+    }
+
+    /**
+     * Write the books in the order they were added.
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(entries));
+    }
+
+    /**
+     * Read the books and index them again in the order they were added.
+     * @param in The stream to read from
+     * @throws IOException If the stream cannot be read
+     * @throws ClassNotFoundException If a book class cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+        addAll((List<BookInfo>) in.readObject());
+    }
+
+    /**
+     * Create a comparator of ordinals that orders their books by the given
+     * order and then by ordinal.
+     * @param order The order of the books
+     * @return The ordinal comparator
+     */
+    private Comparator<Integer> inOrder(Comparator<BookInfo> order) {
+        return (o1, o2) -> {
+            int result = order.compare(entries.get(o1), entries.get(o2));
+            return result != 0 ? result : Integer.compare(o1, o2);
+        };
+    }
+
+    /**
+     * Add a book to the index. A book with an ISBN that is already indexed
+     * replaces the old book and keeps its ordinal.
+     * @param book The book to add
+     */
+    void add(BookInfo book) {
+        Integer existing = ordinals.get(book.getIsbn());
+        if (existing != null) {
+            // The views find the old book by the order of its old fields
+            byTitle.remove(existing);
+            byPublishDate.remove(existing);
+        }
+        int ordinal = addEntry(book);
+        byTitle.add(ordinal);
+        byPublishDate.add(ordinal);
+    }
+
+    /**
+     * Add books to the index in order. When the index is empty the sorted
+     * views are built once after every book is added, by sorting the
+     * ordinals in parallel, instead of inserting the books one at a time.
+     * @param books The books to add
+     */
+    void addAll(List<BookInfo> books) {
+        if (!entries.isEmpty()) {
+            for (BookInfo book : books) {
+                add(book);
+            }
+            return;
+        }
+        for (BookInfo book : books) {
+            addEntry(book);
+        }
+        buildView(byTitle, titleOrder);
+        buildView(byPublishDate, publishDateOrder);
+    }
+
+    /**
+     * Fill an empty sorted view with every ordinal. The books are sorted in
+     * parallel with a stable sort, so books that are equal in the order stay
+     * in the order of their ordinals, as they are in the view.
+     * @param view The empty view
+     * @param order The order of the view
+     */
+    private void buildView(NavigableSet<Integer> view, Comparator<BookInfo> order) {
+        BookInfo[] books = entries.toArray(new BookInfo[0]);
+        Arrays.parallelSort(books, order);
+        List<Integer> sorted = new ArrayList<>(books.length);
+        for (BookInfo book : books) {
+            sorted.add(ordinals.get(book.getIsbn()));
+        }
+        view.addAll(new SortedOrdinals(sorted, view.comparator()));
+    }
+
+    /**
+     * Add a book to every index except the sorted views. A book that
+     * replaces an indexed book is indexed under its own title, authors and
+     * publisher instead of those of the old book.
+     * @param book The book to add
+     * @return The ordinal of the book
+     */
+    private int addEntry(BookInfo book) {
+        Integer existing = ordinals.get(book.getIsbn());
+        if (existing != null) {
+            post(entries.get(existing), existing, false);
+            entries.set(existing, book);
+            post(book, existing, true);
+            return existing;
+        }
+        int ordinal = entries.size();
+        entries.add(book);
+        ordinals.put(book.getIsbn(), ordinal);
+        post(book, ordinal, true);
+        return ordinal;
+    }
+
+    /**
+     * Add an ordinal to, or remove it from, the posting lists of the
+     * publisher, title and authors of a book.
+     * @param book The book of the ordinal
+     * @param ordinal The ordinal
+     * @param add If the ordinal is added, otherwise it is removed
+     */
+    private void post(BookInfo book, int ordinal, boolean add) {
+        post(publishers, book.getPublisher(), ordinal, add);
+        String title = book.getTitle();
+        for (String word : words(title)) {
+            post(titleWords, word, ordinal, add);
+        }
+        for (int i = 0; i + GRAM <= title.length(); i++) {
+            post(titleGrams, gram(title, i), ordinal, add);
+        }
+        for (String author : book.getAuthors()) {
+            for (String word : words(author)) {
+                post(authorWords, word, ordinal, add);
+            }
+            for (int i = 0; i + GRAM <= author.length(); i++) {
+                post(authorGrams, gram(author, i), ordinal, add);
+            }
+        }
+    }
+
+    /**
+     * Add an ordinal to, or remove it from, the posting list of a key. A
+     * list left empty is removed, so word lookups do not scan its key.
+     * @param index The index of the key
+     * @param key The key
+     * @param ordinal The ordinal
+     * @param add If the ordinal is added, otherwise it is removed
+     */
+    private static <K> void post(Map<K, PostingList> index, K key, int ordinal, boolean add) {
+        if (add) {
+            index.computeIfAbsent(key, k -> new PostingList()).add(ordinal);
+            return;
+        }
+        PostingList list = index.get(key);
+        if (list != null) {
+            list.remove(ordinal);
+            if (list.size() == 0) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Get every indexed book in the order they were added.
+     * @return The indexed books
+     */
+    List<BookInfo> all() {
+        return entries;
+    }
+
+    /**
+     * Find the books that may match a search. The most selective indexed
+     * parameter is used: an exact ISBN, then the publisher, then the title
+     * and authors. Every matching book is a candidate, but not every
+     * candidate has to match the other parameters.
+     * @param title Title search parameter
+     * @param authors Authors search parameter
+     * @param isbn ISBN search parameter
+     * @param publisher Publisher search parameter
+     * @return The candidate books or null if the search cannot be narrowed
+     */
+    List<BookInfo> candidates(String title, List<String> authors,
+                              String isbn, String publisher) {
+        if (!isbn.equals("*")) {
+            Integer ordinal = ordinals.get(isbn);
+            if (ordinal == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(entries.get(ordinal));
+        }
+        if (!publisher.equals("*")) {
+            return resolve(publishers.getOrDefault(publisher, new PostingList()));
+        }
+        PostingList result = null;
+        if (!title.equals("*")) {
+            result = narrow(result, titleGrams, titleWords, title);
+        }
+        for (String author : authors) {
+            result = narrow(result, authorGrams, authorWords, author);
+        }
+        if (result == null) {
+            return null;
+        }
+        return resolve(result);
+    }
+
+    /**
+     * Sort search hits by title.
+     * @param hits The hits in the order the books were added
+     * @param count Number of leading hits needed
+     * @return The first hits sorted by title
+     */
+    List<BookInfo> sortByTitle(List<BookInfo> hits, int count) {
+        return sort(hits, count, byTitle, titleOrder);
+    }
+
+    /**
+     * Sort search hits from newest publish date to oldest.
+     * @param hits The hits in the order the books were added
+     * @param count Number of leading hits needed
+     * @return The first hits sorted by publish date
+     */
+    List<BookInfo> sortByPublishDate(List<BookInfo> hits, int count) {
+        return sort(hits, count, byPublishDate, publishDateOrder);
+    }
+
+    /**
+     * Find the leading search hits in the order of a sorted view. When the
+     * hits are few they are ranked on their own, keeping only the leading
+     * hits in a bounded heap. Many hits are instead picked out by walking
+     * the view until enough are found, since ranking them would cost more
+     * than the walk. Hits that are not indexed books are sorted by the
+     * order of the view.
+     * @param hits The hits in the order the books were added
+     * @param count Number of leading hits needed
+     * @param view The sorted view of every ordinal
+     * @param order The order of the view
+     * @return The leading hits in sorted order
+     */
+    private List<BookInfo> sort(List<BookInfo> hits, int count,
+                                NavigableSet<Integer> view,
+                                Comparator<BookInfo> order) {
+        count = Math.min(count, hits.size());
+        BitSet wanted = new BitSet(entries.size());
+        for (BookInfo book : hits) {
+            Integer ordinal = ordinals.get(book.getIsbn());
+            if (ordinal == null || entries.get(ordinal) != book) {
+                hits.sort(order);
+                return hits.subList(0, count);
+            }
+            wanted.set(ordinal);
+        }
+        long rankCost = (long) hits.size() *
+                (INT_BITS - Integer.numberOfLeadingZeros(count));
+        if (rankCost < view.size()) {
+            return top(hits, count, view.comparator());
+        }
+        List<BookInfo> books = new ArrayList<>(count);
+        for (int ordinal : view) {
+            if (books.size() == count) {
+                break;
+            }
+            if (wanted.get(ordinal)) {
+                books.add(entries.get(ordinal));
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Rank indexed search hits with a heap that holds at most the number of
+     * hits needed.
+     * @param hits The indexed hits
+     * @param count Number of leading hits needed
+     * @param order Order of the ordinals
+     * @return The leading hits in sorted order
+     */
+    private List<BookInfo> top(List<BookInfo> hits, int count,
+                               Comparator<? super Integer> order) {
+        List<BookInfo> books = new ArrayList<>(count);
+        if (count == 0) {
+            return books;
+        }
+        // The worst of the leading hits is at the head of the heap
+        PriorityQueue<Integer> heap = new PriorityQueue<>(count + 1,
+                Collections.reverseOrder(order));
+        for (BookInfo book : hits) {
+            heap.add(ordinals.get(book.getIsbn()));
+            if (heap.size() > count) {
+                heap.poll();
+            }
+        }
+        List<Integer> leading = new ArrayList<>(heap);
+        leading.sort(order);
+        for (int ordinal : leading) {
+            books.add(entries.get(ordinal));
+        }
+        return books;
+    }
+
+    /**
+     * Look up the books of the ordinals in a posting list.
+     * @param list The posting list
+     * @return The books in ordinal order
+     */
+    private List<BookInfo> resolve(PostingList list) {
+        List<BookInfo> books = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            books.add(entries.get(list.get(i)));
+        }
+        return books;
+    }
+
+    /**
+     * Narrow the candidates to books that may contain the search parameter.
+     * Parameters of at least three characters use the trigram index, so
+     * only books with every trigram of the parameter remain. Shorter
+     * parameters fall back to the word index.
+     * @param result The candidates so far or null if there are none yet
+     * @param grams The trigram index to use
+     * @param words The word index to use
+     * @param parameter The search parameter
+     * @return The narrowed candidates
+     */
+    private PostingList narrow(PostingList result, Map<Long, PostingList> grams,
+                               Map<String, PostingList> words, String parameter) {
+        if (parameter.length() < GRAM) {
+            return narrowByWords(result, words, parameter);
+        }
+        Set<Long> seen = new HashSet<>();
+        List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= parameter.length(); i++) {
+            Long gram = gram(parameter, i);
+            if (!seen.add(gram)) {
+                continue;
+            }
+            PostingList list = grams.get(gram);
+            if (list == null) {
+                return new PostingList();
+            }
+            lists.add(list);
+        }
+        // Intersect the shortest lists first to keep intermediate results small
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        for (PostingList list : lists) {
+            result = result == null ? list : result.intersect(list);
+        }
+        return result;
+    }
+
+    /**
+     * Narrow the candidates to books with an indexed word containing each
+     * word of the search parameter. A parameter found in a text has each of
+     * its words inside one of the text's words, so no match is lost.
+     * @param result The candidates so far or null if there are none yet
+     * @param index The word index to use
+     * @param parameter The search parameter
+     * @return The narrowed candidates
+     */
+    private PostingList narrowByWords(PostingList result, Map<String, PostingList> index,
+                                      String parameter) {
+        for (String word : words(parameter)) {
+            PostingList matches = lookup(index, word);
+            result = result == null ? matches : result.intersect(matches);
+        }
+        return result;
+    }
+
+    /**
+     * Find the books with an indexed word that contains the given word.
+     * Only the distinct words are scanned, never the books themselves.
+     * @param index The word index to use
+     * @param word The lower cased word
+     * @return The books containing the word
+     */
+    private PostingList lookup(Map<String, PostingList> index, String word) {
+        List<PostingList> matches = new ArrayList<>();
+        for (Map.Entry<String, PostingList> entry : index.entrySet()) {
+            if (entry.getKey().contains(word)) {
+                matches.add(entry.getValue());
+            }
+        }
+        if (matches.isEmpty()) {
+            return new PostingList();
+        }
+        return PostingList.union(matches, entries.size());
+    }
+
+    /**
+     * Estimate the memory used by the index.
+     * @return The estimated size in bytes
+     */
+    long estimateSize() {
+        // References, object headers and boxed keys on a 64 bit JVM
+        long size = 16L * entries.size() + 48L * ordinals.size();
+        size += estimateSize(titleWords, 56) + estimateSize(authorWords, 56);
+        size += estimateSize(titleGrams, 24) + estimateSize(authorGrams, 24);
+        size += estimateSize(publishers, 56);
+        // Tree nodes of the sorted views
+        size += 2 * 40L * byTitle.size();
+        return size;
+    }
+
+    /**
+     * Estimate the memory used by one posting list map.
+     * @param index The map to estimate
+     * @param keySize Estimated size of a key
+     * @return The estimated size in bytes
+     */
+    private long estimateSize(Map<?, PostingList> index, long keySize) {
+        // Map node, posting list object and its array header
+        long size = index.size() * (keySize + 48 + 24 + 16);
+        for (PostingList list : index.values()) {
+            size += 4L * list.size();
+        }
+        return size;
+    }
+
+    /**
+     * Pack the three characters at the given position into one key.
+     * @param text The text to read from
+     * @param start Position of the first character
+     * @return The trigram key
+     */
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) |
+                ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * Split the text into its lower cased runs of letters and digits.
+     * @param text The text to split
+     * @return The words of the text
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() &&
+                    Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            }
+            else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Ordinals that are already sorted, so a sorted view can be built from
+     * them without comparing them again. Ranges of the ordinals are views of
+     * the same list, found by binary search.
+     */
+    private static class SortedOrdinals extends AbstractSet<Integer> implements SortedSet<Integer> {
+
+        private List<Integer> ordinals;
+        private Comparator<? super Integer> comparator;
+
+        private SortedOrdinals(List<Integer> ordinals, Comparator<? super Integer> comparator) {
+            this.ordinals = ordinals;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return Collections.unmodifiableList(ordinals).iterator();
+        }
+
+        @Override
+        public int size() {
+            return ordinals.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer &&
+                    Collections.binarySearch(ordinals, (Integer) o, comparator) >= 0;
+        }
+
+        @Override
+        public Comparator<? super Integer> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public Integer first() {
+            if (ordinals.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return ordinals.get(0);
+        }
+
+        @Override
+        public Integer last() {
+            if (ordinals.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return ordinals.get(ordinals.size() - 1);
+        }
+
+        @Override
+        public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+            if (compare(fromElement, toElement) > 0) {
+                throw new IllegalArgumentException("fromElement > toElement");
+            }
+            return range(indexOf(fromElement), indexOf(toElement));
+        }
+
+        @Override
+        public SortedSet<Integer> headSet(Integer toElement) {
+            return range(0, indexOf(toElement));
+        }
+
+        @Override
+        public SortedSet<Integer> tailSet(Integer fromElement) {
+            return range(indexOf(fromElement), ordinals.size());
+        }
+
+        private SortedSet<Integer> range(int from, int to) {
+            return new SortedOrdinals(ordinals.subList(from, to), comparator);
+        }
+
+        private int indexOf(Integer element) {
+            int index = Collections.binarySearch(ordinals, element, comparator);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private int compare(Integer o1, Integer o2) {
+            return comparator != null ? comparator.compare(o1, o2) : o1.compareTo(o2);
+        }
+    }
+}
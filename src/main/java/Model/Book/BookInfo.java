@@ -1,7 +1,13 @@
 package Model.Book;
 
+import Controller.Request.ResponseWriter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * The book info to represent all information pertaining to a book.
@@ -10,6 +16,14 @@ import java.util.List;
  */
 public class BookInfo implements Serializable {
 
+    private static final long serialVersionUID = 5445723638905217725L;
+
+    /**
+     * Updates the copies of a book atomically
+     */
+    private static final AtomicLongFieldUpdater<BookInfo> COPIES =
+            AtomicLongFieldUpdater.newUpdater(BookInfo.class, "copies");
+
     /**
      * Book attributes
      */
@@ -19,8 +33,21 @@ public class BookInfo implements Serializable {
     private String publisher;
     private String publishDate;
     private int pageCount;
+    /**
+     * Number of copies and available copies as they are saved. The counts
+     * in use are kept in copies.
+     */
     private int totalCopies;
     private int totalCopiesAvailable;
+    /**
+     * Total copies in the high half and available copies in the low half,
+     * so both are read and changed together by compare and set
+     */
+    private transient volatile long copies;
+    /**
+     * Publish date packed as yyyymmdd with missing parts as zero
+     */
+    private int publishDateKey;
 
     /**
      * Create book info given the necessary information.
@@ -33,8 +60,8 @@ public class BookInfo implements Serializable {
         this.publisher = publisher;
         this.publishDate = publishDate;
         this.pageCount = pageCount;
-        totalCopies = 1;
-        totalCopiesAvailable = 1;
+        publishDateKey = parsePublishDate(publishDate);
+        copies = pack(1, 1);
     }
 
     /**
@@ -48,15 +75,88 @@ public class BookInfo implements Serializable {
         publisher = other.publisher;
         publishDate = other.publishDate;
         pageCount = other.pageCount;
-        totalCopies = copies;
-        totalCopiesAvailable = copies;
+        publishDateKey = other.publishDateKey;
+        this.copies = pack(copies, copies);
+    }
+
+    /**
+     * Create book info with the given number of copies and available
+     * copies. Used when books are restored.
+     */
+    BookInfo(String isbn, String title, List<String> authors, String publisher,
+             String publishDate, int pageCount, int totalCopies, int totalCopiesAvailable) {
+        this(isbn, title, authors, publisher, publishDate, pageCount);
+        copies = pack(totalCopies, totalCopiesAvailable);
+    }
+
+    /**
+     * Copy the book with the copies it has now, read together.
+     * @return The copy
+     */
+    BookInfo copy() {
+        long current = copies;
+        return new BookInfo(isbn, title, authors, publisher, publishDate, pageCount,
+                total(current), available(current));
+    }
+
+    /**
+     * Pack the number of copies and available copies into one word.
+     * @param total The number of copies
+     * @param available The number of available copies
+     * @return The packed copies
+     */
+    private static long pack(int total, int available) {
+        return ((long) total << 32) | (available & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the number of copies from packed copies.
+     * @param copies The packed copies
+     * @return The number of copies
+     */
+    private static int total(long copies) {
+        return (int) (copies >>> 32);
+    }
+
+    /**
+     * Get the number of available copies from packed copies.
+     * @param copies The packed copies
+     * @return The number of available copies
+     */
+    private static int available(long copies) {
+        return (int) copies;
+    }
+
+    /**
+     * Pack a publish date of the form yyyy, yyyy-mm or yyyy-mm-dd into one
+     * number that orders the same way as the date.
+     * @param publishDate The publish date
+     * @return The packed publish date
+     */
+    private static int parsePublishDate(String publishDate) {
+        int[] parts = new int[3];
+        int part = 0;
+        for (int i = 0; i < publishDate.length() && part < parts.length; i++) {
+            char c = publishDate.charAt(i);
+            if (c == '-') {
+                part++;
+            }
+            else if (c >= '0' && c <= '9') {
+                parts[part] = parts[part] * 10 + (c - '0');
+            }
+        }
+        return parts[0] * 10000 + parts[1] * 100 + parts[2];
     }
 
     /**
      * Adds a copy of this book to the library.
      */
     public void addCopy(int amount){
-        totalCopies += amount;
+        long current;
+        do {
+            current = copies;
+        } while (!COPIES.compareAndSet(this, current,
+                pack(total(current) + amount, available(current))));
     }
 
     /**
@@ -64,10 +164,13 @@ public class BookInfo implements Serializable {
      * @return Whether the book was successfully checked out.
      */
     public boolean checkOutCopy(){
-        if (totalCopiesAvailable == 0) {
-            return false;
-        }
-        totalCopiesAvailable--;
+        long current;
+        do {
+            current = copies;
+            if (available(current) == 0) {
+                return false;
+            }
+        } while (!COPIES.compareAndSet(this, current, current - 1));
         return true;
     }
 
@@ -75,8 +178,13 @@ public class BookInfo implements Serializable {
      * Returns a copy of this book to the library.
      */
     public void returnCopy(){
-        if (totalCopiesAvailable < totalCopies)
-            totalCopiesAvailable++;
+        long current;
+        do {
+            current = copies;
+            if (available(current) >= total(current)) {
+                return;
+            }
+        } while (!COPIES.compareAndSet(this, current, current + 1));
     }
 
     /**
@@ -119,6 +227,14 @@ public class BookInfo implements Serializable {
         return publishDate;
     }
 
+    /**
+     * Get the publish date packed as yyyymmdd for ordering.
+     * @return The packed publish date
+     */
+    public int getPublishDateKey() {
+        return publishDateKey;
+    }
+
     /**
      * Get the page count.
      * @return The page count
@@ -132,7 +248,7 @@ public class BookInfo implements Serializable {
      * @return The total number of copies
      */
     public int getTotalCopies() {
-        return totalCopies;
+        return total(copies);
     }
 
     /**
@@ -140,7 +256,7 @@ public class BookInfo implements Serializable {
      * @return The total number of copies available
      */
     public int getTotalCopiesAvailable() {
-        return totalCopiesAvailable;
+        return available(copies);
     }
 
     /**
@@ -148,7 +264,46 @@ public class BookInfo implements Serializable {
      * @return If there are copies available
      */
     public boolean hasCopiesAvailable() {
-        return totalCopiesAvailable != 0;
+        return available(copies) != 0;
+    }
+
+    /**
+     * Save the book with the copies it has when it is saved.
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        long current = copies;
+        totalCopies = total(current);
+        totalCopiesAvailable = available(current);
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Restore a saved book and its copies.
+     * @param in The stream to read from
+     * @throws IOException If the stream cannot be read
+     * @throws ClassNotFoundException If a saved class does not exist
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        copies = pack(totalCopies, totalCopiesAvailable);
+    }
+
+    /**
+     * Write the book as it appears in responses, without building a string
+     * for it first.
+     * @param out The response to write to
+     */
+    public void write(ResponseWriter out) {
+        out.append(isbn).delimiter().append(title).delimiter().append('{');
+        for (int i = 0; i < authors.size(); i++) {
+            if (i > 0) {
+                out.delimiter();
+            }
+            out.append(authors.get(i));
+        }
+        out.append('}').delimiter().append(publishDate);
     }
 
     /**
@@ -157,15 +312,9 @@ public class BookInfo implements Serializable {
      */
     @Override
     public String toString() {
-        String auths = "{";
-        for (int i = 0; i < authors.size(); i++) {
-            auths += authors.get(i);
-            if (i != authors.size() - 1) {
-                auths += ",";
-            }
-        }
-        auths += "}";
-        return isbn + "," + title + "," + auths + "," + publishDate;
+        ResponseWriter out = new ResponseWriter();
+        write(out);
+        return out.toString();
     }
 
 }
@@ -1,6 +1,10 @@
 package Model.Book;
 
-import java.util.Comparator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,67 +15,261 @@ import java.util.stream.Collectors;
  *
  * @author Michael Kha
  */
-public abstract class BookStorage {
+public abstract class BookStorage implements Serializable {
 
     /**
      * Available books mapped to their IBSNs
      */
     Map<String, BookInfo> books;
     /**
-     * Comparators for book info
+     * Index over the ISBNs, publishers, titles and authors of the books
      */
-    private Comparator<BookInfo> byTitle;
-    private Comparator<BookInfo> byPublishDate;
+    private BookIndex index;
 
     /**
      * Create a new book data structure that can be used to search for books.
      */
     public BookStorage() {
         books = new HashMap<>();
-        byTitle = new TitleComparator();
-        byPublishDate = new PublishDateComparator();
+        index = new BookIndex();
     }
 
     /**
      * Search the books using a filter on all the available books for purchase.
+     * Only the page of hits starting at the offset is returned, so sorted
+     * searches only have to order the hits up to the end of the page and
+     * unsorted searches stop filtering once the page is full.
      * @param title Title search parameter
      * @param authors Authors search parameter
      * @param isbn ISBN search parameter
      * @param publisher Publisher search parameter
      * @param sort Sort the search by either title or publish-date
-     * @return The mapping of hits to a unique ID
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits to return
+     * @return The hits identified by their position in the search
      */
-    public Map<String, BookInfo> searchBooks(String title,
-                                              List<String> authors,
-                                              String isbn,
-                                              String publisher, String sort) {
-        // Filter out results into a list of search hits
-        List<BookInfo> hits = books.values().stream()
-                .filter(b -> matchingFilter(b, title, authors,
-                        isbn, publisher))
-                .collect(Collectors.toList());
-        // Sort the books by the specified parameter
-        hits = sortBooks(hits, sort);
-        if (hits == null) {
+    public SearchResult searchBooks(String title,
+                                    List<String> authors,
+                                    String isbn,
+                                    String publisher, String sort,
+                                    int offset, int limit) {
+        boolean sorted = sort.equals("title") || sort.equals("publish-date");
+        boolean available = sort.equals("book-status");
+        if (!sorted && !available && !sort.equals("*")) {
             return null;
         }
-        return createMap(hits);
+        int end = pageEnd(offset, limit);
+        // Narrow the books with the index before filtering
+        List<BookInfo> candidates = index.candidates(title, authors, isbn, publisher);
+        if (candidates == null) {
+            candidates = index.all();
+        }
+        // Filter out results into a list of search hits
+        List<BookInfo> hits = new ArrayList<>();
+        for (BookInfo book : candidates) {
+            if (!sorted && hits.size() == end) {
+                break;
+            }
+            if (matchingFilter(book, title, authors, isbn, publisher) &&
+                    (!available || book.hasCopiesAvailable())) {
+                hits.add(book);
+            }
+        }
+        // Order the hits up to the end of the page
+        if (sort.equals("title")) {
+            hits = index.sortByTitle(hits, end);
+        }
+        else if (sort.equals("publish-date")) {
+            hits = index.sortByPublishDate(hits, end);
+        }
+        return createResult(page(hits, offset, limit), offset);
+    }
+
+    /**
+     * Add a book to the storage, replacing any book with the same ISBN.
+     * @param book The book to add
+     */
+    void addBook(BookInfo book) {
+        books.put(book.getIsbn(), book);
+        index.add(book);
+    }
+
+    /**
+     * Add books to the storage in order, replacing any book with the same
+     * ISBN. Faster than adding the books one at a time to an empty storage.
+     * @param added The books to add
+     */
+    void addBooks(List<BookInfo> added) {
+        for (BookInfo book : added) {
+            books.put(book.getIsbn(), book);
+        }
+        index.addAll(added);
+    }
+
+    /**
+     * Get the book with the given ISBN.
+     * @param isbn The ISBN
+     * @return The book or null if there is no book with the ISBN
+     */
+    public BookInfo getBook(String isbn) {
+        return books.get(isbn);
+    }
+
+    /**
+     * Copy the books in the order they were added, with the copies they
+     * have now.
+     * @return The copies of the books
+     */
+    List<BookInfo> copyBooks() {
+        List<BookInfo> all = index.all();
+        List<BookInfo> copies = new ArrayList<>(all.size());
+        for (BookInfo book : all) {
+            copies.add(book.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Write books in order. Each attribute of every book is written before
+     * the next attribute, so the values of one attribute are next to each
+     * other.
+     * @param out The output to write to
+     * @param all The books to write
+     * @throws IOException If the output cannot be written
+     */
+    static void writeBooks(DataOutput out, List<BookInfo> all) throws IOException {
+        out.writeInt(all.size());
+        for (BookInfo book : all) {
+            out.writeUTF(book.getIsbn());
+        }
+        for (BookInfo book : all) {
+            out.writeUTF(book.getTitle());
+        }
+        for (BookInfo book : all) {
+            out.writeUTF(book.getPublisher());
+        }
+        for (BookInfo book : all) {
+            out.writeUTF(book.getPublishDate());
+        }
+        for (BookInfo book : all) {
+            out.writeInt(book.getPageCount());
+        }
+        for (BookInfo book : all) {
+            out.writeInt(book.getTotalCopies());
+        }
+        for (BookInfo book : all) {
+            out.writeInt(book.getTotalCopiesAvailable());
+        }
+        for (BookInfo book : all) {
+            out.writeInt(book.getAuthors().size());
+        }
+        for (BookInfo book : all) {
+            for (String author : book.getAuthors()) {
+                out.writeUTF(author);
+            }
+        }
+    }
+
+    /**
+     * Read books written by writeBooks and add them in the same order.
+     * @param in The input to read from
+     * @throws IOException If the input cannot be read
+     */
+    void readBooks(DataInput in) throws IOException {
+        int count = in.readInt();
+        String[] isbns = readStrings(in, count);
+        String[] titles = readStrings(in, count);
+        String[] publishers = readStrings(in, count);
+        String[] publishDates = readStrings(in, count);
+        int[] pageCounts = readInts(in, count);
+        int[] totalCopies = readInts(in, count);
+        int[] available = readInts(in, count);
+        int[] authorCounts = readInts(in, count);
+        List<BookInfo> read = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<String> authors = new ArrayList<>(authorCounts[i]);
+            for (int j = 0; j < authorCounts[i]; j++) {
+                authors.add(in.readUTF());
+            }
+            read.add(new BookInfo(isbns[i], titles[i], authors, publishers[i],
+                    publishDates[i], pageCounts[i], totalCopies[i], available[i]));
+        }
+        addBooks(read);
+    }
+
+    /**
+     * Read a column of strings.
+     * @param in The input to read from
+     * @param count Number of strings
+     * @return The strings
+     * @throws IOException If the input cannot be read
+     */
+    private static String[] readStrings(DataInput in, int count) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    /**
+     * Read a column of numbers.
+     * @param in The input to read from
+     * @param count Number of numbers
+     * @return The numbers
+     * @throws IOException If the input cannot be read
+     */
+    private static int[] readInts(DataInput in, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
     }
 
     /**
-     * Create a mapping of books from the list of books.
-     * @param hits The list of books
-     * @return The mapping of books from 0 to N books
+     * Estimate the memory the search index uses for every million books.
+     * @return Estimated bytes per million indexed books
      */
-    Map<String, BookInfo> createMap(List<BookInfo> hits) {
-        Map<String, BookInfo> searchedBooks = new HashMap<>();
-        // Map to a unique ID for the hits
-        int id = 0;
-        for (BookInfo info : hits) {
-            searchedBooks.put(String.valueOf(id), info);
-            id++;
+    public long getIndexBytesPerMillion() {
+        int count = index.all().size();
+        if (count == 0) {
+            return 0;
         }
-        return searchedBooks;
+        return index.estimateSize() * 1000000 / count;
+    }
+
+    /**
+     * Find the position after the last hit of a page.
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits in the page
+     * @return The end of the page
+     */
+    int pageEnd(int offset, int limit) {
+        return (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the page of hits starting at the offset.
+     * @param hits The hits in search order
+     * @param offset Number of hits to skip
+     * @param limit Largest number of hits in the page
+     * @return The hits of the page
+     */
+    List<BookInfo> page(List<BookInfo> hits, int offset, int limit) {
+        int from = Math.min(offset, hits.size());
+        int to = Math.min(pageEnd(offset, limit), hits.size());
+        return hits.subList(from, to);
+    }
+
+    /**
+     * Create a search result from a page of hits.
+     * @param hits The page of hits
+     * @param offset Position of the first hit in the search
+     * @return The search result with IDs from offset to offset + N
+     */
+    SearchResult createResult(List<BookInfo> hits, int offset) {
+        return new SearchResult(hits, offset);
     }
 
     /**
@@ -85,10 +283,10 @@ public abstract class BookStorage {
             case "*":
                 break;
             case "title":
-                hits.sort(byTitle);
+                hits = index.sortByTitle(hits, hits.size());
                 break;
             case "publish-date":
-                hits.sort(byPublishDate);
+                hits = index.sortByPublishDate(hits, hits.size());
                 break;
             case "book-status":
                 hits = hits.stream().filter(BookInfo::hasCopiesAvailable)
@@ -128,10 +326,7 @@ public abstract class BookStorage {
         if (!authors.isEmpty()) {
             // Authors must match at least part of the book's authors
             for (String author : authors) {
-                List<String> authorHits = bookAuthors.stream()
-                        .filter(a -> a.contains(author))
-                        .collect(Collectors.toList());
-                if (authorHits.isEmpty()) {
+                if (!containsPart(bookAuthors, author)) {
                     return false;
                 }
             }
@@ -150,4 +345,19 @@ public abstract class BookStorage {
         }
         return true;
     }
+
+    /**
+     * Check if any of the values contains the part.
+     * @param values The values to check
+     * @param part The substring to look for
+     * @return If a value contains the part
+     */
+    private boolean containsPart(List<String> values, String part) {
+        for (String value : values) {
+            if (value.contains(part)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
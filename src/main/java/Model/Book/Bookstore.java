@@ -28,48 +28,13 @@ public class Bookstore extends BookStorage implements Serializable {
      * Initialize the state of the bookstore by reading a book file.
      */
     private void init() {
-        try (BufferedReader br = new BufferedReader(new FileReader(new File(STORE_PATH)))) {
-            String line;
-            BookInfo bookInfo;
-            while ((line = br.readLine()) != null) {
-                bookInfo = generateBookInfoFromLine(line);
-                books.put(bookInfo.getIsbn(), bookInfo);
-            }
+        try {
+            addBooks(CatalogLoader.load(new File(STORE_PATH)));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    /**
-     * Generate book info given a properly formatted line of info
-     * @param line Line of book info
-     * @return The book info that was generated
-     */
-    private BookInfo generateBookInfoFromLine(String line) {
-        String isbn;
-        String title;
-        String publisher;
-        String publishDate;
-        int pageCount;
-        // First split by left and right brackets
-        String[] firstSplit = line.split("[{}]");
-        // Second item of array will be all authors in csv format
-        List<String> authors = new ArrayList<>(
-                Arrays.asList(firstSplit[1].split(",")));
-        // Split isbn and title
-        String[] isbnTitle = firstSplit[0].split(",(?!\\s)");
-        isbn = isbnTitle[0];
-        title = isbnTitle[1];
-        // Split publisher, publish date, page count
-        String[] publishing = firstSplit[2].split(",(?!\\s)");
-        publisher = publishing[1];
-        publishDate = publishing[2];
-        pageCount = Integer.parseInt(publishing[3]);
-        // Create book info
-        return new BookInfo(isbn, title, authors, publisher,
-                publishDate, pageCount);
-    }
-
     /**
      * Purchase books of a given quantity.
      * @param search The book search to purchase from
@@ -77,7 +42,7 @@ public class Bookstore extends BookStorage implements Serializable {
      * @param bookIDs List of book IDs
      * @return The list of book info that has been purchased
      */
-    public List<BookInfo> purchaseBooks(Map<String, BookInfo> search,
+    public List<BookInfo> purchaseBooks(SearchResult search,
                                         int quantity, List<String> bookIDs) {
         List<BookInfo> bookInfoList = new ArrayList<>();
         for (String book : bookIDs) {
@@ -0,0 +1,276 @@
+package Model.Book;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads the books of a catalog file. The file is mapped into memory and
+ * split at line boundaries into chunks that are parsed in parallel on the
+ * common fork-join pool. Each line has the form
+ * isbn,"title",{author, author},"publisher",publish-date,page-count
+ * and is read the same way the earlier regex based reader read it: a comma
+ * followed by whitespace does not end the title or the publisher, the
+ * quotes stay part of them and authors after the first keep the space
+ * before them.
+ */
+class CatalogLoader {
+
+    /**
+     * Bytes of the file parsed by one task
+     */
+    private static final int CHUNK_BYTES = 4 << 20;
+    /**
+     * Bytes read at a time when looking for the end of a line
+     */
+    private static final int SCAN_BYTES = 256;
+
+    /**
+     * Read every book in a catalog file.
+     * @param file The catalog file
+     * @return The books in the order of the file
+     * @throws IOException If the file cannot be read
+     */
+    static List<BookInfo> load(File file) throws IOException {
+        List<CompletableFuture<Chunk>> tasks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = lineEnd(channel, Math.min(start + CHUNK_BYTES, size));
+                // The mapping stays valid once the channel is closed
+                ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                tasks.add(end == size && start == 0
+                        ? CompletableFuture.completedFuture(parse(region))
+                        : CompletableFuture.supplyAsync(() -> parse(region)));
+                start = end;
+            }
+        }
+        List<BookInfo> books = new ArrayList<>();
+        int malformed = 0;
+        for (CompletableFuture<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            books.addAll(chunk.books);
+            malformed += chunk.malformed;
+        }
+        if (malformed > 0) {
+            System.err.println("Skipped " + malformed + " malformed lines in " + file);
+        }
+        return books;
+    }
+
+    /**
+     * Find the position after the end of the line that contains the given
+     * position.
+     * @param channel The file
+     * @param position A position in the file
+     * @return The position after the next line break, or the end of the file
+     * @throws IOException If the file cannot be read
+     */
+    private static long lineEnd(FileChannel channel, long position) throws IOException {
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BYTES);
+        long size = channel.size();
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parse every line of a chunk.
+     * @param region The chunk, ending at a line break or the end of the file
+     * @return The books of the chunk
+     */
+    private static Chunk parse(ByteBuffer region) {
+        byte[] data = new byte[region.remaining()];
+        region.get(data);
+        Chunk chunk = new Chunk();
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && data[end - 1] == '\r') {
+                end--;
+            }
+            if (end > start) {
+                BookInfo book = parseLine(data, start, end);
+                if (book != null) {
+                    chunk.books.add(book);
+                }
+                else {
+                    chunk.malformed++;
+                }
+            }
+            start = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parse one line of the catalog.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte of the line
+     * @param end Position after the last byte of the line
+     * @return The book or null if the line is malformed
+     */
+    private static BookInfo parseLine(byte[] data, int start, int end) {
+        int open = indexOf(data, start, end, '{');
+        int close = open < 0 ? -1 : indexOf(data, open + 1, end, '}');
+        if (close < 0) {
+            return null;
+        }
+        int rest = indexOf(data, close + 1, end, '{');
+        int restEnd = rest < 0 ? end : rest;
+        // isbn,"title",
+        int isbnEnd = fieldEnd(data, start, open);
+        if (isbnEnd == open) {
+            return null;
+        }
+        int titleEnd = fieldEnd(data, isbnEnd + 1, open);
+        // ,"publisher",publish-date,page-count
+        int publisherStart = fieldEnd(data, close + 1, restEnd) + 1;
+        int publisherEnd = fieldEnd(data, publisherStart, restEnd);
+        int dateEnd = publisherEnd < restEnd ? fieldEnd(data, publisherEnd + 1, restEnd) : restEnd;
+        int pagesEnd = dateEnd < restEnd ? fieldEnd(data, dateEnd + 1, restEnd) : restEnd;
+        if (publisherStart > restEnd || dateEnd == restEnd) {
+            return null;
+        }
+        int pageCount = parseInt(data, dateEnd + 1, pagesEnd);
+        if (pageCount < 0) {
+            return null;
+        }
+        return new BookInfo(string(data, start, isbnEnd), string(data, isbnEnd + 1, titleEnd),
+                authors(data, open + 1, close), string(data, publisherStart, publisherEnd),
+                string(data, publisherEnd + 1, dateEnd), pageCount);
+    }
+
+    /**
+     * Split the authors at every comma. Like String.split, a list without
+     * commas is one author even if it is empty, and empty authors at the
+     * end are dropped.
+     * @param data The bytes of the chunk
+     * @param start Position after the opening bracket
+     * @param end Position of the closing bracket
+     * @return The authors
+     */
+    private static List<String> authors(byte[] data, int start, int end) {
+        List<String> authors = new ArrayList<>();
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || data[i] == ',') {
+                authors.add(string(data, from, i));
+                from = i + 1;
+            }
+        }
+        while (authors.size() > 1 && authors.get(authors.size() - 1).isEmpty()) {
+            authors.remove(authors.size() - 1);
+        }
+        if (authors.size() == 1 && authors.get(0).isEmpty() && end > start) {
+            authors.clear();
+        }
+        return authors;
+    }
+
+    /**
+     * Find the end of the field that starts at the given position: the next
+     * comma that is not followed by whitespace, or the end of the range.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte of the field
+     * @param end Position after the range the field is in
+     * @return Position of the comma or the end of the range
+     */
+    private static int fieldEnd(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == ',' && (i + 1 == end || !isWhitespace(data[i + 1]))) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Find a byte in a range.
+     * @param data The bytes of the chunk
+     * @param start Position to start looking at
+     * @param end Position after the range
+     * @param b The byte to find
+     * @return Position of the byte or -1 if it is not in the range
+     */
+    private static int indexOf(byte[] data, int start, int end, char b) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a byte is whitespace as matched by the regex \s.
+     * @param b The byte
+     * @return If it is whitespace
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Parse a decimal number with an optional sign.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte of the number
+     * @param end Position after the number
+     * @return The number or -1 if it is not a non-negative int
+     */
+    private static int parseInt(byte[] data, int start, int end) {
+        if (start < end && data[start] == '+') {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Decode part of the chunk as UTF-8.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte
+     * @param end Position after the last byte
+     * @return The string
+     */
+    private static String string(byte[] data, int start, int end) {
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The books parsed from one chunk and the number of lines skipped.
+     */
+    private static class Chunk {
+
+        private List<BookInfo> books = new ArrayList<>();
+        private int malformed;
+    }
+}
@@ -0,0 +1,148 @@
+package Model.Book;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Sorted list of book ordinals that share an indexed key. Ordinals are handed
+ * out in increasing order, so new books are appended to the list. Replaced
+ * books keep their ordinal and are inserted in place.
+ */
+class PostingList {
+
+    /**
+     * Initial capacity of a new posting list
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The ordinals in ascending order
+     */
+    private int[] ordinals;
+    /**
+     * Number of ordinals in use
+     */
+    private int size;
+
+    /**
+     * Create an empty posting list.
+     */
+    PostingList() {
+        ordinals = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create a posting list over already sorted ordinals.
+     * @param ordinals The sorted ordinals
+     * @param size Number of ordinals in use
+     */
+    private PostingList(int[] ordinals, int size) {
+        this.ordinals = ordinals;
+        this.size = size;
+    }
+
+    /**
+     * Add an ordinal, keeping the list sorted. Ordinals are usually at least
+     * as large as every ordinal in the list and are appended. Adding an
+     * ordinal that is already in the list has no effect.
+     * @param ordinal The ordinal to add
+     */
+    void add(int ordinal) {
+        int position = size;
+        if (size > 0 && ordinals[size - 1] >= ordinal) {
+            position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+        }
+        if (size == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+        }
+        System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+        ordinals[position] = ordinal;
+        size++;
+    }
+
+    /**
+     * Remove an ordinal from the list if it is in it.
+     * @param ordinal The ordinal to remove
+     */
+    void remove(int ordinal) {
+        int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (position >= 0) {
+            System.arraycopy(ordinals, position + 1, ordinals, position, size - position - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Get the ordinal at the given position.
+     * @param index The position
+     * @return The ordinal
+     */
+    int get(int index) {
+        return ordinals[index];
+    }
+
+    /**
+     * Get the number of ordinals.
+     * @return The size of the list
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Intersect this list with another list.
+     * @param other The other list
+     * @return A new list of the ordinals in both lists
+     */
+    PostingList intersect(PostingList other) {
+        int[] result = new int[Math.min(size, other.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            int a = ordinals[i];
+            int b = other.ordinals[j];
+            if (a == b) {
+                result[count++] = a;
+                i++;
+                j++;
+            }
+            else if (a < b) {
+                i++;
+            }
+            else {
+                j++;
+            }
+        }
+        return new PostingList(result, count);
+    }
+
+    /**
+     * Combine several lists into one list of every ordinal they contain.
+     * @param lists The lists to combine
+     * @param universe Upper bound of the ordinals in the lists
+     * @return A new list of the ordinals in any of the lists
+     */
+    static PostingList union(List<PostingList> lists, int universe) {
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        BitSet bits = new BitSet(universe);
+        for (PostingList list : lists) {
+            for (int i = 0; i < list.size; i++) {
+                bits.set(list.ordinals[i]);
+            }
+        }
+        int[] result = new int[bits.cardinality()];
+        int count = 0;
+        for (int o = bits.nextSetBit(0); o >= 0; o = bits.nextSetBit(o + 1)) {
+            result[count++] = o;
+        }
+        return new PostingList(result, count);
+    }
+}
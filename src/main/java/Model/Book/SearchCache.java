@@ -0,0 +1,507 @@
+package Model.Book;
+
+import Controller.Request.RequestUtil;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the books found by web service searches, keyed by the search
+ * query. The least recently used searches are evicted once the cache holds
+ * too many entries or too many bytes, and entries expire after a fixed
+ * time. If a directory is given every entry is also written to disk, so
+ * searches made before a restart are still cached after it. Entries evicted
+ * from memory stay on disk until they expire or the files use too many
+ * bytes, and then their files are deleted. Files are read, written and
+ * deleted without holding the lock of the cache, so a slow disk only delays
+ * the searches that use it.
+ */
+class SearchCache implements RequestUtil {
+
+    /**
+     * Default limits of the cache
+     */
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final long DEFAULT_MAX_BYTES = 16L << 20;
+    private static final long DEFAULT_MAX_DISK_BYTES = 64L << 20;
+    private static final long DEFAULT_TTL_MILLIS = 30 * 60 * 1000;
+    /**
+     * Estimated size of a book info without its strings
+     */
+    private static final long BOOK_OVERHEAD = 96;
+    /**
+     * Extension of the files in the cache directory
+     */
+    private static final String EXTENSION = ".cache";
+    /**
+     * Number of locks shared by the files
+     */
+    private static final int FILE_LOCKS = 16;
+
+    /**
+     * Entries in least recently used order
+     */
+    private LinkedHashMap<String, Entry> entries;
+    /**
+     * Files in the cache directory by name in least recently used order
+     */
+    private LinkedHashMap<String, DiskFile> files;
+    /**
+     * Locks that order the reads, writes and deletes of a file. They may
+     * be held while locking the cache but not the other way around.
+     */
+    private Object[] fileLocks;
+    /**
+     * Directory that holds the entries on disk or null if they are only
+     * kept in memory
+     */
+    private File directory;
+    /**
+     * Limits of the cache
+     */
+    private int maxEntries;
+    private long maxBytes;
+    private long maxDiskBytes;
+    private long ttlMillis;
+    /**
+     * Estimated bytes used by the entries and bytes used by the files
+     */
+    private long bytes;
+    private long diskBytes;
+    /**
+     * Cache metrics
+     */
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a cache with the default limits.
+     * @param directory Directory to keep the entries in or null to keep
+     *                  them only in memory
+     */
+    SearchCache(File directory) {
+        this(directory, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_MAX_DISK_BYTES,
+                DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Create a cache with the given limits. Files left in the directory by
+     * an earlier run are kept if they are valid and within the limits.
+     * @param directory Directory to keep the entries in or null to keep
+     *                  them only in memory
+     * @param maxEntries Most searches to keep in memory
+     * @param maxBytes Most estimated bytes to keep in memory
+     * @param maxDiskBytes Most bytes to keep in the directory
+     * @param ttlMillis Milliseconds an entry stays valid
+     */
+    SearchCache(File directory, int maxEntries, long maxBytes, long maxDiskBytes,
+                long ttlMillis) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttlMillis = ttlMillis;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        files = new LinkedHashMap<>(16, 0.75f, true);
+        fileLocks = new Object[FILE_LOCKS];
+        for (int i = 0; i < FILE_LOCKS; i++) {
+            fileLocks[i] = new Object();
+        }
+        if (directory != null) {
+            listFiles();
+        }
+    }
+
+    /**
+     * Get the books found by a cached search.
+     * @param query The search query
+     * @return A copy of the cached books or null if the search is not cached
+     */
+    List<BookInfo> get(String query) {
+        String key = normalize(query);
+        String name = fileName(key);
+        long now = System.currentTimeMillis();
+        DiskFile file;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(now, ttlMillis)) {
+                // The file expired as well and is deleted when it is read
+                remove(key);
+                evictions++;
+                entry = null;
+            }
+            if (entry != null) {
+                hits++;
+                return new ArrayList<>(entry.books);
+            }
+            file = files.get(name);
+            if (file == null) {
+                misses++;
+                return null;
+            }
+        }
+        Entry entry = read(key, name, file, now);
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            // A search cached while the file was read is newer
+            if (!entries.containsKey(key)) {
+                insert(key, entry);
+            }
+        }
+        return new ArrayList<>(entry.books);
+    }
+
+    /**
+     * Cache the books found by a search.
+     * @param query The search query
+     * @param books The books found
+     */
+    void put(String query, List<BookInfo> books) {
+        String key = normalize(query);
+        Entry entry = new Entry(new ArrayList<>(books), System.currentTimeMillis());
+        byte[] data = directory == null ? null : serialize(key, entry);
+        String name = data == null ? null : fileName(key);
+        DiskFile file = null;
+        List<String> evicted = null;
+        synchronized (this) {
+            remove(key);
+            insert(key, entry);
+            if (data != null) {
+                file = new DiskFile(data.length);
+                evicted = list(name, file);
+            }
+        }
+        if (file != null) {
+            write(name, file, data);
+            for (String old : evicted) {
+                delete(old, null);
+            }
+        }
+    }
+
+    /**
+     * Add an entry to memory and evict the least recently used entries
+     * until the limits are met again. The new entry itself is kept.
+     * @param key The normalized query
+     * @param entry The entry to add
+     */
+    private void insert(String key, Entry entry) {
+        entries.put(key, entry);
+        bytes += entry.size;
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && entries.size() > 1) {
+            Entry evicted = oldest.next().getValue();
+            oldest.remove();
+            bytes -= evicted.size;
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove an entry from memory.
+     * @param key The normalized query
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.size;
+        }
+    }
+
+    /**
+     * Add a file to the files in the directory and stop listing the least
+     * recently used files until the disk limit is met again. The new file
+     * itself is kept. The cache must be locked.
+     * @param name The file name
+     * @param file The new file
+     * @return The names of the files that are no longer listed and must be
+     *         deleted
+     */
+    private List<String> list(String name, DiskFile file) {
+        DiskFile replaced = files.put(name, file);
+        if (replaced != null) {
+            diskBytes -= replaced.size;
+        }
+        diskBytes += file.size;
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, DiskFile>> oldest = files.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && files.size() > 1) {
+            Map.Entry<String, DiskFile> next = oldest.next();
+            oldest.remove();
+            diskBytes -= next.getValue().size;
+            evicted.add(next.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * Stop listing a file unless it was replaced by a newer one.
+     * @param name The file name
+     * @param file The file that is no longer valid
+     * @return If the file was still listed
+     */
+    private synchronized boolean unlist(String name, DiskFile file) {
+        if (files.get(name) != file) {
+            return false;
+        }
+        files.remove(name);
+        diskBytes -= file.size;
+        return true;
+    }
+
+    /**
+     * List the files left in the directory by an earlier run, oldest first,
+     * and delete those that expired or do not fit the disk limit.
+     */
+    private void listFiles() {
+        File[] found = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (found == null) {
+            return;
+        }
+        Arrays.sort(found, Comparator.comparingLong(File::lastModified));
+        long now = System.currentTimeMillis();
+        for (File file : found) {
+            if (now - file.lastModified() >= ttlMillis) {
+                file.delete();
+                continue;
+            }
+            for (String evicted : list(file.getName(), new DiskFile(file.length()))) {
+                new File(directory, evicted).delete();
+            }
+        }
+    }
+
+    /**
+     * Read an entry from disk if it is still there and has not expired.
+     * Expired and unreadable files are deleted.
+     * @param key The normalized query
+     * @param name The file name
+     * @param file The file listed for the name
+     * @param now The current time in milliseconds
+     * @return The entry or null if there is no valid entry on disk
+     */
+    @SuppressWarnings("unchecked")
+    private Entry read(String key, String name, DiskFile file, long now) {
+        synchronized (lockFor(name)) {
+            File path = new File(directory, name);
+            // A file listed by a search that is still writing it
+            if (!path.isFile()) {
+                return null;
+            }
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(path)))) {
+                String storedKey = (String) in.readObject();
+                long created = in.readLong();
+                List<BookInfo> books = (List<BookInfo>) in.readObject();
+                // A different key means two queries share a file name
+                if (!storedKey.equals(key)) {
+                    return null;
+                }
+                Entry entry = new Entry(books, created);
+                if (!entry.isExpired(now, ttlMillis)) {
+                    return entry;
+                }
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                e.printStackTrace();
+            }
+            delete(name, file);
+            return null;
+        }
+    }
+
+    /**
+     * Write a file if it is still listed. A file that cannot be written is
+     * no longer listed.
+     * @param name The file name
+     * @param file The file listed for the name
+     * @param data The contents of the file
+     */
+    private void write(String name, DiskFile file, byte[] data) {
+        synchronized (lockFor(name)) {
+            synchronized (this) {
+                // Evicted before it was written, so there is nothing to delete
+                if (files.get(name) != file) {
+                    return;
+                }
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                unlist(name, file);
+                return;
+            }
+            try (FileOutputStream out = new FileOutputStream(new File(directory, name))) {
+                out.write(data);
+            } catch (IOException e) {
+                e.printStackTrace();
+                unlist(name, file);
+            }
+        }
+    }
+
+    /**
+     * Delete a file unless a newer file was listed under its name.
+     * @param name The file name
+     * @param file The file to stop listing or null if it is no longer listed
+     */
+    private void delete(String name, DiskFile file) {
+        synchronized (lockFor(name)) {
+            if (file != null ? !unlist(name, file) : isListed(name)) {
+                return;
+            }
+            new File(directory, name).delete();
+        }
+    }
+
+    /**
+     * Check if a file is listed.
+     * @param name The file name
+     * @return If the file is listed
+     */
+    private synchronized boolean isListed(String name) {
+        return files.containsKey(name);
+    }
+
+    /**
+     * Get the lock that orders the use of a file.
+     * @param name The file name
+     * @return The lock of the file
+     */
+    private Object lockFor(String name) {
+        return fileLocks[Math.floorMod(name.hashCode(), FILE_LOCKS)];
+    }
+
+    /**
+     * Serialize an entry to be written to disk.
+     * @param key The normalized query
+     * @param entry The entry to serialize
+     * @return The contents of the file of the entry or null if the entry
+     *         cannot be serialized
+     */
+    private static byte[] serialize(String key, Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(key);
+            out.writeLong(entry.created);
+            out.writeObject(entry.books);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the name of the file that holds the entry of a query.
+     * @param key The normalized query
+     * @return The file name of the entry
+     */
+    private static String fileName(String key) {
+        StringBuilder name = new StringBuilder();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            name.append(Integer.toHexString(key.hashCode()));
+        }
+        return name + EXTENSION;
+    }
+
+    /**
+     * Normalize a query so searches that only differ in case share an entry.
+     * The web service does not match case.
+     * @param query The search query
+     * @return The cache key
+     */
+    private static String normalize(String query) {
+        return query.toLowerCase();
+    }
+
+    /**
+     * Estimate the memory used by a list of books.
+     * @param books The books
+     * @return The estimated size in bytes
+     */
+    private static long estimateSize(List<BookInfo> books) {
+        long size = 0;
+        for (BookInfo book : books) {
+            long chars = book.getIsbn().length() + book.getTitle().length() +
+                    book.getPublisher().length() + book.getPublishDate().length();
+            for (String author : book.getAuthors()) {
+                chars += author.length();
+            }
+            size += BOOK_OVERHEAD + 2 * chars;
+        }
+        return size;
+    }
+
+    /**
+     * String representation of the cache metrics to be used as a response.
+     * @return The string form of the metrics
+     */
+    @Override
+    public synchronized String toString() {
+        return "Search Cache Entries: " + entries.size() + NEW_LINE +
+                "Search Cache Size (KB): " + (bytes >> 10) + NEW_LINE +
+                "Search Cache Disk Size (KB): " + (diskBytes >> 10) + NEW_LINE +
+                "Search Cache Hits: " + hits + NEW_LINE +
+                "Search Cache Disk Hits: " + diskHits + NEW_LINE +
+                "Search Cache Misses: " + misses + NEW_LINE +
+                "Search Cache Evictions: " + evictions + NEW_LINE;
+    }
+
+    /**
+     * The books of a cached search and when they were found.
+     */
+    private static class Entry {
+
+        private List<BookInfo> books;
+        private long created;
+        private long size;
+
+        private Entry(List<BookInfo> books, long created) {
+            this.books = books;
+            this.created = created;
+            this.size = estimateSize(books);
+        }
+
+        private boolean isExpired(long now, long ttlMillis) {
+            return now - created >= ttlMillis;
+        }
+    }
+
+    /**
+     * A file in the cache directory. Each write lists a new one, so a file
+     * can be told apart from one written later under the same name.
+     */
+    private static class DiskFile {
+
+        private long size;
+
+        private DiskFile(long size) {
+            this.size = size;
+        }
+    }
+}
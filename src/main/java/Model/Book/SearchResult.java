@@ -0,0 +1,234 @@
+package Model.Book;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The books found by a search, identified by their position in the search.
+ * A result may hold only one page of the search, in which case the IDs start
+ * at the offset of the page, or only some books of it, in which case the
+ * other IDs have no book.
+ */
+public class SearchResult implements Serializable {
+
+    private static final long serialVersionUID = 2602444711012395624L;
+
+    /**
+     * Longest ID that fits in an int without overflow
+     */
+    private static final int MAX_ID_LENGTH = 9;
+
+    /**
+     * The books in search order
+     */
+    private BookInfo[] books;
+    /**
+     * ID of the first book
+     */
+    private int offset;
+
+    /**
+     * Create a search result from the books of a search.
+     * @param books The books in search order
+     * @param offset ID of the first book
+     */
+    public SearchResult(List<BookInfo> books, int offset) {
+        this(books.toArray(new BookInfo[0]), offset);
+    }
+
+    /**
+     * Create a search result from an array of books that may have gaps.
+     * @param books The books in search order, null for IDs without a book
+     * @param offset ID of the first book
+     */
+    private SearchResult(BookInfo[] books, int offset) {
+        this.books = books;
+        this.offset = offset;
+    }
+
+    /**
+     * Get the number of books in the result.
+     * @return The number of books
+     */
+    public int size() {
+        return books.length;
+    }
+
+    /**
+     * Get the ID of the first book.
+     * @return The ID of the first book
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the book at a position in the result.
+     * @param index The position from 0 to size - 1
+     * @return The book
+     */
+    public BookInfo getBook(int index) {
+        return books[index];
+    }
+
+    /**
+     * Get the book with the given ID.
+     * @param id The ID as given in the search response
+     * @return The book or null if no book has the ID
+     */
+    public BookInfo get(String id) {
+        int index = parseID(id) - offset;
+        if (index < 0 || index >= books.length) {
+            return null;
+        }
+        return books[index];
+    }
+
+    /**
+     * Check if a book has the given ID.
+     * @param id The ID as given in the search response
+     * @return If a book has the ID
+     */
+    public boolean contains(String id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Get the books of the result that have one of the given IDs, under the
+     * same IDs.
+     * @param ids The IDs, which may include values that are not IDs
+     * @return The books with the IDs
+     */
+    public SearchResult select(List<String> ids) {
+        int first = books.length;
+        int last = -1;
+        for (String id : ids) {
+            if (contains(id)) {
+                int index = parseID(id) - offset;
+                first = Math.min(first, index);
+                last = Math.max(last, index);
+            }
+        }
+        if (last < 0) {
+            return new SearchResult(new BookInfo[0], offset);
+        }
+        BookInfo[] selected = new BookInfo[last - first + 1];
+        for (String id : ids) {
+            if (contains(id)) {
+                int index = parseID(id) - offset;
+                selected[index - first] = books[index];
+            }
+        }
+        return new SearchResult(selected, offset + first);
+    }
+
+    /**
+     * Write the books of the result with their IDs. A book of the library is
+     * only written as its ISBN, since the library has it when the result is
+     * read back at the same point; any other book is written whole.
+     * @param out The output to write to
+     * @param library The books of the library
+     * @throws IOException If the output cannot be written
+     */
+    public void write(DataOutput out, BookStorage library) throws IOException {
+        int count = 0;
+        for (BookInfo book : books) {
+            if (book != null) {
+                count++;
+            }
+        }
+        out.writeInt(offset);
+        out.writeInt(books.length);
+        out.writeInt(count);
+        for (int i = 0; i < books.length; i++) {
+            BookInfo book = books[i];
+            if (book == null) {
+                continue;
+            }
+            boolean shared = library.getBook(book.getIsbn()) == book;
+            out.writeInt(i);
+            out.writeBoolean(shared);
+            out.writeUTF(book.getIsbn());
+            if (!shared) {
+                out.writeUTF(book.getTitle());
+                out.writeUTF(book.getPublisher());
+                out.writeUTF(book.getPublishDate());
+                out.writeInt(book.getPageCount());
+                out.writeInt(book.getTotalCopies());
+                out.writeInt(book.getTotalCopiesAvailable());
+                out.writeInt(book.getAuthors().size());
+                for (String author : book.getAuthors()) {
+                    out.writeUTF(author);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a result written by write.
+     * @param in The input to read from
+     * @param library The books of the library, as they were when the
+     *                result was written
+     * @return The result
+     * @throws IOException If the input cannot be read or a book of the
+     *                     library is missing
+     */
+    public static SearchResult read(DataInput in, BookStorage library) throws IOException {
+        int offset = in.readInt();
+        BookInfo[] books = new BookInfo[in.readInt()];
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int index = in.readInt();
+            boolean shared = in.readBoolean();
+            String isbn = in.readUTF();
+            if (shared) {
+                books[index] = library.getBook(isbn);
+                if (books[index] == null) {
+                    throw new IOException("Book " + isbn + " is not in the library");
+                }
+                continue;
+            }
+            String title = in.readUTF();
+            String publisher = in.readUTF();
+            String publishDate = in.readUTF();
+            int pageCount = in.readInt();
+            int totalCopies = in.readInt();
+            int available = in.readInt();
+            int authorCount = in.readInt();
+            List<String> authors = new ArrayList<>(authorCount);
+            for (int j = 0; j < authorCount; j++) {
+                authors.add(in.readUTF());
+            }
+            books[index] = new BookInfo(isbn, title, authors, publisher, publishDate,
+                    pageCount, totalCopies, available);
+        }
+        return new SearchResult(books, offset);
+    }
+
+    /**
+     * Read an ID written the way the search response writes it, without
+     * signs or leading zeros.
+     * @param id The ID
+     * @return The ID as a number or -1 if it is not a valid ID
+     */
+    private static int parseID(String id) {
+        int length = id.length();
+        if (length == 0 || length > MAX_ID_LENGTH ||
+                (length > 1 && id.charAt(0) == '0')) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -1,20 +1,29 @@
 package Model.Checkout;
 
 import Controller.Request.RequestUtil;
+import Controller.Request.ResponseWriter;
 import Model.Book.BookDB;
 import Model.Book.BookInfo;
+import Model.Book.SearchResult;
+import Model.Library.StateWriter;
 import Model.Library.TimeKeeper;
 
+import java.io.DataInput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * The database that manages all information about checkout and return 
- * transactions and fines performed by visitors to the library.
+ * transactions and fines performed by visitors to the library. The loans of
+ * a visitor are only read or changed while holding the lock of the visitor,
+ * so requests of different visitors can run at the same time.
  * @author Hersh Nagpal
  * @author Luis Gutierrez
  */
@@ -23,44 +32,63 @@ public class CheckoutDB implements Serializable,RequestUtil {
     private static CheckoutDB instance = null;
 
     /**
-     * The open transaction loans of each visitor
+     * Number of locks the visitors are spread over, a power of two
      */
-    private Map<String, List<Transaction>> openLoans;
+    private static final int LOCK_STRIPES = 64;
     /**
-     * The closed transaction loans of each visitor
+     * The locks of the visitors. A visitor always gets the same lock.
      */
-    private Map<String, List<Transaction>> closedLoans;
+    private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
     /**
-     * Transactions to be added to openLoans if all books being
-     * borrowed by a visitor are valid
+     * Updates the fines collected during a day atomically
      */
-    private List<Transaction> transactionsInProgress;
+    private static final AtomicIntegerFieldUpdater<CheckoutDB> COLLECTED_FINES =
+            AtomicIntegerFieldUpdater.newUpdater(CheckoutDB.class, "dailyCollectedFines");
     /**
-     * Tracks the last find borrowed books for a visitor query
+     * Updates the fines uncollected during a day atomically
      */
-    private Map<String,BookInfo> lastBorrowedBooks;
+    private static final AtomicIntegerFieldUpdater<CheckoutDB> UNCOLLECTED_FINES =
+            AtomicIntegerFieldUpdater.newUpdater(CheckoutDB.class, "dailyUncollectedFines");
+
+    /**
+     * The open transaction loans of each visitor
+     */
+    private Map<String, List<Transaction>> openLoans;
+    /**
+     * The closed transaction loans of each visitor
+     */
+    private Map<String, List<Transaction>> closedLoans;
     /**
      * Amount of fines collected during a day.
      * Used for LibraryStatisticsReports. Cleared when daily report is generated during closing time.
      */
-    private int dailyCollectedFines;
+    private volatile int dailyCollectedFines;
     /**
      * Amount of fines uncollected during a day.
      * Used for LibraryStatisticsReports. Cleared when daily report is generated during closing time.
      */
-    private int dailyUncollectedFines;
+    private volatile int dailyUncollectedFines;
     /**
      * The max number of transactions a visitor can have.
      */
     private final static int MAX_NUM_OF_TRANSACTIONS = 5;
+    /**
+     * Writes the closed loans saved in the snapshot the database was read
+     * from, or null if the database was not read from a snapshot
+     */
+    private transient StateWriter earlierClosedLoans;
 
     /**
      * Create a new checkout database that is empty
      */
     private CheckoutDB() {
-        openLoans = new HashMap<>();
-        closedLoans = new HashMap<>();
-        transactionsInProgress = new ArrayList<>();
+        openLoans = new ConcurrentHashMap<>();
+        closedLoans = new ConcurrentHashMap<>();
     }
 
     public static CheckoutDB getInstance() {
@@ -70,21 +98,158 @@ public class CheckoutDB implements Serializable,RequestUtil {
         return instance;
     }
 
+    /**
+     * Get the lock of a visitor.
+     * @param visitorID The visitor ID
+     * @return The lock to hold while using the loans of the visitor
+     */
+    private static Object lock(String visitorID) {
+        int h = visitorID.hashCode();
+        return LOCKS[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Capture the open loans and the fines of the day, to be written while
+     * the loans keep changing. Open loans change when they are returned or
+     * their fines are paid, so they are copied. The closed loans are
+     * captured separately by captureClosedLoans.
+     * @return The writer of the captured loans
+     */
+    public StateWriter capture() {
+        int collected = dailyCollectedFines;
+        int uncollected = dailyUncollectedFines;
+        StateWriter loans = captureLoans(openLoans, true);
+        return out -> {
+            out.writeInt(collected);
+            out.writeInt(uncollected);
+            loans.write(out);
+        };
+    }
+
+    /**
+     * Capture the closed loans, to be written while the loans keep
+     * changing. A closed loan never changes, so only the loans are
+     * captured. The loans are written in blocks of a count of visitors and
+     * their loans: the blocks of the snapshot the database was read from,
+     * which are copied without being read, then a block of the loans closed
+     * since. A visitor may have loans in several blocks, oldest first.
+     * @return The writer of the captured loans
+     */
+    public StateWriter captureClosedLoans() {
+        StateWriter earlier = earlierClosedLoans;
+        StateWriter loans = captureLoans(closedLoans, false);
+        return out -> {
+            if (earlier != null) {
+                earlier.write(out);
+            }
+            loans.write(out);
+        };
+    }
+
+    /**
+     * Read a checkout database written by capture and make it the instance.
+     * The closed loans written by captureClosedLoans are never searched, so
+     * they are not read, only written again with the next loans captured.
+     * @param in The input to read from
+     * @param closedLoans Writes the saved closed loans again
+     * @param bookDB The library the loans borrowed from
+     * @return The checkout database
+     * @throws IOException If the input cannot be read
+     */
+    public static CheckoutDB read(DataInput in, StateWriter closedLoans, BookDB bookDB)
+            throws IOException {
+        CheckoutDB checkoutDB = new CheckoutDB();
+        checkoutDB.dailyCollectedFines = in.readInt();
+        checkoutDB.dailyUncollectedFines = in.readInt();
+        checkoutDB.openLoans = readLoans(in, bookDB);
+        checkoutDB.earlierClosedLoans = closedLoans;
+        instance = checkoutDB;
+        return checkoutDB;
+    }
+
+    /**
+     * Capture the loans of each visitor. The loans of every visitor are
+     * kept in one array, so capturing does not create an object for each
+     * visitor.
+     * @param loans The loans to capture
+     * @param copy If the loans are copied, since they may still change
+     * @return The writer of the loans
+     */
+    private static StateWriter captureLoans(Map<String, List<Transaction>> loans, boolean copy) {
+        String[] visitorIDs = new String[loans.size()];
+        int[] counts = new int[visitorIDs.length];
+        List<Transaction> captured = new ArrayList<>();
+        int visitors = 0;
+        for (Map.Entry<String, List<Transaction>> entry : loans.entrySet()) {
+            synchronized (lock(entry.getKey())) {
+                if (visitors == visitorIDs.length) {
+                    visitorIDs = Arrays.copyOf(visitorIDs, visitors * 2 + 1);
+                    counts = Arrays.copyOf(counts, visitorIDs.length);
+                }
+                List<Transaction> transactions = entry.getValue();
+                visitorIDs[visitors] = entry.getKey();
+                counts[visitors++] = transactions.size();
+                for (int i = 0; i < transactions.size(); i++) {
+                    captured.add(copy ? transactions.get(i).copy() : transactions.get(i));
+                }
+            }
+        }
+        String[] ids = visitorIDs;
+        int[] sizes = counts;
+        int count = visitors;
+        return out -> {
+            out.writeInt(count);
+            int next = 0;
+            for (int i = 0; i < count; i++) {
+                out.writeUTF(ids[i]);
+                out.writeInt(sizes[i]);
+                for (int j = 0; j < sizes[i]; j++) {
+                    captured.get(next++).write(out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Read loans written by captureLoans.
+     * @param in The input to read from
+     * @param bookDB The library the loans borrowed from
+     * @return The loans of each visitor
+     * @throws IOException If the input cannot be read
+     */
+    private static Map<String, List<Transaction>> readLoans(DataInput in, BookDB bookDB)
+            throws IOException {
+        int count = in.readInt();
+        Map<String, List<Transaction>> loans = new ConcurrentHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            String visitorID = in.readUTF();
+            int size = in.readInt();
+            List<Transaction> transactions = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                transactions.add(Transaction.read(in, bookDB));
+            }
+            loans.put(visitorID, transactions);
+        }
+        return loans;
+    }
+
     /**
      * Create a checkout transaction using a visitor ID and a book's ISBN.
+     * The book limit is checked again while the loans are added, so
+     * borrows of the same visitor at once cannot exceed it together.
      * @param checkoutDate the date and time of the transaction 
      * @param visitorID The visitor ID
      * @param bookInfos The books to checkout
-     * @return The new transaction if it was valid, otherwise null.
+     * @return The new transactions, or null if they would reach the book
+     *         limit and none were added.
      */
     public List<Transaction> checkout(LocalDateTime checkoutDate, String visitorID, List<BookInfo> bookInfos) {
-        transactionsInProgress.clear();
+        List<Transaction> transactions = new ArrayList<>(bookInfos.size());
         for (BookInfo bookInfo : bookInfos) {
             Transaction transaction = new Transaction(checkoutDate, bookInfo);
-            transactionsInProgress.add(transaction);
+            transactions.add(transaction);
         }
-        addTransactionsInProcess(visitorID);
-        return transactionsInProgress;
+        return addTransactions(visitorID, transactions) ? transactions : null;
     }
 
     /**
@@ -93,11 +258,13 @@ public class CheckoutDB implements Serializable,RequestUtil {
      * @return true if visitor has book borrowing limit
      */
     public boolean hasBookLimit(String visitorID) {
-        List<Transaction> transactions = openLoans.get(visitorID);
-        if (transactions == null) {
-            return false;
+        synchronized (lock(visitorID)) {
+            List<Transaction> transactions = openLoans.get(visitorID);
+            if (transactions == null) {
+                return false;
+            }
+            return transactions.size()==MAX_NUM_OF_TRANSACTIONS;
         }
-        return transactions.size()==MAX_NUM_OF_TRANSACTIONS;
     }
 
     /**
@@ -107,7 +274,20 @@ public class CheckoutDB implements Serializable,RequestUtil {
      * @return true if adding these books will reach visitor book limit
      */
     public boolean willReachBookLimit(String visitorID, int amount){
-        List<Transaction> transactions = openLoans.get(visitorID);
+        synchronized (lock(visitorID)) {
+            return reachesBookLimit(openLoans.get(visitorID), amount);
+        }
+    }
+
+    /**
+     * Check if borrowing more books will reach the book limit. Must be
+     * called while holding the lock of the visitor.
+     * @param transactions The open loans of the visitor, or null if the
+     *                     visitor never borrowed
+     * @param amount amount of books
+     * @return true if adding these books will reach visitor book limit
+     */
+    private static boolean reachesBookLimit(List<Transaction> transactions, int amount) {
         if (transactions == null) {
             return false;
         }
@@ -116,15 +296,20 @@ public class CheckoutDB implements Serializable,RequestUtil {
 
     /**
      * Used to add all the book transactions of a borrow book request
-     * if all single book checkout requests were valid.
+     * if all single book checkout requests were valid and the visitor is
+     * still below the book limit.
+     * @param visitorID The visitor borrowing the books
+     * @param transactions The transactions of the request
+     * @return true if the transactions were added
      */
-    public void addTransactionsInProcess(String visitorID){
-        //Visitor's first time making a transaction
-        if(!openLoans.containsKey(visitorID)){
-            openLoans.put(visitorID,this.transactionsInProgress);
-        }
-        else{
-            openLoans.get(visitorID).addAll(transactionsInProgress);
+    private boolean addTransactions(String visitorID, List<Transaction> transactions){
+        synchronized (lock(visitorID)) {
+            if (reachesBookLimit(openLoans.get(visitorID), transactions.size())) {
+                return false;
+            }
+            //Visitor's first time making a transaction
+            openLoans.computeIfAbsent(visitorID, id -> new ArrayList<>()).addAll(transactions);
+            return true;
         }
     }
 
@@ -136,14 +321,16 @@ public class CheckoutDB implements Serializable,RequestUtil {
     public boolean hasOutstandingFine(String visitorID) {
         //Update fines in visitor's transactions and check for outstanding fines
         boolean hasOutstandingFine = false;
-        //Iterate through visitor's transactions and check if there is an outstanding fine
-        List<Transaction> transactions = openLoans.get(visitorID);
-        if (transactions == null) {
-            return false;
-        }
-        for (Transaction transaction : transactions) {
-            if(transaction.getFineAmount()>0){
-                hasOutstandingFine = true;
+        synchronized (lock(visitorID)) {
+            //Iterate through visitor's transactions and check if there is an outstanding fine
+            List<Transaction> transactions = openLoans.get(visitorID);
+            if (transactions == null) {
+                return false;
+            }
+            for (Transaction transaction : transactions) {
+                if(transaction.getFineAmount()>0){
+                    hasOutstandingFine = true;
+                }
             }
         }
         return hasOutstandingFine;
@@ -156,12 +343,14 @@ public class CheckoutDB implements Serializable,RequestUtil {
      */
     public int calculateFine(String visitorID) {
         int fines = 0;
-        List<Transaction> transactions = openLoans.get(visitorID);
-        if (transactions == null) {
-            return fines;
-        }
-        for (Transaction t : transactions) {
-            fines += t.getFineAmount();
+        synchronized (lock(visitorID)) {
+            List<Transaction> transactions = openLoans.get(visitorID);
+            if (transactions == null) {
+                return fines;
+            }
+            for (Transaction t : transactions) {
+                fines += t.getFineAmount();
+            }
         }
 
         return fines;
@@ -175,7 +364,7 @@ public class CheckoutDB implements Serializable,RequestUtil {
      * @param bookIDs list of books to be returned
      * @return String whether returnBook command was successful
      */
-    public String returnBooks(Map<String, BookInfo> search, String visitorID, List<String> bookIDs, BookDB bookDB, TimeKeeper timeKeeper) {
+    public String returnBooks(SearchResult search, String visitorID, List<String> bookIDs, BookDB bookDB, TimeKeeper timeKeeper) {
         double totalFine = 0;
         List<String> overdue = new ArrayList<>();
         Transaction t;
@@ -192,7 +381,7 @@ public class CheckoutDB implements Serializable,RequestUtil {
             bookDB.returnCopy(isbn);
             if(t.getFineAmount() > 0){
                 totalFine += t.getFineAmount();
-                dailyUncollectedFines += t.getFineAmount();
+                UNCOLLECTED_FINES.addAndGet(this, t.getFineAmount());
                 overdue.add(id);
             }
         }
@@ -215,18 +404,19 @@ public class CheckoutDB implements Serializable,RequestUtil {
      * @return the completed Transaction if successful, null otherwise.
      */
     public Transaction returnBook(LocalDateTime returnDate, String visitorID, String isbn) {
-        if(this.openLoans.containsKey(visitorID)) {
-            for (Transaction t: this.openLoans.get(visitorID)) {
+        synchronized (lock(visitorID)) {
+            List<Transaction> transactions = this.openLoans.get(visitorID);
+            if (transactions == null) {
+                return null;
+            }
+            for (Transaction t: transactions) {
                 if(t.getIsbn().equals(isbn)) {
                     //Calculates transaction fine and sets returnDate
                     t.returnBook(returnDate);
                     //Remove transaction from openLoans if it has no fine
                     if(t.getFineAmount() == 0) {
-                        this.openLoans.get(visitorID).remove(t);
-                        if (!this.closedLoans.containsKey(visitorID)) {
-                            this.closedLoans.put(visitorID, new ArrayList<Transaction>());
-                        }
-                        this.closedLoans.get(visitorID).add(t);
+                        transactions.remove(t);
+                        this.closedLoans.computeIfAbsent(visitorID, id -> new ArrayList<>()).add(t);
                     }
 
                     return t;
@@ -239,36 +429,31 @@ public class CheckoutDB implements Serializable,RequestUtil {
     /**
      * Find the borrowed books under a visitor by getting the visitor info.
      * @param visitorID The visitor to find the borrowed books
-     * @return The string containing the books borrowed under the visitor
+     * @param out The response to write the books borrowed under the visitor to
+     * @return The books borrowed under the visitor in the order they were written
      */
-    public String findBorrowedBooks(String visitorID){
-        lastBorrowedBooks = new HashMap<>();
-        List<Transaction> visitorTransactions = openLoans.get(visitorID);
-        if (visitorTransactions == null) {
-            return BORROWED_REQUEST + DELIMITER + 0 + TERMINATOR;
-        }
-        String response = BORROWED_REQUEST + DELIMITER + visitorTransactions.size() + DELIMITER;
-        //For each transaction, call method in visitorDB get book title and add to response string
-        int id = 0;
-        for(Transaction transaction: visitorTransactions){
-            response += NEW_LINE;
-            String isbn = transaction.getIsbn();
-            String checkoutDate = transaction.getCheckoutDate();
-            String title = transaction.getTitle();
-            response += id+DELIMITER+isbn+DELIMITER+title+DELIMITER+checkoutDate;
-            lastBorrowedBooks.put(String.valueOf(id), transaction.getBookInfo());
-            id++;
+    public SearchResult findBorrowedBooks(String visitorID, ResponseWriter out){
+        List<BookInfo> borrowed = new ArrayList<>();
+        synchronized (lock(visitorID)) {
+            List<Transaction> visitorTransactions = openLoans.get(visitorID);
+            if (visitorTransactions == null) {
+                out.append(BORROWED_REQUEST).delimiter().append(0).terminate();
+                return new SearchResult(borrowed, 0);
+            }
+            out.append(BORROWED_REQUEST).delimiter().append(visitorTransactions.size()).delimiter();
+            //For each transaction, call method in visitorDB get book title and add to response
+            int id = 0;
+            for(Transaction transaction: visitorTransactions){
+                out.newLine();
+                out.append(id).delimiter().append(transaction.getIsbn()).delimiter()
+                        .append(transaction.getTitle()).delimiter()
+                        .append(transaction.getCheckoutDate());
+                borrowed.add(transaction.getBookInfo());
+                id++;
+            }
         }
-        response += TERMINATOR;
-        return response;
-    }
-
-    /**
-     * Get the last borrowed books search;
-     * @return The last borrowed books
-     */
-    public Map<String, BookInfo> getLastBorrowedBooks() {
-        return lastBorrowedBooks;
+        out.terminate();
+        return new SearchResult(borrowed, 0);
     }
 
     /**
@@ -278,24 +463,26 @@ public class CheckoutDB implements Serializable,RequestUtil {
      * @return remaining balance of fines due for visitor
      */
     public int payFine(String visitorID, int amount){
-        List<Transaction> transactions = openLoans.get(visitorID);
-        for (Transaction transaction : transactions) {
-            int fineAmount = transaction.getFineAmount();
-            if (fineAmount > 0) {
-                //Amount greater than transaction.fine -> clear fine and decrease amount
-                if(amount > fineAmount){
-                    amount -= fineAmount;
-                    transaction.clearFine();
-                }
-                //Amount less than fine (or equal)-> clear amount and decrease fine
-                else {
-                    transaction.decreaseFineAmount(amount);
-                    amount = 0;
+        synchronized (lock(visitorID)) {
+            List<Transaction> transactions = openLoans.get(visitorID);
+            for (Transaction transaction : transactions) {
+                int fineAmount = transaction.getFineAmount();
+                if (fineAmount > 0) {
+                    //Amount greater than transaction.fine -> clear fine and decrease amount
+                    if(amount > fineAmount){
+                        amount -= fineAmount;
+                        transaction.clearFine();
+                    }
+                    //Amount less than fine (or equal)-> clear amount and decrease fine
+                    else {
+                        transaction.decreaseFineAmount(amount);
+                        amount = 0;
+                    }
                 }
             }
+            COLLECTED_FINES.addAndGet(this, amount);
+            return calculateFine(visitorID);
         }
-        dailyCollectedFines += amount;
-        return calculateFine(visitorID);
     }
 
     public int getCollectedFines() {
@@ -1,7 +1,12 @@
 package Model.Checkout;
 
+import Model.Book.BookDB;
 import Model.Book.BookInfo;
+import Model.Library.TimeKeeper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -62,6 +67,58 @@ public class Transaction implements Serializable {
         fineAmount = 0;
     }
 
+    /**
+     * Copy the transaction as it is now.
+     * @return The copy
+     */
+    Transaction copy() {
+        Transaction copy = new Transaction(checkoutDate, bookInfo);
+        copy.dueDate = dueDate;
+        copy.returnDate = returnDate;
+        copy.fineAmount = fineAmount;
+        return copy;
+    }
+
+    /**
+     * Write the transaction. The book is written as its ISBN.
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    void write(DataOutput out) throws IOException {
+        TimeKeeper.writeTime(out, checkoutDate);
+        TimeKeeper.writeTime(out, dueDate);
+        out.writeBoolean(returnDate != null);
+        if (returnDate != null) {
+            TimeKeeper.writeTime(out, returnDate);
+        }
+        out.writeUTF(bookInfo.getIsbn());
+        out.writeInt(fineAmount);
+    }
+
+    /**
+     * Read a transaction written by write.
+     * @param in The input to read from
+     * @param bookDB The library the book of the transaction is in
+     * @return The transaction
+     * @throws IOException If the input cannot be read or the book is not in
+     *                     the library
+     */
+    static Transaction read(DataInput in, BookDB bookDB) throws IOException {
+        LocalDateTime checkoutDate = TimeKeeper.readTime(in);
+        LocalDateTime dueDate = TimeKeeper.readTime(in);
+        LocalDateTime returnDate = in.readBoolean() ? TimeKeeper.readTime(in) : null;
+        String isbn = in.readUTF();
+        BookInfo bookInfo = bookDB.getBook(isbn);
+        if (bookInfo == null) {
+            throw new IOException("Transaction of unknown book " + isbn);
+        }
+        Transaction transaction = new Transaction(checkoutDate, bookInfo);
+        transaction.dueDate = dueDate;
+        transaction.returnDate = returnDate;
+        transaction.fineAmount = in.readInt();
+        return transaction;
+    }
+
     /**
      * Return the book on the given date.
      * @param date The date of return
@@ -1,17 +1,21 @@
 package Model.Client;
 
 import Controller.Request.Request;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 
-import java.util.Map;
+import java.io.Serializable;
 import java.util.Stack;
 
 /**
  * An account registered in the library which performs user-specific requests.
+ * The command histories are saved with the account, so requests can still
+ * be undone or redone after a restart.
  *
  * @author Michael Kha
  */
-public class Account {
+public class Account implements Serializable {
+
+    private static final long serialVersionUID = -5020644954746905519L;
 
     /**
      * The role which determines request permissions
@@ -51,17 +55,17 @@ public class Account {
     /**
      * The last store search performed by the account
      */
-    private Map<String, BookInfo> storeSearch;
+    private SearchResult storeSearch;
 
     /**
      * The last library search performed by the account
      */
-    private Map<String, BookInfo> librarySearch;
+    private SearchResult librarySearch;
 
     /**
      * The last borrowed search performed by the account
      */
-    private Map<String, BookInfo> borrowedSearch;
+    private SearchResult borrowedSearch;
 
     /**
      * Create an account given the following credentials.
@@ -111,7 +115,7 @@ public class Account {
      * Set the account's store search.
      * @param books The books to set to
      */
-    public void setStoreSearch(Map<String, BookInfo> books) {
+    public void setStoreSearch(SearchResult books) {
         storeSearch = books;
     }
 
@@ -119,7 +123,7 @@ public class Account {
      * Set the account's library search.
      * @param books The books to set to
      */
-    public void setLibrarySearch(Map<String, BookInfo> books) {
+    public void setLibrarySearch(SearchResult books) {
         librarySearch = books;
     }
 
@@ -127,7 +131,7 @@ public class Account {
      * Set the account's borrowed search.
      * @param books The books to set to
      */
-    public void setBorrowedSearch(Map<String, BookInfo> books) {
+    public void setBorrowedSearch(SearchResult books) {
         borrowedSearch = books;
     }
 
@@ -135,7 +139,7 @@ public class Account {
      * Get the account's store search.
      * @return The store search
      */
-    public Map<String, BookInfo> getStoreSearch() {
+    public SearchResult getStoreSearch() {
         return storeSearch;
     }
 
@@ -143,7 +147,7 @@ public class Account {
      * Get the account's library search.
      * @return The library search
      */
-    public Map<String, BookInfo> getLibrarySearch() {
+    public SearchResult getLibrarySearch() {
         return librarySearch;
     }
 
@@ -151,7 +155,7 @@ public class Account {
      * Get the account's borrowed search.
      * @return The borrowed search
      */
-    public Map<String, BookInfo> getBorrowedSearch() {
+    public SearchResult getBorrowedSearch() {
         return borrowedSearch;
     }
 
@@ -2,11 +2,15 @@ package Model.Client;
 
 import Controller.Request.Request;
 import Controller.Request.RequestUtil;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages the accounts of the library by performing operations on the accounts
@@ -16,6 +20,8 @@ import java.util.Map;
  */
 public class AccountDB implements Serializable, RequestUtil {
 
+    private static final long serialVersionUID = 9046268523590599102L;
+
     /**
      * Singleton instance
      */
@@ -32,18 +38,25 @@ public class AccountDB implements Serializable, RequestUtil {
     private Map<String, Account> visitors;
 
     /**
-     * Only logged in accounts. The client ID mapped to an account after
-     * being logged in. Logging out removes the account from being active.
+     * Only logged in accounts as they are saved. The client ID mapped to an
+     * account after being logged in. The logged in accounts in use are kept
+     * in sessions.
      */
     private Map<String, Account> activeAccounts;
 
+    /**
+     * Only logged in accounts. Logging out removes the account from being
+     * active.
+     */
+    private transient SessionTable sessions;
+
     /**
      * Create the account database which holds all accounts and active accounts.
      */
     private AccountDB() {
-        accounts = new HashMap<>();
-        visitors = new HashMap<>();
-        activeAccounts = new HashMap<>();
+        accounts = new ConcurrentHashMap<>();
+        visitors = new ConcurrentHashMap<>();
+        sessions = new SessionTable();
     }
 
     /**
@@ -57,17 +70,82 @@ public class AccountDB implements Serializable, RequestUtil {
         return instance;
     }
 
+    /**
+     * Make a restored account database the instance.
+     * @return The restored database
+     */
+    private Object readResolve() {
+        instance = this;
+        return this;
+    }
+
+    /**
+     * Save the database with the accounts logged in when it is saved.
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        activeAccounts = sessions.toMap();
+        out.defaultWriteObject();
+        activeAccounts = null;
+    }
+
+    /**
+     * Restore a saved database and log its accounts in again.
+     * @param in The stream to read from
+     * @throws IOException If the stream cannot be read
+     * @throws ClassNotFoundException If a saved class does not exist
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        accounts = new ConcurrentHashMap<>(accounts);
+        visitors = new ConcurrentHashMap<>(visitors);
+        sessions = new SessionTable();
+        for (Map.Entry<String, Account> entry : activeAccounts.entrySet()) {
+            sessions.put(entry.getKey(), entry.getValue());
+        }
+        activeAccounts = null;
+    }
+
+    /**
+     * Get the account logged in on a client. Requests look the account up
+     * once and use it for everything they need from it.
+     * @param clientID The client ID
+     * @return The account or null if no account is logged in on the client
+     */
+    public Account getActiveAccount(String clientID) {
+        return sessions.get(clientID);
+    }
+
     public boolean isActiveAccount(String clientID) {
-        return activeAccounts.containsKey(clientID);
+        return sessions.get(clientID) != null;
+    }
+
+    /**
+     * Get the number of accounts that are logged in.
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Find the clients whose accounts were logged in but not used for a
+     * while, so they can be logged out. Must be called at a steady
+     * interval, since sessions are idle after a number of calls.
+     * @return The client IDs of the idle sessions
+     */
+    public List<String> findIdleSessions() {
+        return sessions.findIdle();
     }
 
     public void addToCommandHistory(Request request, String clientID) {
-        Account account = activeAccounts.get(clientID);
+        Account account = sessions.get(clientID);
         account.addPerformedRequest(request);
     }
 
     public void addToUndoHistory(Request request, String clientID) {
-        Account account = activeAccounts.get(clientID);
+        Account account = sessions.get(clientID);
         account.addUndoneCommand(request);
     }
 
@@ -79,7 +157,7 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param visitorID The associated visitor ID
      * @return An error or success response about the creation of the account
      */
-    public String createAccount(String username,
+    public synchronized String createAccount(String username,
                                 String password, Role role, String visitorID) {
         // Check no duplicate username
         if (accounts.containsKey(username)) {
@@ -106,17 +184,17 @@ public class AccountDB implements Serializable, RequestUtil {
      */
     public String logIn(String clientID, String username, String password) {
         // Check if username and password valid
-        if (!accounts.containsKey(username)) {
+        Account account = accounts.get(username);
+        if (account == null) {
             return clientID + DELIMITER + LOGIN_REQUEST +
                     DELIMITER + "bad-username-or-password" + TERMINATOR;
         }
-        Account account = accounts.get(username);
         if (!account.authenticate(username, password)) {
             return clientID + DELIMITER + LOGIN_REQUEST +
                     DELIMITER + "bad-username-or-password" + TERMINATOR;
         }
         // Update active accounts
-        activeAccounts.put(clientID, account);
+        sessions.put(clientID, account);
         // Return success response
         return clientID + DELIMITER + LOGIN_REQUEST +
                 DELIMITER + SUCCESS + TERMINATOR;
@@ -129,7 +207,7 @@ public class AccountDB implements Serializable, RequestUtil {
      */
     public String logOut(String clientID) {
         // Update active accounts;
-        activeAccounts.remove(clientID);
+        sessions.remove(clientID);
         // Return success response
         return clientID + DELIMITER + LOGOUT_REQUEST +
                 DELIMITER + SUCCESS + TERMINATOR;
@@ -142,7 +220,7 @@ public class AccountDB implements Serializable, RequestUtil {
      */
     public String undo(String clientID) {
         // Grab account and call undo method
-        Account account = activeAccounts.get(clientID);
+        Account account = sessions.get(clientID);
         //Return response based on undo success
         boolean requestSuccess = account.undoRequest();
         if (requestSuccess) {
@@ -160,7 +238,7 @@ public class AccountDB implements Serializable, RequestUtil {
      */
     public String redo(String clientID) {
         // Grab account and call undo method
-        Account account = activeAccounts.get(clientID);
+        Account account = sessions.get(clientID);
         //Return response based on redo success
         boolean requestSuccess = account.redoRequest();
         if (requestSuccess) {
@@ -177,11 +255,11 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param request request being stored in commandHistory stack
      */
     public void addRequestToCommandHistory(Request request, String clientID) {
-        activeAccounts.get(clientID).addPerformedRequest(request);
+        sessions.get(clientID).addPerformedRequest(request);
     }
 
     public String getVisitorIDFromClientID(String clientID) {
-        return activeAccounts.get(clientID).getVisitorID();
+        return sessions.get(clientID).getVisitorID();
     }
 
     /**
@@ -191,18 +269,18 @@ public class AccountDB implements Serializable, RequestUtil {
      */
     public String setBookInfoService(String clientID, Service service) {
         // Check account is active
-        if (!activeAccounts.containsKey(clientID)) {
+        Account account = sessions.get(clientID);
+        if (account == null) {
             return clientID + DELIMITER + SERVICE_REQUEST + DELIMITER + "cannot-set" + TERMINATOR;
         }
         // Perform setting on account
-        Account account = activeAccounts.get(clientID);
         account.setService(service);
         // Return success response
         return clientID + DELIMITER + SERVICE_REQUEST + DELIMITER + "success" + TERMINATOR;
     }
 
     public Service getService(String clientID) {
-        Account account = activeAccounts.get(clientID);
+        Account account = sessions.get(clientID);
         if (account == null) {
             return null;
         }
@@ -214,8 +292,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param books The books to set to
      * @param clientID The client ID to get the account
      */
-    public void setLibrarySearch(Map<String, BookInfo> books, String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public void setLibrarySearch(SearchResult books, String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return;
         }
@@ -227,8 +305,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param books The books to set to
      * @param clientID The client ID to get the account
      */
-    public void setStoreSearch(Map<String, BookInfo> books, String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public void setStoreSearch(SearchResult books, String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return;
         }
@@ -240,8 +318,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param books The books to set to
      * @param clientID The client ID to get the account
      */
-    public void setBorrowedSearch(Map<String, BookInfo> books, String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public void setBorrowedSearch(SearchResult books, String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return;
         }
@@ -253,8 +331,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param clientID The client ID to get the account
      * @return The book search
      */
-    public Map<String, BookInfo> getLibrarySearch(String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public SearchResult getLibrarySearch(String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return null;
         }
@@ -266,8 +344,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param clientID The client ID to get the account
      * @return The book search
      */
-    public Map<String, BookInfo> getStoreSearch(String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public SearchResult getStoreSearch(String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return null;
         }
@@ -279,8 +357,8 @@ public class AccountDB implements Serializable, RequestUtil {
      * @param clientID The client ID to get the account
      * @return The book search
      */
-    public Map<String, BookInfo> getBorrowedSearch(String clientID) {
-        Account account = activeAccounts.get(clientID);
+    public SearchResult getBorrowedSearch(String clientID) {
+        Account account = sessions.get(clientID);
         if (account == null) {
             return null;
         }
@@ -2,7 +2,11 @@ package Model.Client;
 
 import Model.Client.Account;
 
-public class Client {
+import java.io.Serializable;
+
+public class Client implements Serializable {
+
+    private static final long serialVersionUID = -7679390975326591924L;
 
     private String clientID;
 
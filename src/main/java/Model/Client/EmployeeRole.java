@@ -7,6 +7,9 @@ import Controller.Request.Request;
  * @author Hersh Nagpal
  */
 public class EmployeeRole implements Role {
+
+    private static final long serialVersionUID = 3868555403633359654L;
+
     @Override
     public String executeRequest(AccessibleRequest request) {
         return request.execute();
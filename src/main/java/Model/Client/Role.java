@@ -3,12 +3,14 @@ package Model.Client;
 import Controller.Request.RequestUtil;
 import Controller.Request.Request;
 
+import java.io.Serializable;
+
 /**
  * Implementation of the state pattern for the purpose of allowing different
  * behavior between visitor and employee requests.
  *
  * @author Michael Kha
  */
-public interface Role extends RequestUtil {
+public interface Role extends RequestUtil, Serializable {
     public String executeRequest(AccessibleRequest request);
 }
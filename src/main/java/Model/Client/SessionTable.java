@@ -0,0 +1,131 @@
+package Model.Client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The logged in accounts, keyed by the client they are logged in on. The
+ * client IDs are kept as strings, since they arrive as strings and hashing
+ * one is cheaper than parsing it into a boxed number. A request looks up its
+ * account once and uses it directly. Lookups, logins and logouts of
+ * different clients do not wait on each other. Every lookup marks the
+ * session with the number of times idle sessions were looked for, so
+ * sessions that were not used for a while can be found and logged out
+ * without reading a clock on every lookup.
+ */
+public class SessionTable {
+
+    /**
+     * Number of looks for idle sessions a session may go unused through
+     * before it is idle
+     */
+    private static final long IDLE_SWEEPS = 30;
+
+    /**
+     * The session of each client
+     */
+    private final Map<String, Session> sessions;
+    /**
+     * Number of times idle sessions were looked for
+     */
+    private volatile long sweeps;
+
+    /**
+     * Create an empty session table.
+     */
+    public SessionTable() {
+        sessions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the account logged in on a client and mark the session as used.
+     * @param clientID The client ID
+     * @return The account or null if no account is logged in on the client
+     */
+    public Account get(String clientID) {
+        Session session = sessions.get(clientID);
+        if (session == null) {
+            return null;
+        }
+        long sweep = sweeps;
+        if (session.lastUsed != sweep) {
+            session.lastUsed = sweep;
+        }
+        return session.account;
+    }
+
+    /**
+     * Log an account in on a client, replacing any account logged in on it.
+     * @param clientID The client ID
+     * @param account The account
+     */
+    public void put(String clientID, Account account) {
+        sessions.put(clientID, new Session(clientID, account, sweeps));
+    }
+
+    /**
+     * Log out the account logged in on a client.
+     * @param clientID The client ID
+     * @return If an account was logged in on the client
+     */
+    public boolean remove(String clientID) {
+        return sessions.remove(clientID) != null;
+    }
+
+    /**
+     * Get the number of logged in sessions.
+     * @return The number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Find the clients whose sessions were not used since idle sessions
+     * were looked for the last few times. Called by one thread at a steady
+     * interval, such as once a minute, so the number of looks measures time.
+     * @return The client IDs of the idle sessions
+     */
+    public List<String> findIdle() {
+        long sweep = ++sweeps;
+        List<String> idle = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            if (sweep - session.lastUsed > IDLE_SWEEPS) {
+                idle.add(session.clientID);
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * Copy the sessions into a map of client IDs to accounts, the form they
+     * are saved in.
+     * @return The logged in account of each client
+     */
+    public Map<String, Account> toMap() {
+        Map<String, Account> accounts = new HashMap<>();
+        for (Session session : sessions.values()) {
+            accounts.put(session.clientID, session.account);
+        }
+        return accounts;
+    }
+
+    /**
+     * An account logged in on a client.
+     */
+    private static class Session {
+
+        private final String clientID;
+        private final Account account;
+        private volatile long lastUsed;
+
+        private Session(String clientID, Account account, long lastUsed) {
+            this.clientID = clientID;
+            this.account = account;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
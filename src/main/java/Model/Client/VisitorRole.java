@@ -10,6 +10,8 @@ import Controller.Request.Request;
  */
 public class VisitorRole implements Role {
 
+    private static final long serialVersionUID = 7081126697625661522L;
+
     public String executeRequest(AccessibleRequest request) {
         if(request.isEmployeeOnly()) {
             return NOT_AUTHORIZED;
@@ -0,0 +1,250 @@
+package Model.Library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Running statistics of durations in milliseconds: their count, sum,
+ * minimum and maximum, and a histogram to estimate percentiles from. The
+ * histogram has 128 exact buckets for the shortest durations, then 64
+ * buckets for each power of two, so a percentile is within 1% of the
+ * duration it estimates. Adding a duration only increments counters, and
+ * the histogram never has more than a few thousand buckets, however many
+ * durations are added.
+ */
+public class DurationStats implements Serializable {
+
+    private static final long serialVersionUID = -599914671950385072L;
+
+    /**
+     * Bits of a duration that pick a bucket within a power of two
+     */
+    private static final int SUB_BITS = 7;
+    /**
+     * Durations below this have a bucket each
+     */
+    private static final int EXACT = 1 << SUB_BITS;
+    /**
+     * Buckets for each power of two above the exact buckets
+     */
+    private static final int HALF = EXACT >> 1;
+    /**
+     * Buckets needed for the longest duration
+     */
+    private static final int BUCKETS = EXACT + (63 - SUB_BITS) * HALF;
+
+    /**
+     * Number of durations added
+     */
+    private long count;
+    /**
+     * Sum of the durations added
+     */
+    private long sum;
+    /**
+     * Shortest and longest duration added, 0 if there are none
+     */
+    private long min;
+    private long max;
+    /**
+     * Number of durations in each bucket. Copies and read statistics only
+     * have the buckets up to the one of the longest duration.
+     */
+    private int[] buckets;
+
+    /**
+     * Create statistics without any durations.
+     */
+    public DurationStats() {
+        buckets = new int[BUCKETS];
+    }
+
+    /**
+     * Create statistics with the given totals and the buckets needed for
+     * the longest duration.
+     * @param count Number of durations
+     * @param sum Sum of the durations
+     * @param min Shortest duration
+     * @param max Longest duration
+     */
+    private DurationStats(long count, long sum, long min, long max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        buckets = new int[count == 0 ? 0 : bucket(Math.max(0, max)) + 1];
+    }
+
+    /**
+     * Add a duration. A negative duration counts as 0 in the histogram.
+     * @param millis The duration in milliseconds
+     */
+    public void add(long millis) {
+        min = count == 0 ? millis : Math.min(min, millis);
+        max = count == 0 ? millis : Math.max(max, millis);
+        count++;
+        sum += millis;
+        int bucket = bucket(Math.max(0, millis));
+        if (bucket >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, BUCKETS);
+        }
+        buckets[bucket]++;
+    }
+
+    /**
+     * Add every duration of other statistics.
+     * @param other The statistics to add
+     */
+    public void addAll(DurationStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        sum += other.sum;
+        if (other.buckets.length > buckets.length) {
+            buckets = Arrays.copyOf(buckets, other.buckets.length);
+        }
+        for (int i = 0; i < other.buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+    }
+
+    /**
+     * Remove every duration.
+     */
+    public void clear() {
+        count = sum = min = max = 0;
+        Arrays.fill(buckets, 0);
+    }
+
+    /**
+     * Copy the statistics, keeping only the buckets up to the last one that
+     * has any durations.
+     * @return The copy
+     */
+    public DurationStats copy() {
+        DurationStats copy = new DurationStats(count, sum, min, max);
+        System.arraycopy(buckets, 0, copy.buckets, 0, copy.buckets.length);
+        return copy;
+    }
+
+    /**
+     * Get the number of durations added.
+     * @return The count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the average duration.
+     * @return The average or 0 if there are no durations
+     */
+    public long getAverage() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Estimate the duration that the given fraction of durations are not
+     * longer than, from the middle of the bucket it is in.
+     * @param fraction The fraction, such as 0.5 for the median
+     * @return The duration or 0 if there are no durations
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long middle = i < EXACT ? i : lowest(i) + (width(i) >> 1);
+                return Math.min(max, Math.max(min, middle));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Find the bucket of a duration.
+     * @param millis The duration, not negative
+     * @return The index of its bucket
+     */
+    private static int bucket(long millis) {
+        if (millis < EXACT) {
+            return (int) millis;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(millis) - (SUB_BITS - 1);
+        return EXACT + (shift - 1) * HALF + (int) (millis >> shift) - HALF;
+    }
+
+    /**
+     * Get the shortest duration of a bucket above the exact buckets.
+     * @param bucket The index of the bucket
+     * @return The duration
+     */
+    private static long lowest(int bucket) {
+        int shift = (bucket - EXACT) / HALF + 1;
+        return (long) ((bucket - EXACT) % HALF + HALF) << shift;
+    }
+
+    /**
+     * Get the number of durations a bucket above the exact buckets holds.
+     * @param bucket The index of the bucket
+     * @return The width of the bucket
+     */
+    private static long width(int bucket) {
+        return 1L << ((bucket - EXACT) / HALF + 1);
+    }
+
+    /**
+     * Write the totals and the buckets that have any durations.
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        int used = 0;
+        for (int bucket : buckets) {
+            if (bucket != 0) {
+                used++;
+            }
+        }
+        out.writeInt(used);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != 0) {
+                out.writeShort(i);
+                out.writeInt(buckets[i]);
+            }
+        }
+    }
+
+    /**
+     * Read statistics written by write.
+     * @param in The input to read from
+     * @return The statistics
+     * @throws IOException If the input cannot be read
+     */
+    public static DurationStats read(DataInput in) throws IOException {
+        DurationStats stats = new DurationStats(in.readLong(), in.readLong(),
+                in.readLong(), in.readLong());
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            int bucket = in.readUnsignedShort();
+            if (bucket >= stats.buckets.length) {
+                throw new IOException("Duration bucket " + bucket + " is out of range");
+            }
+            stats.buckets[bucket] = in.readInt();
+        }
+        return stats;
+    }
+}
@@ -3,13 +3,13 @@ package Model.Library;
 import Controller.Request.RequestUtil;
 import Model.Book.BookDB;
 import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Checkout.CheckoutDB;
 import Model.Checkout.Transaction;
 import Model.Visitor.VisitorDB;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The state of the Library when it is open. Checkouts and visits are allowed.
@@ -32,7 +32,7 @@ class LibraryOpen implements LibraryState,RequestUtil {
      * @param checkoutDate the current date of checkout
      */
     @Override
-    public String checkoutBooks(Map<String, BookInfo> search, LocalDateTime checkoutDate,
+    public String checkoutBooks(SearchResult search, LocalDateTime checkoutDate,
                                 String visitorID, List<String> bookIds) {
         BookDB bookDB = BookDB.getInstance();
         CheckoutDB checkoutDB = CheckoutDB.getInstance();
@@ -64,8 +64,15 @@ class LibraryOpen implements LibraryState,RequestUtil {
             if(bookInfos == null){
                 return BORROW_REQUEST+DELIMITER+NOT_ENOUGH_COPIES+TERMINATOR;
             }
-            //Successful checkout
             List<Transaction> transactions = checkoutDB.checkout(checkoutDate, visitorID, bookInfos);
+            //Another borrow of the visitor reached the book limit first
+            if(transactions == null){
+                for (BookInfo bookInfo : bookInfos) {
+                    bookInfo.returnCopy();
+                }
+                return BORROW_REQUEST+DELIMITER+BOOK_LIMIT_EXCEDED+TERMINATOR;
+            }
+            //Successful checkout
             //All due dates for transactions made are the same
             String dueDate = transactions.get(0).getDueDate();
             return BORROW_REQUEST+DELIMITER+dueDate+TERMINATOR;
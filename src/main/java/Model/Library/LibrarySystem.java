@@ -1,7 +1,7 @@
 package Model.Library;
 import Controller.Request.RequestUtil;
 import Model.Book.BookDB;
-import Model.Book.BookInfo;
+import Model.Book.SearchResult;
 import Model.Checkout.CheckoutDB;
 import Model.Visitor.VisitorDB;
 
@@ -95,7 +95,7 @@ public class LibrarySystem implements Serializable, RequestUtil{
      * @param bookIds the books to be checked out
      * @return formatted string regarding the success of the command
      */
-    public String checkoutBooks(Map<String, BookInfo> search, String visitorID, List<String> bookIds) {
+    public String checkoutBooks(SearchResult search, String visitorID, List<String> bookIds) {
         return currentLibraryState.checkoutBooks(search, timeKeeper.getClock(),visitorID, bookIds);
     }
 
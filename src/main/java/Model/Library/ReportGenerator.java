@@ -97,15 +97,14 @@ public class ReportGenerator implements RequestUtil, Serializable {
 
         //System.out.println("Report Generated");
         int numRegisteredVisitors = visitorDB.getNumRegisteredVisitors();
-        long avgLengthVisitLong = visitorDB.getAverageLengthVisit();
-        String avgLengthVisit = TimeKeeper.calculateDurationString(avgLengthVisitLong);
+        DurationStats visitLengths = visitorDB.getVisitLengths();
         int numBooksInLibrary = bookDB.getLibraryBooksAmount();
         int numBooksPurchased = bookDB.getBooksPurchased();
         int collectedFines = checkoutDB.getCollectedFines();
         int uncollectedFines = checkoutDB.getUncollectedFines();
 
         StatisticsReport statisticsReport = new StatisticsReport(numBooksInLibrary,
-                numRegisteredVisitors, avgLengthVisitLong, avgLengthVisit, numBooksPurchased,
+                numRegisteredVisitors, visitLengths, numBooksPurchased,
                 collectedFines, uncollectedFines);
         statisticsReportList.add(statisticsReport);
 
@@ -117,4 +116,20 @@ public class ReportGenerator implements RequestUtil, Serializable {
         return statisticsReport;
     }
 
+    /**
+     * Get the daily reports generated so far.
+     * @return The daily reports
+     */
+    public List<StatisticsReport> getStatisticsReports() {
+        return statisticsReportList;
+    }
+
+    /**
+     * Set the daily reports generated so far. Used to continue from a saved
+     * state.
+     * @param statisticsReports The daily reports
+     */
+    public void setStatisticsReports(List<StatisticsReport> statisticsReports) {
+        statisticsReportList = statisticsReports;
+    }
 }
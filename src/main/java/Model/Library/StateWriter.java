@@ -0,0 +1,20 @@
+package Model.Library;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes part of the state of the system as it was when the writer was
+ * created. The writer only holds copies and values that no longer change,
+ * so it can write on another thread while the system keeps changing.
+ */
+@FunctionalInterface
+public interface StateWriter {
+
+    /**
+     * Write the captured state.
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    void write(DataOutput out) throws IOException;
+}
@@ -2,6 +2,9 @@ package Model.Library;
 
 import Controller.Request.RequestUtil;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.sql.Time;
 import java.util.List;
@@ -20,19 +23,43 @@ public class StatisticsReport implements Serializable, RequestUtil {
     private int numBooksPurchased;
     private int finesCollected;
     private int finesUncollected;
+    /**
+     * Statistics of the visit lengths, or null for a report saved before
+     * they were kept
+     */
+    private DurationStats visitLengths;
 
     /**
      * Constructor setting the report statistics
      * @param numBooksInLibrary
      * @param numRegisteredVisitors
-     * @param avgLengthVisit
+     * @param visitLengths
      * @param numBooksPurchased
      * @param finesCollected
      * @param finesUncollected
      */
     public StatisticsReport(int numBooksInLibrary, int numRegisteredVisitors,
-                            long avgLengthVisitLong, String avgLengthVisit, int numBooksPurchased,
+                            DurationStats visitLengths, int numBooksPurchased,
                             int finesCollected, int finesUncollected) {
+        this(numBooksInLibrary, numRegisteredVisitors, visitLengths.getAverage(),
+                TimeKeeper.calculateDurationString(visitLengths.getAverage()), numBooksPurchased,
+                finesCollected, finesUncollected, visitLengths);
+    }
+
+    /**
+     * Constructor setting every saved field of the report
+     * @param numBooksInLibrary
+     * @param numRegisteredVisitors
+     * @param avgLengthVisitLong
+     * @param avgLengthVisit
+     * @param numBooksPurchased
+     * @param finesCollected
+     * @param finesUncollected
+     * @param visitLengths
+     */
+    private StatisticsReport(int numBooksInLibrary, int numRegisteredVisitors,
+                             long avgLengthVisitLong, String avgLengthVisit, int numBooksPurchased,
+                             int finesCollected, int finesUncollected, DurationStats visitLengths) {
         this.numBooksInLibrary = numBooksInLibrary;
         this.numRegisteredVisitors = numRegisteredVisitors;
         this.avgLengthVisit = avgLengthVisit;
@@ -40,6 +67,7 @@ public class StatisticsReport implements Serializable, RequestUtil {
         this.numBooksPurchased = numBooksPurchased;
         this.finesCollected = finesCollected;
         this.finesUncollected = finesUncollected;
+        this.visitLengths = visitLengths;
     }
 
     /**
@@ -55,7 +83,11 @@ public class StatisticsReport implements Serializable, RequestUtil {
         finesUncollected = statisticsReportList.get(0).finesUncollected;
 
         long avgLengthVisits = 0;
+        visitLengths = new DurationStats();
         for (StatisticsReport statisticsReport : statisticsReportList) {
+            if (statisticsReport.visitLengths != null) {
+                visitLengths.addAll(statisticsReport.visitLengths);
+            }
             avgLengthVisits += statisticsReport.avgLengthVisitLong;
             numBooksPurchased += statisticsReport.numBooksPurchased;
             finesCollected += statisticsReport.finesCollected;
@@ -64,6 +96,48 @@ public class StatisticsReport implements Serializable, RequestUtil {
         avgLengthVisit = TimeKeeper.calculateDurationString(avgLengthVisits);
     }
 
+    /**
+     * Write the report, with the statistics of the visit lengths if it
+     * has them.
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(numBooksInLibrary);
+        out.writeInt(numRegisteredVisitors);
+        out.writeLong(avgLengthVisitLong);
+        out.writeUTF(avgLengthVisit);
+        out.writeInt(numBooksPurchased);
+        out.writeInt(finesCollected);
+        out.writeInt(finesUncollected);
+        out.writeBoolean(visitLengths != null);
+        if (visitLengths != null) {
+            visitLengths.write(out);
+        }
+    }
+
+    /**
+     * Read a report written by write.
+     * @param in The input to read from
+     * @return The report
+     * @throws IOException If the input cannot be read
+     */
+    public static StatisticsReport read(DataInput in) throws IOException {
+        return new StatisticsReport(in.readInt(), in.readInt(), in.readLong(),
+                in.readUTF(), in.readInt(), in.readInt(), in.readInt(),
+                in.readBoolean() ? DurationStats.read(in) : null);
+    }
+
+    /**
+     * Estimate a percentile of the visit lengths.
+     * @param fraction The fraction of visits that are not longer
+     * @return The length as hours:minutes:seconds, 0 if there are no statistics
+     */
+    private String percentile(double fraction) {
+        return TimeKeeper.calculateDurationString(
+                visitLengths == null ? 0 : visitLengths.getPercentile(fraction));
+    }
+
     /**
      * String representation of the statistics report to be used as a response.
      * @return The string form of the report
@@ -73,6 +147,8 @@ public class StatisticsReport implements Serializable, RequestUtil {
         return "Number of Books: " + numBooksInLibrary + NEW_LINE +
                 "Number of Visitors: " + numRegisteredVisitors + NEW_LINE +
                 "Average Length of Visit: " + avgLengthVisit + NEW_LINE +
+                "Median Length of Visit: " + percentile(0.5) + NEW_LINE +
+                "95th Percentile Length of Visit: " + percentile(0.95) + NEW_LINE +
                 "Number of Books Purchased: " + numBooksPurchased + NEW_LINE +
                 "Fines Collected: " + finesCollected + NEW_LINE +
                 "Fines Outstanding: " + finesUncollected + NEW_LINE + TERMINATOR;
@@ -2,11 +2,16 @@ package Model.Library;
 
 import Controller.Request.RequestUtil;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,6 +49,12 @@ public class TimeKeeper implements RequestUtil, Serializable {
      */
     private LibrarySystem librarySystemObserver;
 
+    /**
+     * Executor that owns all changes to the model. Time updates are posted
+     * to it instead of running on the timer thread.
+     */
+    private transient Executor executor;
+
     /**
      * The delay in milliseconds before the task is performed the first time
      */
@@ -65,7 +76,12 @@ public class TimeKeeper implements RequestUtil, Serializable {
         timerTask = new TimerTask() {
             @Override
             public void run() {
-                updateTime();
+                if (executor == null) {
+                    updateTime();
+                }
+                else {
+                    executor.execute(TimeKeeper.this::updateTime);
+                }
             }
         };
         timer.scheduleAtFixedRate(timerTask, TIMER_DELAY,TIMER_INTERVAL);
@@ -79,6 +95,14 @@ public class TimeKeeper implements RequestUtil, Serializable {
         librarySystemObserver = librarySystem;
     }
 
+    /**
+     * Sets the executor that time updates are posted to.
+     * @param executor executor that owns changes to the model
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     /**
      * Adds the TimerInterval in seconds to the clock. 
      * Used by the TimerTask to keep track of time.
@@ -140,6 +164,23 @@ public class TimeKeeper implements RequestUtil, Serializable {
                 clock.getDayOfMonth(), clock.getHour(), clock.getMinute(), clock.getSecond());
     }
 
+    /**
+     * Returns the clock including the fraction of a second.
+     * @return the clock
+     */
+    public LocalDateTime getPreciseClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock to the given date and time. Used to replay requests at
+     * the time they were first performed.
+     * @param clock the new clock
+     */
+    public void setClock(LocalDateTime clock) {
+        this.clock = clock;
+    }
+
     /**
      * Returns the current time as a formatted String.
      * @return the current time.
@@ -270,4 +311,28 @@ public class TimeKeeper implements RequestUtil, Serializable {
                         TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(millis)));
     }
 
+    /**
+     * Helper method for the snapshot to write a date and time as seconds and
+     * nanoseconds since the epoch.
+     * @param out The output to write to
+     * @param time The date and time to write
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    /**
+     * Helper method for the snapshot to read a date and time written by
+     * writeTime.
+     * @param in The input to read from
+     * @return The date and time
+     * @throws IOException If the input cannot be read
+     */
+    public static LocalDateTime readTime(DataInput in) throws IOException {
+        long seconds = in.readLong();
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
 }
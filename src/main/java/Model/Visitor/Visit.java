@@ -10,6 +10,8 @@ import java.time.LocalDateTime;
  */
 public class Visit implements Serializable {
 
+    private static final long serialVersionUID = 7025053438296255443L;
+
     /**
      * Time that the visit started
      */
@@ -43,4 +45,12 @@ public class Visit implements Serializable {
     public LocalDateTime getStart() {
         return start;
     }
+
+    /**
+     * Get the end time.
+     * @return The end time or null if the visit has not ended
+     */
+    public LocalDateTime getEnd() {
+        return end;
+    }
 }
@@ -1,8 +1,12 @@
 package Model.Visitor;
 
 import Controller.Request.RequestUtil;
+import Model.Library.DurationStats;
+import Model.Library.StateWriter;
 import Model.Library.TimeKeeper;
 
+import java.io.DataInput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -25,15 +29,22 @@ public class VisitorDB implements RequestUtil, Serializable{
      */
     private Map<String, VisitorInfo> registeredVisitors;
 
+    /**
+     * The ID of each registered visitor, found by the identity of the
+     * visitor so a duplicate is found without looking at every visitor
+     */
+    private transient Map<VisitorInfo, String> visitorIDs;
+
     /**
      * All current visitors in the library. (VisitorID, VisitorInfo)
      */
     private Map<String, VisitorInfo> currentVisitors;
 
     /**
-     * List of visit lengths to calculate average visit length for StatisticReports
+     * Lengths of the visits ended since the last daily report, for the
+     * StatisticReports
      */
-    private List<Long> visitLengths;
+    private DurationStats visitLengthStats;
 
     /**
      * Used for providing visitors with unique IDs
@@ -45,13 +56,20 @@ public class VisitorDB implements RequestUtil, Serializable{
      */
     private final int INITIAL_VISITOR_ID = 1000000000;
 
+    /**
+     * Writes the visits saved in the snapshot the database was read from,
+     * or null if the database was not read from a snapshot
+     */
+    private transient StateWriter earlierVisits;
+
     /**
      * Create a new visitor database that is empty.
      */
     private VisitorDB() {
         registeredVisitors = new HashMap<>();
+        visitorIDs = new HashMap<>();
         currentVisitors = new HashMap<>();
-        visitLengths = new ArrayList<>();
+        visitLengthStats = new DurationStats();
         nextVisitorID = INITIAL_VISITOR_ID;
     }
 
@@ -62,6 +80,111 @@ public class VisitorDB implements RequestUtil, Serializable{
         return instance;
     }
 
+    /**
+     * Capture the visitors, the current visits and the statistics of the
+     * visit lengths of the day, to be written while the database keeps
+     * changing. The names, addresses and phone numbers of a visitor never
+     * change, so only the start of its current visit is copied. The visits
+     * made before are captured separately by captureVisits.
+     * @return The writer of the captured visitors
+     */
+    public StateWriter capture() {
+        int nextID = nextVisitorID;
+        int count = registeredVisitors.size();
+        String[] visitorIDs = new String[count];
+        VisitorInfo[] visitors = new VisitorInfo[count];
+        LocalDateTime[] starts = new LocalDateTime[count];
+        int i = 0;
+        for (Map.Entry<String, VisitorInfo> entry : registeredVisitors.entrySet()) {
+            visitorIDs[i] = entry.getKey();
+            visitors[i] = entry.getValue();
+            starts[i++] = entry.getValue().getCurrentStart();
+        }
+        String[] current = currentVisitors.keySet().toArray(new String[0]);
+        DurationStats stats = visitLengthStats.copy();
+        return out -> {
+            out.writeInt(nextID);
+            out.writeInt(count);
+            for (int j = 0; j < count; j++) {
+                out.writeUTF(visitorIDs[j]);
+                visitors[j].write(out, starts[j]);
+            }
+            out.writeInt(current.length);
+            for (String visitorID : current) {
+                out.writeUTF(visitorID);
+            }
+            stats.write(out);
+        };
+    }
+
+    /**
+     * Capture the visits the visitors made before their current visits, to
+     * be written while the database keeps changing. An ended visit never
+     * changes and visitors only add visits, so the visits of every visitor
+     * are kept in one list instead of copying the list of each visitor.
+     * The visits are written in blocks of a count of visitors and their
+     * visits: the blocks of the snapshot the database was read from, which
+     * are copied without being read, then a block of the visits made since.
+     * A visitor may have visits in several blocks, oldest first.
+     * @return The writer of the captured visits
+     */
+    public StateWriter captureVisits() {
+        List<String> visitorIDs = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<Visit> visits = new ArrayList<>();
+        for (Map.Entry<String, VisitorInfo> entry : registeredVisitors.entrySet()) {
+            if (entry.getValue().hasVisits()) {
+                visitorIDs.add(entry.getKey());
+                counts.add(entry.getValue().copyVisits(visits));
+            }
+        }
+        StateWriter earlier = earlierVisits;
+        return out -> {
+            if (earlier != null) {
+                earlier.write(out);
+            }
+            out.writeInt(visitorIDs.size());
+            int next = 0;
+            for (int i = 0; i < visitorIDs.size(); i++) {
+                out.writeUTF(visitorIDs.get(i));
+                VisitorInfo.writeVisits(out, visits.subList(next, next + counts.get(i)));
+                next += counts.get(i);
+            }
+        };
+    }
+
+    /**
+     * Read a visitor database written by capture and make it the instance.
+     * The visits written by captureVisits are never searched, so they are
+     * not read, only written again with the next visits captured.
+     * @param in The input to read from
+     * @param visits Writes the saved visits again
+     * @return The visitor database
+     * @throws IOException If the input cannot be read
+     */
+    public static VisitorDB read(DataInput in, StateWriter visits) throws IOException {
+        VisitorDB visitorDB = new VisitorDB();
+        visitorDB.nextVisitorID = in.readInt();
+        int count = in.readInt();
+        visitorDB.registeredVisitors = new HashMap<>(count * 4 / 3 + 1);
+        visitorDB.visitorIDs = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String visitorID = in.readUTF();
+            VisitorInfo visitor = VisitorInfo.read(in);
+            visitorDB.registeredVisitors.put(visitorID, visitor);
+            visitorDB.visitorIDs.putIfAbsent(visitor, visitorID);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String visitorID = in.readUTF();
+            visitorDB.currentVisitors.put(visitorID, visitorDB.registeredVisitors.get(visitorID));
+        }
+        visitorDB.visitLengthStats = DurationStats.read(in);
+        visitorDB.earlierVisits = visits;
+        instance = visitorDB;
+        return visitorDB;
+    }
+
     /**
      * Register the visitor given properly formatted info.
      * The new visitor is added into the map of visitors.
@@ -71,24 +194,55 @@ public class VisitorDB implements RequestUtil, Serializable{
         //Create new visitorInfo object using params
         VisitorInfo newVisitorInfo = new VisitorInfo(firstName,lastName, address, phoneNumber);
 
-        //check for duplicate visitorInfo
-        for (String currentKey : registeredVisitors.keySet()) {
-            //Duplicate visitorInfo found
-            if (registeredVisitors.get(currentKey).equals(newVisitorInfo)) {
-                return REGISTER_REQUEST + DELIMITER + DUPLICATE + TERMINATOR;
-            }
+        String newVisitorIDString = register(newVisitorInfo);
+        //Duplicate visitorInfo found
+        if (newVisitorIDString == null) {
+            return REGISTER_REQUEST + DELIMITER + DUPLICATE + TERMINATOR;
         }
-        //No duplicate was found. Register new visitor.
-        //int newVisitorID = generateVisitorID();
-        int newVisitorID = nextVisitorID;
-        nextVisitorID++;
-        String newVisitorIDString = Integer.toString(newVisitorID);
-        registeredVisitors.put(newVisitorIDString, newVisitorInfo);
-
         return REGISTER_REQUEST+DELIMITER+newVisitorIDString
                 +DELIMITER+registeredDate+TERMINATOR;
     }
 
+    /**
+     * Register many visitors at once. Each visitor is registered the way
+     * registerVisitor registers it, in the order of the list.
+     * @param visitors The visitors to register
+     * @return The ID given to each visitor in the order of the list, or null
+     *         for a visitor that is already registered or is earlier in the list
+     */
+    public String[] registerVisitors(List<VisitorInfo> visitors) {
+        String[] visitorIDs = new String[visitors.size()];
+        for (int i = 0; i < visitorIDs.length; i++) {
+            visitorIDs[i] = register(visitors.get(i));
+        }
+        return visitorIDs;
+    }
+
+    /**
+     * Find the ID of the registered visitor a visitor is a duplicate of.
+     * @param visitor The visitor to look for
+     * @return The ID of the registered visitor or null if there is none
+     */
+    public String getVisitorID(VisitorInfo visitor) {
+        return visitorIDs.get(visitor);
+    }
+
+    /**
+     * Give a visitor the next ID if it is not a duplicate of a registered
+     * visitor.
+     * @param visitor The visitor to register
+     * @return The ID of the visitor or null if it is a duplicate
+     */
+    private String register(VisitorInfo visitor) {
+        String visitorID = Integer.toString(nextVisitorID);
+        if (visitorIDs.putIfAbsent(visitor, visitorID) != null) {
+            return null;
+        }
+        nextVisitorID++;
+        registeredVisitors.put(visitorID, visitor);
+        return visitorID;
+    }
+
     /**
      * Start a visit given the visitor id.
      * @param visitorID The visitor id to log a visit with
@@ -134,7 +288,7 @@ public class VisitorDB implements RequestUtil, Serializable{
         LocalDateTime start = visitor.getVisitStart();
 
         //Record visit duration for ReportGenerator
-        visitLengths.add(TimeKeeper.calculateDurationMillis(start, endVisitDateTime));
+        visitLengthStats.add(TimeKeeper.calculateDurationMillis(start, endVisitDateTime));
 
         //Response = "depart,visitorID,visitEndTime,visitDuration"
         String visitDuration = TimeKeeper.calculateDuration(start, endVisitDateTime);
@@ -155,17 +309,17 @@ public class VisitorDB implements RequestUtil, Serializable{
             visitor = currentVisitors.get(visitorID);
             start = visitor.getVisitStart();
             visitor.endVisit(end);
-            visitLengths.add(TimeKeeper.calculateDurationMillis(start, end));
+            visitLengthStats.add(TimeKeeper.calculateDurationMillis(start, end));
         }
         // Clear outside of iterator
         currentVisitors.clear();
     }
 
     /**
-     * Clear visitLengths. Called when library closes.
+     * Clear the visit length statistics. Called when library closes.
      */
     public void clearVisitLengths() {
-        visitLengths.clear();
+        visitLengthStats.clear();
     }
 
     /**
@@ -193,17 +347,16 @@ public class VisitorDB implements RequestUtil, Serializable{
      * @return average length of visit
      */
     public long getAverageLengthVisit(){
-        if (visitLengths.isEmpty()) {
-            return 0;
-            //return TimeKeeper.calculateDurationString(0);
-        }
-        long averageLengthVisit = 0;
-        for (Long visitLength : visitLengths) {
-            averageLengthVisit += visitLength;
-        }
-        averageLengthVisit = averageLengthVisit/(visitLengths.size());
-        return averageLengthVisit;
-        //return TimeKeeper.calculateDurationString(averageLengthVisit);
+        return visitLengthStats.getAverage();
+    }
+
+    /**
+     * Helper method for ReportGenerator to get the statistics of the visit
+     * lengths since they were last cleared
+     * @return copy of the visit length statistics
+     */
+    public DurationStats getVisitLengths() {
+        return visitLengthStats.copy();
     }
 
     /**
@@ -0,0 +1,387 @@
+package Model.Visitor;
+
+import Controller.Request.RequestUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Registers the visitors of a CSV file without sending a register request
+ * for each of them. Each line has the form
+ * firstName,lastName,address,phoneNumber
+ * where a field may be enclosed in double quotes to hold commas, with a
+ * doubled quote standing for a quote. An optional header line that starts
+ * with firstName is skipped. The file is mapped into memory a few chunks at
+ * a time, and the chunks are parsed in parallel on the common fork-join
+ * pool, which also hashes the identity of every visitor. The visitors of
+ * each chunk are then registered together in the order of the file, which
+ * only looks each of them up once to find duplicates, so they get the same
+ * IDs they would get if they were registered one at a time.
+ * <p>
+ * The report written while importing has one line for each run of lines
+ * that were given consecutive IDs, each duplicate and each malformed line:
+ * registered,firstLine,lastLine,firstVisitorID
+ * duplicate,line,visitorID
+ * malformed,line
+ * where lines are numbered from 1 and visitorID is the ID of the visitor
+ * the line duplicates.
+ */
+public class VisitorImporter implements RequestUtil {
+
+    /**
+     * Bytes of the file parsed by one task
+     */
+    private static final int CHUNK_BYTES = 4 << 20;
+    /**
+     * Bytes read at a time when looking for the end of a line
+     */
+    private static final int SCAN_BYTES = 256;
+    /**
+     * Chunks mapped and parsed ahead of the chunk being registered
+     */
+    private static final int WINDOW = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * Fields of a line
+     */
+    private static final int FIELDS = 4;
+    /**
+     * First field of a header line
+     */
+    private static final String HEADER = "firstName";
+    /**
+     * Row of a line that is malformed
+     */
+    private static final int MALFORMED = -1;
+    /**
+     * Row of a line that is empty or the header
+     */
+    private static final int SKIPPED = -2;
+
+    /**
+     * The database the visitors are registered in
+     */
+    private VisitorDB visitorDB;
+
+    /**
+     * Create an importer that registers visitors in a database.
+     * @param visitorDB The visitor database
+     */
+    public VisitorImporter(VisitorDB visitorDB) {
+        this.visitorDB = visitorDB;
+    }
+
+    /**
+     * Register every visitor of a file that is not registered yet. The
+     * database must not be changed by anything else until the import ends.
+     * @param file The CSV file of visitors
+     * @param report The output the report is written to
+     * @return Summary of the import
+     * @throws IOException If the file cannot be read or the report cannot
+     *                     be written
+     */
+    public String load(File file, Writer report) throws IOException {
+        Report result = new Report(report);
+        ArrayDeque<CompletableFuture<Chunk>> tasks = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            int line = 1;
+            while (start < size || !tasks.isEmpty()) {
+                while (start < size && tasks.size() < WINDOW) {
+                    long end = lineEnd(channel, Math.min(start + CHUNK_BYTES, size));
+                    // The mapping stays valid once the channel is closed
+                    ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    boolean first = start == 0;
+                    tasks.add(end == size && first
+                            ? CompletableFuture.completedFuture(parse(region, true))
+                            : CompletableFuture.supplyAsync(() -> parse(region, first)));
+                    start = end;
+                }
+                Chunk chunk = tasks.remove().join();
+                register(chunk, line, result);
+                line += chunk.lines;
+            }
+        }
+        return result.finish(file);
+    }
+
+    /**
+     * Register the new visitors of a chunk and report each of its lines.
+     * @param chunk The parsed chunk
+     * @param firstLine Number of the first line of the chunk
+     * @param report The report of the import
+     * @throws IOException If the report cannot be written
+     */
+    private void register(Chunk chunk, int firstLine, Report report) throws IOException {
+        String[] visitorIDs = visitorDB.registerVisitors(chunk.visitors);
+        for (int i = 0; i < chunk.lines; i++) {
+            int row = chunk.rows[i];
+            if (row == SKIPPED) {
+                report.skipped();
+            }
+            else if (row == MALFORMED) {
+                report.malformed(firstLine + i);
+            }
+            else if (visitorIDs[row] != null) {
+                report.registered(firstLine + i, visitorIDs[row]);
+            }
+            else {
+                report.duplicate(firstLine + i, visitorDB.getVisitorID(chunk.visitors.get(row)));
+            }
+        }
+    }
+
+    /**
+     * Find the position after the end of the line that contains the given
+     * position.
+     * @param channel The file
+     * @param position A position in the file
+     * @return The position after the next line break, or the end of the file
+     * @throws IOException If the file cannot be read
+     */
+    private static long lineEnd(FileChannel channel, long position) throws IOException {
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BYTES);
+        long size = channel.size();
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parse every line of a chunk. The identity of each visitor is hashed
+     * here, so registering it only has to look it up to find out if it is a
+     * duplicate.
+     * @param region The chunk, ending at a line break or the end of the file
+     * @param first If the chunk is the start of the file
+     * @return The visitors and rows of the chunk
+     */
+    private static Chunk parse(ByteBuffer region, boolean first) {
+        byte[] data = new byte[region.remaining()];
+        region.get(data);
+        Chunk chunk = new Chunk();
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && data[end - 1] == '\r') {
+                end--;
+            }
+            VisitorInfo visitor = parseLine(data, start, end);
+            if (visitor == null) {
+                chunk.add(skipBlanks(data, start, end) == end ? SKIPPED : MALFORMED);
+            }
+            else if (first && chunk.lines == 0 && visitor.getFirstName().equalsIgnoreCase(HEADER)) {
+                chunk.add(SKIPPED);
+            }
+            else {
+                visitor.hashCode();
+                chunk.add(chunk.visitors.size());
+                chunk.visitors.add(visitor);
+            }
+            start = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parse one line of the file.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte of the line
+     * @param end Position after the last byte of the line
+     * @return The visitor or null if the line is malformed or blank
+     */
+    private static VisitorInfo parseLine(byte[] data, int start, int end) {
+        String[] fields = new String[FIELDS];
+        int i = start;
+        for (int field = 0; field < FIELDS; field++) {
+            i = skipBlanks(data, i, end);
+            int fieldEnd;
+            if (i < end && data[i] == '"') {
+                int close = closingQuote(data, i + 1, end);
+                if (close < 0) {
+                    return null;
+                }
+                fields[field] = string(data, i + 1, close).replace("\"\"", "\"");
+                fieldEnd = skipBlanks(data, close + 1, end);
+            }
+            else {
+                fieldEnd = i;
+                while (fieldEnd < end && data[fieldEnd] != ',') {
+                    fieldEnd++;
+                }
+                int valueEnd = fieldEnd;
+                while (valueEnd > i && isBlank(data[valueEnd - 1])) {
+                    valueEnd--;
+                }
+                fields[field] = string(data, i, valueEnd);
+            }
+            boolean last = field == FIELDS - 1;
+            if (fields[field].isEmpty() || (last ? fieldEnd != end : fieldEnd == end || data[fieldEnd] != ',')) {
+                return null;
+            }
+            i = fieldEnd + 1;
+        }
+        return new VisitorInfo(fields[0], fields[1], fields[2], fields[3]);
+    }
+
+    /**
+     * Find the quote that closes a quoted field. A doubled quote is part of
+     * the field.
+     * @param data The bytes of the chunk
+     * @param start Position after the opening quote
+     * @param end Position after the line
+     * @return Position of the closing quote or -1 if the field is not closed
+     */
+    private static int closingQuote(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == '"') {
+                if (i + 1 < end && data[i + 1] == '"') {
+                    i++;
+                }
+                else {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip the spaces and tabs at a position.
+     * @param data The bytes of the chunk
+     * @param start Position to start at
+     * @param end Position after the line
+     * @return Position of the first byte that is not blank, or the end
+     */
+    private static int skipBlanks(byte[] data, int start, int end) {
+        while (start < end && isBlank(data[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Check if a byte is a space or a tab.
+     * @param b The byte
+     * @return If it is blank
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Decode part of the chunk as UTF-8.
+     * @param data The bytes of the chunk
+     * @param start Position of the first byte
+     * @param end Position after the last byte
+     * @return The string
+     */
+    private static String string(byte[] data, int start, int end) {
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The visitors of one chunk and the row of each line: the index of its
+     * visitor, MALFORMED or SKIPPED.
+     */
+    private static class Chunk {
+
+        private List<VisitorInfo> visitors = new ArrayList<>();
+        private int[] rows = new int[1024];
+        private int lines;
+
+        private void add(int row) {
+            if (lines == rows.length) {
+                rows = Arrays.copyOf(rows, lines * 2);
+            }
+            rows[lines++] = row;
+        }
+    }
+
+    /**
+     * Writes the report of an import, joining lines that were given
+     * consecutive IDs into one run.
+     */
+    private static class Report {
+
+        private Writer out;
+        private int lines;
+        private int registered;
+        private int duplicates;
+        private int malformed;
+        private int runStart;
+        private int runEnd;
+        private long runID;
+
+        private Report(Writer out) {
+            this.out = out;
+        }
+
+        private void registered(int line, String visitorID) throws IOException {
+            lines++;
+            registered++;
+            long id = Long.parseLong(visitorID);
+            if (runEnd > 0 && line == runEnd + 1 && id == runID + (line - runStart)) {
+                runEnd = line;
+                return;
+            }
+            endRun();
+            runStart = runEnd = line;
+            runID = id;
+        }
+
+        private void duplicate(int line, String visitorID) throws IOException {
+            endRun();
+            lines++;
+            duplicates++;
+            out.write(DUPLICATE + DELIMITER + line + DELIMITER + visitorID + '\n');
+        }
+
+        private void malformed(int line) throws IOException {
+            endRun();
+            lines++;
+            malformed++;
+            out.write("malformed" + DELIMITER + line + '\n');
+        }
+
+        private void skipped() throws IOException {
+            endRun();
+        }
+
+        private void endRun() throws IOException {
+            if (runEnd > 0) {
+                out.write("registered" + DELIMITER + runStart + DELIMITER + runEnd +
+                        DELIMITER + runID + '\n');
+                runEnd = 0;
+            }
+        }
+
+        private String finish(File file) throws IOException {
+            endRun();
+            out.flush();
+            return "Imported " + lines + " lines of " + file + ": " + registered +
+                    " registered, " + duplicates + " duplicates, " + malformed + " malformed";
+        }
+    }
+}
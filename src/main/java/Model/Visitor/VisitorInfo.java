@@ -1,5 +1,10 @@
 package Model.Visitor;
 
+import Model.Library.TimeKeeper;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -36,6 +41,10 @@ public class VisitorInfo implements Serializable {
      * Current visit tracked by the start
      */
     private Visit current;
+    /**
+     * Hash of the identity of the visitor, or 0 if it was not computed yet
+     */
+    private transient int hash;
 
     /**
      * Set visitor info.
@@ -66,6 +75,83 @@ public class VisitorInfo implements Serializable {
         current = null;
     }
 
+    /**
+     * Get the start of the current visit.
+     * @return The start or null if the visitor is not visiting
+     */
+    LocalDateTime getCurrentStart() {
+        return current == null ? null : current.getStart();
+    }
+
+    /**
+     * Write the visitor and the start of its current visit, without the
+     * visits it made before. The start is given since it may have changed
+     * since it was captured.
+     * @param out The output to write to
+     * @param start The start of the current visit or null
+     * @throws IOException If the output cannot be written
+     */
+    void write(DataOutput out, LocalDateTime start) throws IOException {
+        out.writeUTF(firstName);
+        out.writeUTF(lastName);
+        out.writeUTF(address);
+        out.writeUTF(phoneNumber);
+        out.writeBoolean(start != null);
+        if (start != null) {
+            TimeKeeper.writeTime(out, start);
+        }
+    }
+
+    /**
+     * Read a visitor written by write.
+     * @param in The input to read from
+     * @return The visitor with no visits made before
+     * @throws IOException If the input cannot be read
+     */
+    static VisitorInfo read(DataInput in) throws IOException {
+        VisitorInfo visitor = new VisitorInfo(in.readUTF(), in.readUTF(),
+                in.readUTF(), in.readUTF());
+        if (in.readBoolean()) {
+            visitor.startVisit(TimeKeeper.readTime(in));
+        }
+        return visitor;
+    }
+
+    /**
+     * Check if the visitor has made any visits before the current one.
+     * @return If there are ended visits
+     */
+    boolean hasVisits() {
+        return !visits.isEmpty();
+    }
+
+    /**
+     * Add the visits the visitor made before the current one to a list.
+     * An ended visit never changes, so the visits themselves are added.
+     * @param to The list to add to
+     * @return Number of visits added
+     */
+    int copyVisits(List<Visit> to) {
+        for (int i = 0; i < visits.size(); i++) {
+            to.add(visits.get(i));
+        }
+        return visits.size();
+    }
+
+    /**
+     * Write visits of a visitor.
+     * @param out The output to write to
+     * @param visits The visits in the order they were made
+     * @throws IOException If the output cannot be written
+     */
+    static void writeVisits(DataOutput out, List<Visit> visits) throws IOException {
+        out.writeInt(visits.size());
+        for (Visit visit : visits) {
+            TimeKeeper.writeTime(out, visit.getStart());
+            TimeKeeper.writeTime(out, visit.getEnd());
+        }
+    }
+
     /**
      * Get the start of the visit
      * @return The time and date of the start of the visit
@@ -117,7 +203,9 @@ public class VisitorInfo implements Serializable {
 
 
     /**
-     * Used to check for duplicate visitors in library.
+     * Used to check for duplicate visitors in library. Visitors are the same
+     * if their names and addresses only differ in case and surrounding
+     * whitespace and their phone numbers have the same digits.
      * @param o Visitor being compared to this
      * @return true if visitor "o" is equal to this
      */
@@ -132,9 +220,136 @@ public class VisitorInfo implements Serializable {
         }
 
         VisitorInfo v = (VisitorInfo) o;
-        return v.getFirstName().equals(firstName) &&
-                v.getLastName().equals(lastName) &&
-                v.getAddress().equals(address) &&
-                v.getPhoneNumber().equals(phoneNumber);
+        return hashCode() == v.hashCode() &&
+                sameFolded(v.getFirstName(), firstName) &&
+                sameFolded(v.getLastName(), lastName) &&
+                sameFolded(v.getAddress(), address) &&
+                sameDigits(v.getPhoneNumber(), phoneNumber);
+    }
+
+    /**
+     * Hash the identity of the visitor the same way equals compares it, so
+     * duplicate visitors can be found in a hash table.
+     * @return The hash of the visitor
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = hashFolded(firstName);
+            h = 31 * h + hashFolded(lastName);
+            h = 31 * h + hashFolded(address);
+            h = 31 * h + hashDigits(phoneNumber);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Find the first character that is not whitespace, the way trim does.
+     * @param s The string
+     * @return Position of the first character
+     */
+    private static int trimStart(String s) {
+        int start = 0;
+        while (start < s.length() && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Find the end of the last character that is not whitespace, the way
+     * trim does.
+     * @param s The string
+     * @param start Position of the first character
+     * @return Position after the last character
+     */
+    private static int trimEnd(String s, int start) {
+        int end = s.length();
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Check if two strings are equal ignoring case and surrounding
+     * whitespace, without copying them.
+     * @param a A string
+     * @param b Another string
+     * @return If they are the same
+     */
+    private static boolean sameFolded(String a, String b) {
+        int aStart = trimStart(a);
+        int aLength = trimEnd(a, aStart) - aStart;
+        int bStart = trimStart(b);
+        int bLength = trimEnd(b, bStart) - bStart;
+        return aLength == bLength && a.regionMatches(true, aStart, b, bStart, aLength);
+    }
+
+    /**
+     * Hash a string ignoring case and surrounding whitespace, consistent
+     * with sameFolded.
+     * @param s The string
+     * @return The hash
+     */
+    private static int hashFolded(String s) {
+        int start = trimStart(s);
+        int end = trimEnd(s, start);
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+        return h;
+    }
+
+    /**
+     * Check if two strings have the same digits in the same order.
+     * @param a A string
+     * @param b Another string
+     * @return If they have the same digits
+     */
+    private static boolean sameDigits(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < a.length() && !isDigit(a.charAt(i))) {
+                i++;
+            }
+            while (j < b.length() && !isDigit(b.charAt(j))) {
+                j++;
+            }
+            if (i == a.length() || j == b.length()) {
+                return i == a.length() && j == b.length();
+            }
+            if (a.charAt(i++) != b.charAt(j++)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Hash the digits of a string, consistent with sameDigits.
+     * @param s The string
+     * @return The hash
+     */
+    private static int hashDigits(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (isDigit(s.charAt(i))) {
+                h = 31 * h + s.charAt(i);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Check if a character is one of the digits 0 to 9.
+     * @param c The character
+     * @return If it is a digit
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 }
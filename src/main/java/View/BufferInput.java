@@ -0,0 +1,276 @@
+package View;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Input that reads a section of a snapshot from a buffer, usually a mapped
+ * part of the file. The checksum of the section is only checked when the
+ * section is first read, so sections that are never read are never loaded
+ * from disk.
+ */
+class BufferInput extends InputStream implements DataInput {
+
+    /**
+     * Bytes copied at a time by copyTo
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The section, positioned at the next byte to read
+     */
+    private ByteBuffer buffer;
+    /**
+     * The checksum the section must have
+     */
+    private int checksum;
+    /**
+     * If the checksum was checked
+     */
+    private boolean verified;
+
+    /**
+     * Create an input that reads the given section.
+     * @param buffer The section
+     * @param checksum The CRC32 of the section
+     */
+    BufferInput(ByteBuffer buffer, int checksum) {
+        this.buffer = buffer;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Get the buffer once the given number of bytes can be read from it.
+     * The checksum is checked on the first read.
+     * @param bytes Number of bytes that will be read
+     * @return The buffer
+     * @throws IOException If the section is damaged or too short
+     */
+    private ByteBuffer take(int bytes) throws IOException {
+        if (!verified) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Snapshot section is damaged");
+            }
+            verified = true;
+        }
+        if (buffer.remaining() < bytes) {
+            throw new EOFException();
+        }
+        return buffer;
+    }
+
+    /**
+     * Copy the whole section, from its first byte whatever was read of it.
+     * The checksum is checked first if it was not yet. The section can be
+     * copied again.
+     * @param out The output to copy to
+     * @throws IOException If the section is damaged or the output cannot
+     *                     be written
+     */
+    void copyTo(DataOutput out) throws IOException {
+        ByteBuffer section = take(0).duplicate();
+        section.rewind();
+        byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, section.remaining())];
+        while (section.hasRemaining()) {
+            int length = Math.min(chunk.length, section.remaining());
+            section.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Read the next byte.
+     * @return The byte or -1 at the end of the section
+     */
+    @Override
+    public int read() throws IOException {
+        return take(0).hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    /**
+     * Read up to the given number of bytes.
+     * @return Number of bytes read or -1 at the end of the section
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        take(0);
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        len = Math.min(len, buffer.remaining());
+        buffer.get(b, off, len);
+        return len;
+    }
+
+    /**
+     * Get the number of bytes left in the section.
+     * @return The bytes left
+     */
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Read enough bytes to fill the array.
+     */
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    /**
+     * Read exactly the given number of bytes.
+     */
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        take(len).get(b, off, len);
+    }
+
+    /**
+     * Skip bytes, up to the end of the section.
+     * @return Number of bytes skipped
+     */
+    @Override
+    public int skipBytes(int n) throws IOException {
+        n = Math.max(0, Math.min(n, take(0).remaining()));
+        buffer.position(buffer.position() + n);
+        return n;
+    }
+
+    /**
+     * Read a boolean.
+     * @return The boolean
+     */
+    @Override
+    public boolean readBoolean() throws IOException {
+        return take(1).get() != 0;
+    }
+
+    /**
+     * Read a byte.
+     * @return The byte
+     */
+    @Override
+    public byte readByte() throws IOException {
+        return take(1).get();
+    }
+
+    /**
+     * Read an unsigned byte.
+     * @return The byte
+     */
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return take(1).get() & 0xff;
+    }
+
+    /**
+     * Read a short.
+     * @return The short
+     */
+    @Override
+    public short readShort() throws IOException {
+        return take(2).getShort();
+    }
+
+    /**
+     * Read an unsigned short.
+     * @return The short
+     */
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return take(2).getShort() & 0xffff;
+    }
+
+    /**
+     * Read a character.
+     * @return The character
+     */
+    @Override
+    public char readChar() throws IOException {
+        return take(2).getChar();
+    }
+
+    /**
+     * Read an int.
+     * @return The int
+     */
+    @Override
+    public int readInt() throws IOException {
+        return take(4).getInt();
+    }
+
+    /**
+     * Read a long.
+     * @return The long
+     */
+    @Override
+    public long readLong() throws IOException {
+        return take(8).getLong();
+    }
+
+    /**
+     * Read a float.
+     * @return The float
+     */
+    @Override
+    public float readFloat() throws IOException {
+        return take(4).getFloat();
+    }
+
+    /**
+     * Read a double.
+     * @return The double
+     */
+    @Override
+    public double readDouble() throws IOException {
+        return take(8).getDouble();
+    }
+
+    /**
+     * Read a line of bytes as characters.
+     * @return The line or null at the end of the section
+     */
+    @Override
+    public String readLine() throws IOException {
+        if (!take(0).hasRemaining()) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xff);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Read a string written by DataOutput.writeUTF.
+     * @return The string
+     */
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
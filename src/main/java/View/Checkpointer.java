@@ -0,0 +1,187 @@
+package View;
+
+import Controller.CommandLoop;
+import Controller.RequestLog;
+import Controller.Request.RequestUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves the state of the server so the request log stays
+ * short. The state is captured at a barrier on the command loop, which
+ * only pauses requests for as long as copying what may still change and
+ * serializing the sessions take. Serializing the rest of the state, writing
+ * and syncing the snapshot and truncating the log happen on the checkpoint
+ * thread while requests keep flowing.
+ */
+class Checkpointer implements RequestUtil {
+
+    /**
+     * Milliseconds between checkpoints
+     */
+    private static final long INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * The file the snapshots are written to
+     */
+    private File file;
+    /**
+     * Loop the state is captured on
+     */
+    private CommandLoop commandLoop;
+    /**
+     * Log that is truncated after each checkpoint
+     */
+    private RequestLog requestLog;
+    /**
+     * Captures the state, must be called on the command loop
+     */
+    private Callable<Snapshot> capture;
+    /**
+     * Timer that starts the checkpoints
+     */
+    private Timer timer;
+    /**
+     * Position in the log of the last checkpoint
+     */
+    private long lastPosition;
+
+    /**
+     * Checkpoint metrics, read on the command loop
+     */
+    private volatile long checkpoints;
+    private volatile long failures;
+    private volatile long lastBytes;
+    private volatile long lastMillis;
+    private volatile long lastPauseMicros;
+    private volatile long maxPauseMicros;
+
+    /**
+     * Create a checkpointer that saves the captured state to a file.
+     * @param file The file to write snapshots to
+     * @param commandLoop The loop to capture the state on
+     * @param requestLog The log to truncate after each checkpoint
+     * @param capture Captures the state of the server
+     * @param position Position in the log of the state that was restored
+     */
+    Checkpointer(File file, CommandLoop commandLoop, RequestLog requestLog,
+                 Callable<Snapshot> capture, long position) {
+        this.file = file;
+        this.commandLoop = commandLoop;
+        this.requestLog = requestLog;
+        this.capture = capture;
+        this.lastPosition = position;
+    }
+
+    /**
+     * Start taking checkpoints in the background.
+     */
+    void start() {
+        timer = new Timer("checkpoint", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                checkpoint();
+            }
+        }, INTERVAL_MILLIS, INTERVAL_MILLIS);
+    }
+
+    /**
+     * Save the state and truncate the log, unless nothing was logged since
+     * the last checkpoint. A checkpoint whose log could not be truncated
+     * fails, and the next one saves the state and truncates the log again.
+     * Must not be called on the command loop.
+     */
+    synchronized void checkpoint() {
+        if (requestLog.getAppended() == lastPosition) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            Captured captured = commandLoop.call(() -> {
+                long begin = System.nanoTime();
+                Snapshot snapshot = capture.call();
+                return new Captured(snapshot, System.nanoTime() - begin);
+            });
+            byte[] bytes = captured.snapshot.toBytes();
+            Snapshot.write(file, bytes);
+            requestLog.truncate(captured.snapshot.getPosition());
+            lastPosition = captured.snapshot.getPosition();
+            checkpoints++;
+            lastBytes = bytes.length;
+            lastPauseMicros = TimeUnit.NANOSECONDS.toMicros(captured.pauseNanos);
+            maxPauseMicros = Math.max(maxPauseMicros, lastPauseMicros);
+            lastMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            failures++;
+        }
+    }
+
+    /**
+     * Make a change that is not logged and save the state with it. The state
+     * is captured on the command loop right after the change, then saved
+     * off the loop. A request logged before the save is durable could not
+     * be replayed without the change, so no requests may be served until
+     * this returns, as when visitors are imported. Must not be called on the
+     * command loop.
+     * @param change The change to make, performed on the command loop
+     * @return The result of the change
+     * @throws IOException If the state cannot be saved
+     */
+    synchronized <T> T checkpointAfter(Callable<T> change) throws IOException {
+        Map.Entry<T, Snapshot> changed;
+        try {
+            // The change is made before the state is captured
+            changed = commandLoop.call(() ->
+                    new AbstractMap.SimpleImmutableEntry<>(change.call(), capture.call()));
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        Snapshot snapshot = changed.getValue();
+        Snapshot.write(file, snapshot.toBytes());
+        requestLog.truncate(snapshot.getPosition());
+        lastPosition = snapshot.getPosition();
+        checkpoints++;
+        return changed.getKey();
+    }
+
+    /**
+     * String representation of the checkpoint metrics to be used as a
+     * response.
+     * @return The string form of the metrics
+     */
+    @Override
+    public String toString() {
+        return "Checkpoints: " + checkpoints + NEW_LINE +
+                "Checkpoint Failures: " + failures + NEW_LINE +
+                "Last Checkpoint Size (KB): " + (lastBytes >> 10) + NEW_LINE +
+                "Last Checkpoint Time (ms): " + lastMillis + NEW_LINE +
+                "Last Checkpoint Pause (us): " + lastPauseMicros + NEW_LINE +
+                "Max Checkpoint Pause (us): " + maxPauseMicros + NEW_LINE;
+    }
+
+    /**
+     * A state captured at a barrier and how long the barrier took.
+     */
+    private static class Captured {
+
+        private Snapshot snapshot;
+        private long pauseNanos;
+
+        private Captured(Snapshot snapshot, long pauseNanos) {
+            this.snapshot = snapshot;
+            this.pauseNanos = pauseNanos;
+        }
+    }
+}
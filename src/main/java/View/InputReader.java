@@ -3,6 +3,7 @@ package View;
 import Controller.Parser;
 import Controller.Request.Request;
 import Controller.Request.RequestUtil;
+import Controller.Request.Simple;
 
 /**
  * Read input from a view implementation and pass to an appropriate parser
@@ -25,6 +26,10 @@ public class InputReader implements RequestUtil {
      * Command to stop the program immediately
      */
     private static final String EXIT = "/exit";
+    /**
+     * Command to display the server metrics
+     */
+    private static final String STATS = "/stats";
 
     /**
      * The server to send system requests to
@@ -75,8 +80,9 @@ public class InputReader implements RequestUtil {
      * Special commands:
      * 1. /shutdown FILE - Shutdowns the program by first saving
      * 2. /exit - Exit the program without saving
-     * 3. Client connections: connect and disconnect
-     * 4. requests in csv format - commands to run through the parser
+     * 3. /stats - Display the server metrics
+     * 4. Client connections: connect and disconnect
+     * 5. requests in csv format - commands to run through the parser
      * @param next The next line of input
      * @return If the program should continue running
      */
@@ -96,6 +102,9 @@ public class InputReader implements RequestUtil {
             server.exit();
             return null;
         }
+        if (next.matches("^" + STATS)) {
+            return new Simple("stats," + NEW_LINE + server.stats() + TERMINATOR);
+        }
         // Next line must be a request to be processed
         return parser.processRequest(next);
     }
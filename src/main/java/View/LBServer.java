@@ -1,20 +1,26 @@
 package View;
 
 import Controller.ClientParser;
+import Controller.CommandLoop;
+import Controller.LoggingParser;
 import Controller.Parser;
-import Controller.Request.Request;
+import Controller.RequestLog;
 import Model.Client.AccountDB;
 import Model.Book.BookDB;
 import Model.Checkout.CheckoutDB;
 import Controller.RequestParser;
+import Controller.Request.RequestUtil;
 import Model.Client.Client;
 import Model.Library.LibrarySystem;
 import Model.Library.ReportGenerator;
 import Model.Library.TimeKeeper;
 import Model.Visitor.VisitorDB;
+import Model.Visitor.VisitorImporter;
 import javafx.application.Application;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
 
 /**
@@ -27,10 +33,31 @@ public class LBServer {
      * The path name to save and open files
      */
     private static final String PATH = "assets/";
+    /**
+     * The file of the request log
+     */
+    private static final String LOG_FILE = PATH + "lbms.log";
+    /**
+     * The file checkpoints are saved to, in the save path
+     */
+    private static final String CHECKPOINT_FILE = "lbms.snapshot";
     /**
      * Usage message for invalid arguments
      */
-    private static final String USAGE = "Usage: LBServer {'CLI'|'GUI'} [FILE]";
+    private static final String USAGE =
+            "Usage: LBServer {'CLI'|'GUI'|'NET'} [FILE] | LBServer IMPORT CSV REPORT";
+    /**
+     * Run mode that registers the visitors of a CSV file and exits
+     */
+    private static final String IMPORT = "IMPORT";
+    /**
+     * The port to accept client connections on in network mode
+     */
+    private static final int PORT = 2620;
+    /**
+     * Nanoseconds between looking for idle sessions to log out
+     */
+    private static final long SESSION_SWEEP_NANOS = 60_000_000_000L;
 
     /**
      * The maintained, connected clients
@@ -41,6 +68,14 @@ public class LBServer {
      * Parser used to process possible requests
      */
     private Parser parser;
+    /**
+     * Parser that logs requests before processing them
+     */
+    private LoggingParser loggingParser;
+    /**
+     * Parser that creates the requests and holds partial requests
+     */
+    private RequestParser requestParser;
     /**
      * Input reader used as a view controller to read input from a view
      */
@@ -74,9 +109,26 @@ public class LBServer {
      * Responsible for the creation of statistical reports
      */
     private ReportGenerator reportGenerator;
+    /**
+     * The single thread that performs every request against the databases
+     */
+    private CommandLoop commandLoop;
+    /**
+     * Log of the requests performed since the databases were saved
+     */
+    private RequestLog requestLog;
+    /**
+     * Saves the state in the background so the request log stays short
+     */
+    private Checkpointer checkpointer;
+    /**
+     * Time of System.nanoTime after which idle sessions are looked for again
+     */
+    private long nextSessionSweep = System.nanoTime();
 
     /**
-     * Create the main system by creating new databases.
+     * Create the main system by creating new databases and replaying the
+     * request log.
      */
     public LBServer() {
         accountDB = AccountDB.getInstance();
@@ -87,33 +139,125 @@ public class LBServer {
         reportGenerator = new ReportGenerator(timeKeeper,bookDB, visitorDB, checkoutDB);
         library = new LibrarySystem(visitorDB, timeKeeper, reportGenerator);
         timeKeeper.setLibrarySystemObserver(library);
-        Parser requestParser = new RequestParser(library, timeKeeper, reportGenerator);
+        requestParser = new RequestParser(library, timeKeeper, reportGenerator);
         clients = new HashMap<>();
         parser = new ClientParser(requestParser, clients);
-        reader = InputReader.init(this, parser);
+        requestLog = new RequestLog(new File(LOG_FILE));
+        loggingParser = new LoggingParser(parser, requestLog, timeKeeper);
+        reader = InputReader.init(this, loggingParser);
+        startCommandLoop(0);
     }
 
     /**
-     * Create the main system from existing databases.
-     * @param accountDB The account database
-     * @param bookDB The book database
-     * @param visitorDB The visitor database
-     * @param checkoutDB The checkout database
-     * @param clients The clients of the server
+     * Create the main system from a saved state and replay the requests
+     * logged after it was saved.
+     * @param snapshot The saved state
+     * @param timeKeeper The time keeper the state was read with
      */
-    public LBServer(AccountDB accountDB, BookDB bookDB, VisitorDB visitorDB,
-                    CheckoutDB checkoutDB, Map<String, Client> clients) {
-        this.accountDB = accountDB;
-        this.bookDB = bookDB;
-        this.visitorDB = visitorDB;
-        this.checkoutDB = checkoutDB;
-        this.timeKeeper = new TimeKeeper();
+    private LBServer(Snapshot snapshot, TimeKeeper timeKeeper) {
+        this.accountDB = snapshot.getAccountDB();
+        this.bookDB = snapshot.getBookDB();
+        this.visitorDB = snapshot.getVisitorDB();
+        this.checkoutDB = snapshot.getCheckoutDB();
+        this.clients = snapshot.getClients();
+        this.timeKeeper = timeKeeper;
+        timeKeeper.setClock(snapshot.getClock());
         reportGenerator = new ReportGenerator(timeKeeper,bookDB, visitorDB, checkoutDB);
+        reportGenerator.setStatisticsReports(snapshot.getReports());
         library = new LibrarySystem(visitorDB, timeKeeper, reportGenerator);
-        Parser requestParser = new RequestParser(library, timeKeeper, reportGenerator);
+        requestParser = new RequestParser(library, timeKeeper, reportGenerator);
+        requestParser.setPartialRequests(snapshot.getPartialRequests());
+        ClientParser.setNextClientID(snapshot.getNextClientID());
         parser = new ClientParser(requestParser, clients);
         timeKeeper.setLibrarySystemObserver(library);
-        reader = InputReader.init(this, parser);
+        requestLog = new RequestLog(new File(LOG_FILE));
+        loggingParser = new LoggingParser(parser, requestLog, timeKeeper);
+        reader = InputReader.init(this, loggingParser);
+        startCommandLoop(snapshot.getPosition());
+    }
+
+    /**
+     * Start the command loop and route the time keeper's updates through it
+     * so the model is only changed from one thread. Replaying the request
+     * log is the first command performed, then checkpoints are taken in the
+     * background.
+     * @param position Sequence number of the last logged request in the
+     *                 databases
+     */
+    private void startCommandLoop(long position) {
+        commandLoop = new CommandLoop();
+        commandLoop.execute(() -> recover(position));
+        timeKeeper.setExecutor(update -> commandLoop.execute(() -> updateTime(update)));
+        commandLoop.start();
+        checkpointer = new Checkpointer(new File(PATH + CHECKPOINT_FILE), commandLoop,
+                requestLog, this::capture, position);
+        checkpointer.start();
+    }
+
+    /**
+     * Replay the requests logged after the given position and open the log.
+     * The server cannot run without its log.
+     * @param position Sequence number of the last logged request in the
+     *                 databases
+     */
+    private void recover(long position) {
+        try {
+            requestLog.open(position, this::replay);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Perform a logged record again at the time it was first performed.
+     * @param kind The kind of record
+     * @param clock The library clock when the record was logged
+     * @param line The logged request
+     */
+    private void replay(byte kind, LocalDateTime clock, String line) {
+        timeKeeper.setClock(clock);
+        if (kind == RequestLog.TIME) {
+            timeKeeper.updateLibrary();
+            return;
+        }
+        try {
+            loggingParser.replay(kind, line);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Perform a time update of the time keeper and log it if it opened or
+     * closed the library, so replayed requests find the library in the same
+     * state.
+     * @param update The time update
+     */
+    private void updateTime(Runnable update) {
+        boolean open = library.isOpen();
+        update.run();
+        if (library.isOpen() != open) {
+            requestLog.append(RequestLog.TIME, timeKeeper.getPreciseClock(), "");
+        }
+        logOutIdleSessions();
+    }
+
+    /**
+     * Log out the accounts that were not used for half an hour, looking for
+     * them once a minute. The logouts are performed as logged requests, so replaying the
+     * log logs the same accounts out at the same point.
+     */
+    private void logOutIdleSessions() {
+        long now = System.nanoTime();
+        if (now - nextSessionSweep < 0) {
+            return;
+        }
+        nextSessionSweep = now + SESSION_SWEEP_NANOS;
+        for (String clientID : accountDB.findIdleSessions()) {
+            loggingParser.processRequest(clientID + RequestUtil.DELIMITER +
+                    RequestUtil.LOGOUT_REQUEST + RequestUtil.TERMINATOR).execute();
+        }
     }
 
     /**
@@ -121,84 +265,166 @@ public class LBServer {
      */
     public void start() {
         Scanner scanner = new Scanner(System.in);
-        String next;
         while (scanner.hasNextLine()) {
-            next = scanner.nextLine();
-            Request request = reader.read(next);
-            System.out.println(request.execute());
+            String next = scanner.nextLine();
+            String response;
+            try {
+                // A store search waits for the web service off the loop
+                response = commandLoop.call(() -> reader.read(next).executeAsync(commandLoop))
+                        .join();
+            } catch (IllegalStateException e) {
+                // The log failed before the request could be logged
+                response = null;
+            }
+            // Only answer once the request is durable
+            if (response == null || !requestLog.awaitDurable(requestLog.getAppended())) {
+                System.err.println("The request log failed, so requests can no longer be saved");
+                break;
+            }
+            System.out.println(response);
         }
-        System.exit(0);
+        exit();
     }
 
+    /**
+     * Start the server by serving requests from client connections.
+     */
+    public void listen() {
+        try {
+            new SocketListener(loggingParser, commandLoop, requestLog).listen(PORT);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        exit();
+    }
+
+    /**
+     * Get the current metrics of the server.
+     * @return Readable string of the command loop, request log, checkpoint,
+     *         session, search index and Google Books search metrics
+     */
+    public String stats() {
+        long megabyte = 1 << 20;
+        return commandLoop.toString() + requestLog + checkpointer +
+                "Sessions: " + accountDB.getSessionCount() + RequestUtil.NEW_LINE +
+                "Library Index (MB per million books): " +
+                bookDB.getIndexBytesPerMillion() / megabyte + RequestUtil.NEW_LINE +
+                "Store Index (MB per million books): " +
+                bookDB.getStoreIndexBytesPerMillion() / megabyte + RequestUtil.NEW_LINE +
+                bookDB.getGoogleSearchStats();
+    }
+
+    /**
+     * Stop the server once every logged request is durable.
+     */
     public void exit() {
+        requestLog.close();
         System.exit(0);
     }
 
     /**
-     * Save the state of main system by serializing the databases to the file.
+     * Stop the server once the time updates that are already queued were
+     * performed. Must not be called on the command loop.
+     */
+    private void stop() {
+        timeKeeper.endTimeKeeping();
+        commandLoop.call(() -> null);
+        exit();
+    }
+
+    /**
+     * Capture the state of the main system. Must be called on the command
+     * loop. The command histories of the accounts are captured with it, so
+     * requests performed before can still be undone once it is restored.
+     * The returned state can be serialized off the command loop.
+     * @return The captured state
+     * @throws IOException If the state cannot be captured
+     */
+    private Snapshot capture() throws IOException {
+        Snapshot snapshot = new Snapshot(accountDB, bookDB, visitorDB, checkoutDB, clients,
+                timeKeeper.getPreciseClock(), ClientParser.getNextClientID(),
+                requestLog.getAppended(), reportGenerator.getStatisticsReports(),
+                requestParser.getPartialRequests());
+        snapshot.capture();
+        return snapshot;
+    }
+
+    /**
+     * Save the state of main system by serializing the databases to the file,
+     * along with the clock and the position in the request log they include.
+     * Must be called on the command loop.
      * @param file The file to save to
      */
     public void shutdown(String file) {
         try {
-            FileOutputStream fos = new FileOutputStream(PATH + file);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            ArrayList<Object> items = new ArrayList<>();
-            items.add(accountDB);
-            items.add(bookDB);
-            items.add(visitorDB);
-            items.add(checkoutDB);
-            items.add(clients);
-            oos.writeObject(items);
+            Snapshot.write(new File(PATH + file), capture().toBytes());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Restore the main system by reading a properly serialized object file.
+     * Register the visitors of a CSV file that are not registered yet and
+     * write which lines were given which IDs and which were duplicates. The
+     * visitors are registered without logging a request for each of them,
+     * so the state is saved as soon as they are registered. Must not be
+     * called on the command loop.
+     * @param file The CSV file of visitors
+     * @param report The file to write the report to
+     */
+    public void importVisitors(String file, String report) {
+        VisitorImporter importer = new VisitorImporter(visitorDB);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(report), StandardCharsets.UTF_8), 1 << 16)) {
+            System.out.println(checkpointer.checkpointAfter(() -> importer.load(new File(file), out)));
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restore the main system by reading a properly serialized object file
+     * and replaying the requests logged after it was saved.
      * @param file Serialized object file
      */
-    @SuppressWarnings("unchecked exception")
     public static LBServer restore(String file) {
-        AccountDB accountDB;
-        BookDB bookDB;
-        VisitorDB visitorDB;
-        CheckoutDB checkoutDB;
-        Map<String, Client> clients;
+        TimeKeeper timeKeeper = new TimeKeeper();
         try {
-            FileInputStream fis = new FileInputStream(PATH + file);
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            // Suppress unchecked casting here
-            ArrayList<Object> items = (ArrayList<Object>) ois.readObject();
-            accountDB = (AccountDB) items.get(0);
-            bookDB = (BookDB) items.get(1);
-            visitorDB = (VisitorDB) items.get(2);
-            checkoutDB = (CheckoutDB) items.get(3);
-            clients = (Map<String, Client>) items.get(4);
-            return new LBServer(accountDB, bookDB, visitorDB, checkoutDB, clients);
-        } catch (IOException | ClassNotFoundException e) {
+            return new LBServer(Snapshot.read(new File(PATH + file), timeKeeper), timeKeeper);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
             e.printStackTrace();
         }
+        timeKeeper.endTimeKeeping();
         return null;
     }
 
     /**
      * Start the library book management system.
      * Arguments determine run mode:
-     * 1. One argument: CLI/GUI - start new management system from the specified view
-     * 2. Two arguments: CLI/GUI FILE - restore system from a clean shutdown
+     * 1. One argument: CLI/GUI/NET - start new management system from the specified view,
+     *    or from the last checkpoint if there is one, and replay the request log
+     * 2. Two arguments: CLI/GUI/NET FILE - restore system from a clean shutdown and
+     *    replay the requests logged after it
+     * 3. IMPORT CSV REPORT - register the visitors of a CSV file in the system of
+     *    the last checkpoint, save it and exit, while no other server is running
      * @param args Command line arguments
      */
     public static void main(String[] args) {
         int argc = args.length;
         LBServer server = null;
-        if (argc == 0 || argc > 2) {
+        if (argc == 0 || argc > 3 || (argc == 3) != args[0].equals(IMPORT)) {
             System.err.println(USAGE);
             System.exit(1);
         }
         switch (argc) {
             case 1:
-                server = new LBServer();
+            case 3:
+                if (new File(PATH + CHECKPOINT_FILE).isFile()) {
+                    server = restore(CHECKPOINT_FILE);
+                }
+                else {
+                    server = new LBServer();
+                }
                 break;
             case 2:
                 server = restore(args[1]);
@@ -209,9 +435,16 @@ public class LBServer {
             case "CLI":
                 Objects.requireNonNull(server).start();
                 break;
+            case "NET":
+                Objects.requireNonNull(server).listen();
+                break;
             case "GUI":
                 new Thread(() -> Application.launch(LibGUI.class)).start();
                 break;
+            case IMPORT:
+                Objects.requireNonNull(server).importVisitors(args[1], args[2]);
+                server.stop();
+                break;
         }
     }
 
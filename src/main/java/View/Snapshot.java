@@ -0,0 +1,483 @@
+package View;
+
+import Controller.PartialRequest;
+import Model.Book.BookDB;
+import Model.Book.BookInfo;
+import Model.Checkout.CheckoutDB;
+import Model.Client.AccountDB;
+import Model.Client.Client;
+import Model.Library.StateWriter;
+import Model.Library.StatisticsReport;
+import Model.Library.TimeKeeper;
+import Model.Visitor.VisitorDB;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Saved state of the server: the databases, the clients, the daily reports,
+ * the partial requests, the library clock and the position in the request
+ * log the state includes.
+ * <p>
+ * The state is saved in sections listed in a table at the start of the
+ * file, with a checksum each. The books, visitors, loans and reports are
+ * written field by field; the accounts with their command histories, the
+ * clients, searches and partial requests are serialized in a session
+ * section, where books of the library are saved by ISBN and the time keeper
+ * by a reference to the one of the server that reads the state. Sections
+ * are mapped into memory when the state is read. No request reads the
+ * visits and closed loans, so they are never read: the sections hold
+ * blocks, and each snapshot copies the blocks of the one the server was
+ * restored from and adds a block of those made since. The mapping keeps
+ * the blocks readable after the file is replaced.
+ * <p>
+ * Saving is split in two, so the server only pauses while the state is
+ * captured. Capturing copies what may still change and serializes the
+ * session; the sections are then written from the captured state on any
+ * thread.
+ */
+class Snapshot {
+
+    /**
+     * First bytes of a snapshot saved in sections, "LBMSSNAP"
+     */
+    private static final long MAGIC = 0x4c424d53534e4150L;
+    /**
+     * Version of the section layout, increased when a section changes
+     */
+    private static final int VERSION = 1;
+    /**
+     * Bytes of the header and of each entry in the section table
+     */
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 24;
+    /**
+     * Sections of a snapshot
+     */
+    private static final int META = 1;
+    private static final int BOOKS = 2;
+    private static final int VISITORS = 3;
+    private static final int VISITS = 4;
+    private static final int OPEN_LOANS = 5;
+    private static final int CLOSED_LOANS = 6;
+    private static final int REPORTS = 7;
+    private static final int SESSION = 8;
+    /**
+     * Sections in the order they are written
+     */
+    private static final int[] SECTIONS = {META, BOOKS, VISITORS, VISITS, OPEN_LOANS,
+            CLOSED_LOANS, REPORTS, SESSION};
+
+    /**
+     * The saved state
+     */
+    private AccountDB accountDB;
+    private BookDB bookDB;
+    private VisitorDB visitorDB;
+    private CheckoutDB checkoutDB;
+    private Map<String, Client> clients;
+    private LocalDateTime clock;
+    private int nextClientID;
+    private long position;
+    private List<StatisticsReport> reports;
+    private Map<String, PartialRequest> partialRequests;
+    /**
+     * Writers of the captured sections in the order they are written, or
+     * null if the state was not captured
+     */
+    private StateWriter[] captured;
+
+    /**
+     * Create a snapshot of the given state.
+     * @param accountDB The account database
+     * @param bookDB The book database
+     * @param visitorDB The visitor database
+     * @param checkoutDB The checkout database
+     * @param clients The clients of the server
+     * @param clock The library clock
+     * @param nextClientID The ID given to the next client that connects
+     * @param position Sequence number of the last logged request in the state
+     * @param reports The daily reports
+     * @param partialRequests Clients to their partial requests
+     */
+    Snapshot(AccountDB accountDB, BookDB bookDB, VisitorDB visitorDB,
+             CheckoutDB checkoutDB, Map<String, Client> clients,
+             LocalDateTime clock, int nextClientID, long position,
+             List<StatisticsReport> reports, Map<String, PartialRequest> partialRequests) {
+        this.accountDB = accountDB;
+        this.bookDB = bookDB;
+        this.visitorDB = visitorDB;
+        this.checkoutDB = checkoutDB;
+        this.clients = clients;
+        this.clock = clock;
+        this.nextClientID = nextClientID;
+        this.position = position;
+        this.reports = reports;
+        this.partialRequests = partialRequests;
+    }
+
+    /**
+     * Capture the state, so it can be serialized while it keeps changing.
+     * The state must not change while it is captured.
+     * @throws IOException If the session cannot be serialized
+     */
+    void capture() throws IOException {
+        LocalDateTime capturedClock = clock;
+        int capturedClientID = nextClientID;
+        long capturedPosition = position;
+        List<StatisticsReport> capturedReports = new ArrayList<>(reports);
+        byte[] session = writeSession();
+        captured = new StateWriter[] {
+                out -> {
+                    TimeKeeper.writeTime(out, capturedClock);
+                    out.writeInt(capturedClientID);
+                    out.writeLong(capturedPosition);
+                },
+                bookDB.capture(),
+                visitorDB.capture(),
+                visitorDB.captureVisits(),
+                checkoutDB.capture(),
+                checkoutDB.captureClosedLoans(),
+                out -> {
+                    out.writeInt(capturedReports.size());
+                    for (StatisticsReport report : capturedReports) {
+                        report.write(out);
+                    }
+                },
+                out -> out.write(session)
+        };
+    }
+
+    /**
+     * Serialize the session: the account database, the clients and the
+     * partial requests, in that order. The books of the library are
+     * replaced with their ISBNs.
+     * @return The serialized session
+     * @throws IOException If the session cannot be serialized
+     */
+    private byte[] writeSession() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream session = new SessionOutputStream(bytes, bookDB);
+        session.writeObject(accountDB);
+        session.writeObject(clients);
+        session.writeObject(partialRequests);
+        session.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Serialize the captured state. The state is captured first if it was
+     * not, in which case it must not change while it is serialized.
+     * @return The serialized snapshot
+     * @throws IOException If the state cannot be serialized
+     */
+    byte[] toBytes() throws IOException {
+        if (captured == null) {
+            capture();
+        }
+        int[] ids = SECTIONS;
+        int tableBytes = HEADER_BYTES + ids.length * ENTRY_BYTES;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[tableBytes]);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteBuffer table = ByteBuffer.allocate(tableBytes);
+        table.putLong(MAGIC).putInt(VERSION).putInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            int offset = bytes.size();
+            captured[i].write(out);
+            out.flush();
+            table.putInt(ids[i]).putLong(offset).putLong(bytes.size() - offset);
+            // The checksum is filled in once the section is in one array
+            table.putInt(0);
+        }
+        byte[] snapshot = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < ids.length; i++) {
+            int entry = HEADER_BYTES + i * ENTRY_BYTES;
+            crc.reset();
+            crc.update(snapshot, (int) table.getLong(entry + 4), (int) table.getLong(entry + 12));
+            table.putInt(entry + 20, (int) crc.getValue());
+        }
+        System.arraycopy(table.array(), 0, snapshot, 0, tableBytes);
+        return snapshot;
+    }
+
+    /**
+     * Write a serialized snapshot to a file and sync it. The snapshot is
+     * written next to the file and then moved over it, so the file always
+     * holds a complete snapshot.
+     * @param file The file to write
+     * @param bytes The serialized snapshot
+     * @throws IOException If the file cannot be written
+     */
+    static void write(File file, byte[] bytes) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // Make the move durable before the log is truncated
+        try (FileChannel directory = FileChannel.open(
+                file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not every platform can sync a directory
+        }
+    }
+
+    /**
+     * Read a snapshot from a file. The sections are mapped into memory and
+     * the visits and closed loans are left unread.
+     * @param file The file to read
+     * @param timeKeeper The time keeper of the server the state is read
+     *                   for, given to the requests in command histories
+     * @return The snapshot
+     * @throws IOException If the file cannot be read
+     * @throws ClassNotFoundException If a saved class cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    static Snapshot read(File file, TimeKeeper timeKeeper) throws IOException, ClassNotFoundException {
+        Map<Integer, BufferInput> sections = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Snapshot version " + version + " is not " + VERSION);
+            }
+            ByteBuffer table = ByteBuffer.allocate(header.getInt() * ENTRY_BYTES);
+            channel.read(table, HEADER_BYTES);
+            table.flip();
+            while (table.remaining() >= ENTRY_BYTES) {
+                int id = table.getInt();
+                long offset = table.getLong();
+                long length = table.getLong();
+                int checksum = table.getInt();
+                if (offset + length > channel.size()) {
+                    throw new IOException("Snapshot is shorter than its sections");
+                }
+                // The mapping stays valid once the channel is closed
+                sections.put(id, new BufferInput(channel.map(
+                        FileChannel.MapMode.READ_ONLY, offset, length), checksum));
+            }
+        }
+        for (int id = META; id <= SESSION; id++) {
+            if (!sections.containsKey(id)) {
+                throw new IOException("Snapshot is missing section " + id);
+            }
+        }
+        BufferInput meta = sections.get(META);
+        LocalDateTime clock = TimeKeeper.readTime(meta);
+        int nextClientID = meta.readInt();
+        long position = meta.readLong();
+        BookDB bookDB = BookDB.read(sections.get(BOOKS));
+        VisitorDB visitorDB = VisitorDB.read(sections.get(VISITORS),
+                sections.get(VISITS)::copyTo);
+        CheckoutDB checkoutDB = CheckoutDB.read(sections.get(OPEN_LOANS),
+                sections.get(CLOSED_LOANS)::copyTo, bookDB);
+        BufferInput in = sections.get(REPORTS);
+        int count = in.readInt();
+        List<StatisticsReport> reports = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            reports.add(StatisticsReport.read(in));
+        }
+        ObjectInputStream session = new SessionInputStream(sections.get(SESSION), bookDB, timeKeeper);
+        AccountDB accountDB = (AccountDB) session.readObject();
+        Map<String, Client> clients = (Map<String, Client>) session.readObject();
+        Map<String, PartialRequest> partialRequests =
+                (Map<String, PartialRequest>) session.readObject();
+        return new Snapshot(accountDB, bookDB, visitorDB, checkoutDB, clients, clock,
+                nextClientID, position, reports, partialRequests);
+    }
+
+    /**
+     * Get the account database.
+     * @return The account database
+     */
+    AccountDB getAccountDB() {
+        return accountDB;
+    }
+
+    /**
+     * Get the book database.
+     * @return The book database
+     */
+    BookDB getBookDB() {
+        return bookDB;
+    }
+
+    /**
+     * Get the visitor database.
+     * @return The visitor database
+     */
+    VisitorDB getVisitorDB() {
+        return visitorDB;
+    }
+
+    /**
+     * Get the checkout database.
+     * @return The checkout database
+     */
+    CheckoutDB getCheckoutDB() {
+        return checkoutDB;
+    }
+
+    /**
+     * Get the clients of the server.
+     * @return The clients
+     */
+    Map<String, Client> getClients() {
+        return clients;
+    }
+
+    /**
+     * Get the library clock.
+     * @return The library clock
+     */
+    LocalDateTime getClock() {
+        return clock;
+    }
+
+    /**
+     * Get the ID given to the next client that connects.
+     * @return The next client ID
+     */
+    int getNextClientID() {
+        return nextClientID;
+    }
+
+    /**
+     * Get the sequence number of the last logged request in the state.
+     * @return The position in the request log
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the daily reports.
+     * @return The daily reports
+     */
+    List<StatisticsReport> getReports() {
+        return reports;
+    }
+
+    /**
+     * Get the partial requests of the clients.
+     * @return The partial requests
+     */
+    Map<String, PartialRequest> getPartialRequests() {
+        return partialRequests;
+    }
+
+    /**
+     * A book of the library saved by its ISBN, so the session refers to the
+     * same books as the library once it is read.
+     */
+    private static class BookRef implements Serializable {
+
+        private static final long serialVersionUID = -2700510009133031515L;
+
+        private String isbn;
+
+        private BookRef(String isbn) {
+            this.isbn = isbn;
+        }
+    }
+
+    /**
+     * The time keeper of the server, saved as a reference to the time keeper
+     * of the server that reads the session.
+     */
+    private static class TimeKeeperRef implements Serializable {
+
+        private static final long serialVersionUID = 4756203394824566288L;
+    }
+
+    /**
+     * Serializes the session, replacing the books of the library and the
+     * time keeper with references to them.
+     */
+    private static class SessionOutputStream extends ObjectOutputStream {
+
+        private BookDB bookDB;
+
+        private SessionOutputStream(OutputStream out, BookDB bookDB) throws IOException {
+            super(out);
+            this.bookDB = bookDB;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof TimeKeeper) {
+                return new TimeKeeperRef();
+            }
+            if (obj instanceof BookInfo) {
+                String isbn = ((BookInfo) obj).getIsbn();
+                if (bookDB.getBook(isbn) == obj) {
+                    return new BookRef(isbn);
+                }
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Reads a session written by SessionOutputStream, resolving references
+     * to the books of the library and the time keeper.
+     */
+    private static class SessionInputStream extends ObjectInputStream {
+
+        private BookDB bookDB;
+        private TimeKeeper timeKeeper;
+
+        private SessionInputStream(InputStream in, BookDB bookDB, TimeKeeper timeKeeper)
+                throws IOException {
+            super(in);
+            this.bookDB = bookDB;
+            this.timeKeeper = timeKeeper;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof TimeKeeperRef) {
+                return timeKeeper;
+            }
+            if (obj instanceof BookRef) {
+                BookInfo book = bookDB.getBook(((BookRef) obj).isbn);
+                if (book == null) {
+                    throw new IOException("Session refers to unknown book " + ((BookRef) obj).isbn);
+                }
+                return book;
+            }
+            return obj;
+        }
+    }
+}
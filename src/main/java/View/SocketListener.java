@@ -0,0 +1,517 @@
+package View;
+
+import Controller.CommandLoop;
+import Controller.Parser;
+import Controller.RequestLog;
+import Controller.Request.Request;
+import Controller.Request.RequestUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking TCP front-end for the server. A single selector thread accepts
+ * connections, frames requests on the terminator byte and writes the
+ * responses back, so many clients are served without a thread per socket.
+ * Framed requests are performed on the command loop; a connection whose
+ * requests do not fit in the loop's queue stops being read until they do.
+ * A connection whose client does not read its responses also stops being
+ * read once too many of them are queued, until most are written.
+ * A request that waits for a web service does so off the loop, and the
+ * later requests of its connection wait for it, so responses keep their
+ * order. Responses are only written once the requests are durable in the
+ * log.
+ */
+public class SocketListener implements RequestUtil {
+
+    /**
+     * Byte that ends a request frame
+     */
+    private static final byte FRAME_END = (byte) TERMINATOR.charAt(0);
+    /**
+     * Initial size of the read buffer of a connection
+     */
+    private static final int READ_BUFFER_SIZE = 4096;
+    /**
+     * Largest request a connection may send before it is dropped
+     */
+    private static final int MAX_FRAME_SIZE = 1 << 20;
+    /**
+     * Bytes of responses queued on a connection above which it is no longer
+     * read, and below which it is read again
+     */
+    private static final int OUTPUT_HIGH_WATER = 1 << 20;
+    private static final int OUTPUT_LOW_WATER = 1 << 18;
+    /**
+     * Milliseconds to wait before retrying requests the full queue turned away
+     */
+    private static final long RETRY_MILLIS = 5;
+    /**
+     * Connections the operating system may queue before they are accepted
+     */
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    /**
+     * Parser used to process the framed requests
+     */
+    private Parser parser;
+    /**
+     * Loop that performs the requests
+     */
+    private CommandLoop commandLoop;
+    /**
+     * Log the requests must be durable in before they are answered
+     */
+    private RequestLog requestLog;
+    /**
+     * Selector that multiplexes all channels
+     */
+    private Selector selector;
+    /**
+     * Responses produced by the command loop waiting to be queued for writing
+     */
+    private Queue<Response> completed;
+    /**
+     * Connections with requests the full command loop turned away
+     */
+    private Set<Connection> stalled;
+
+    /**
+     * Create a listener that passes received requests to the given parser
+     * on the command loop.
+     * @param parser The parser to process requests with
+     * @param commandLoop The loop to perform requests on
+     * @param requestLog The log the parser appends requests to
+     */
+    public SocketListener(Parser parser, CommandLoop commandLoop, RequestLog requestLog) {
+        this.parser = parser;
+        this.commandLoop = commandLoop;
+        this.requestLog = requestLog;
+        completed = new ConcurrentLinkedQueue<>();
+        stalled = new LinkedHashSet<>();
+    }
+
+    /**
+     * Accept connections on the given port and serve them until the
+     * selector is closed.
+     * @param port The port to listen on
+     * @throws IOException If the server socket cannot be opened
+     */
+    public void listen(int port) throws IOException {
+        selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        while (selector.isOpen()) {
+            if (stalled.isEmpty()) {
+                selector.select();
+            }
+            else {
+                selector.select(RETRY_MILLIS);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable()) {
+                        accept(server);
+                    }
+                    else {
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    close(key);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    close(key);
+                }
+            }
+            drainCompleted();
+            for (Connection connection : new ArrayList<>(stalled)) {
+                submit(connection);
+            }
+        }
+    }
+
+    /**
+     * Accept every pending connection and register them for reading, so
+     * new clients are not held in the backlog while the selector is busy
+     * with the connected ones. A failed accept does not affect the server
+     * channel.
+     * @param server The server channel with pending connections
+     */
+    private void accept(ServerSocketChannel server) {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                Connection connection = new Connection();
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read what is available on the channel and submit every complete
+     * request frame.
+     * @param key The readable key
+     * @throws IOException If the channel cannot be read
+     */
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (!connection.in.hasRemaining() && !connection.grow()) {
+            // Request is too large to ever be framed
+            close(key);
+            return;
+        }
+        if (channel.read(connection.in) < 0) {
+            close(key);
+            return;
+        }
+        connection.frame();
+        submit(connection);
+    }
+
+    /**
+     * Post the pending requests of a connection to the command loop in
+     * order. If the loop is full the connection is no longer read until
+     * the rest of its requests are accepted. Nothing is posted while too
+     * many responses of the connection are queued; writing them resumes it.
+     * @param connection The connection to submit requests for
+     */
+    private void submit(Connection connection) {
+        if (!connection.key.isValid()) {
+            stalled.remove(connection);
+            return;
+        }
+        if (connection.queued >= OUTPUT_HIGH_WATER) {
+            stalled.remove(connection);
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            return;
+        }
+        while (!connection.pending.isEmpty()) {
+            String frame = connection.pending.peek();
+            if (!commandLoop.offer(() -> respond(connection, frame))) {
+                break;
+            }
+            connection.pending.poll();
+        }
+        SelectionKey key = connection.key;
+        if (connection.pending.isEmpty()) {
+            stalled.remove(connection);
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        else {
+            stalled.add(connection);
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Queue the responses produced by the command loop for writing, and
+     * close the connections of requests that could not be logged.
+     */
+    private void drainCompleted() {
+        Response response;
+        while ((response = completed.poll()) != null) {
+            SelectionKey key = response.connection.key;
+            if (key.isValid() && response.text == null) {
+                close(key);
+            }
+            else if (key.isValid()) {
+                response.connection.queue(response.text);
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                if (response.connection.queued >= OUTPUT_HIGH_WATER) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write as much of the pending output as the channel accepts. A
+     * connection that stopped being read for its queued output is read
+     * again once little of it is left.
+     * @param key The writable key
+     * @throws IOException If the channel cannot be written
+     */
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        Deque<ByteBuffer> out = connection.out;
+        while (!out.isEmpty()) {
+            ByteBuffer buffer = out.peek();
+            connection.queued -= channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                // Socket buffer is full, wait for the next write event
+                break;
+            }
+            out.poll();
+        }
+        if (out.isEmpty()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (connection.queued <= OUTPUT_LOW_WATER &&
+                (key.interestOps() & SelectionKey.OP_READ) == 0) {
+            submit(connection);
+        }
+    }
+
+    /**
+     * Perform a request on the command loop after the earlier requests of
+     * its connection.
+     * @param connection The connection the frame was read from
+     * @param frame The request
+     */
+    private void respond(Connection connection, String frame) {
+        connection.deferred.add(frame);
+        performDeferred(connection);
+    }
+
+    /**
+     * Perform the deferred requests of a connection in order, until one of
+     * them has to wait off the command loop. The rest are performed once it
+     * is answered.
+     * @param connection The connection
+     */
+    private void performDeferred(Connection connection) {
+        while (!connection.waiting && !connection.deferred.isEmpty()) {
+            CompletableFuture<String> text = process(connection, connection.deferred.poll());
+            if (text.isDone()) {
+                answer(connection, text.join());
+                continue;
+            }
+            connection.waiting = true;
+            text.thenAcceptAsync(response -> {
+                connection.waiting = false;
+                answer(connection, response);
+                performDeferred(connection);
+            }, commandLoop);
+        }
+    }
+
+    /**
+     * Hand the response of a request back to the selector thread once the
+     * request is durable.
+     * @param connection The connection the request was read from
+     * @param text The response
+     */
+    private void answer(Connection connection, String text) {
+        Response response = new Response(connection, text);
+        // A request that will never be durable is not answered
+        requestLog.whenDurable(requestLog.getAppended(), () -> {
+            completed.add(response);
+            selector.wakeup();
+        }, () -> {
+            completed.add(new Response(connection, null));
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Process a request frame and keep track of the client IDs the
+     * connection has connected or disconnected. A request that fails is
+     * answered as an illegal command.
+     * @param connection The connection the frame was read from
+     * @param frame The request
+     * @return The response of the request once it is performed
+     */
+    private CompletableFuture<String> process(Connection connection, String frame) {
+        CompletableFuture<String> response;
+        try {
+            response = parser.processRequest(frame).executeAsync(commandLoop);
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((text, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                return ILLEGAL_COMMAND + TERMINATOR;
+            }
+            String connected = CONNECT_REQUEST + DELIMITER;
+            if (text.startsWith(connected)) {
+                connection.clientIDs.add(text.substring(connected.length(),
+                        text.length() - TERMINATOR.length()));
+            }
+            else if (text.endsWith(DELIMITER + DISCONNECT_REQUEST + TERMINATOR)) {
+                connection.clientIDs.remove(text.substring(0, text.indexOf(DELIMITER)));
+            }
+            return text;
+        });
+    }
+
+    /**
+     * Close the connection of the key. Clients that were connected through
+     * the connection and never disconnected are disconnected for it on the
+     * command loop.
+     * @param key The key to close
+     */
+    private void close(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection != null) {
+            stalled.remove(connection);
+            commandLoop.execute(() -> disconnect(connection));
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Disconnect the clients that are still connected through a closed
+     * connection.
+     * @param connection The closed connection
+     */
+    private void disconnect(Connection connection) {
+        for (String clientID : connection.clientIDs) {
+            parser.processRequest(clientID + DELIMITER +
+                    DISCONNECT_REQUEST + TERMINATOR).execute();
+        }
+        connection.clientIDs.clear();
+    }
+
+    /**
+     * A response to be written to the connection that sent the request, or
+     * no text if the connection is to be closed instead.
+     */
+    private static class Response {
+
+        private Connection connection;
+        private String text;
+
+        private Response(Connection connection, String text) {
+            this.connection = connection;
+            this.text = text;
+        }
+    }
+
+    /**
+     * State of one client connection: the bytes read so far, the requests
+     * waiting for the command loop and the responses waiting to be written.
+     */
+    private static class Connection {
+
+        /**
+         * The selection key of the connection's channel
+         */
+        private SelectionKey key;
+        /**
+         * Bytes read but not yet framed, in write mode
+         */
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        /**
+         * Framed requests not yet accepted by the command loop
+         */
+        private Deque<String> pending = new ArrayDeque<>();
+        /**
+         * Encoded responses waiting to be written
+         */
+        private Deque<ByteBuffer> out = new ArrayDeque<>();
+        /**
+         * Bytes of the responses waiting to be written
+         */
+        private long queued;
+        /**
+         * Client IDs connected through this connection. Only used on the
+         * command loop.
+         */
+        private List<String> clientIDs = new ArrayList<>();
+        /**
+         * Requests taken from the command loop's queue that wait for the
+         * requests before them. Only used on the command loop.
+         */
+        private Deque<String> deferred = new ArrayDeque<>();
+        /**
+         * If a request is waiting off the command loop for its response.
+         * Only used on the command loop.
+         */
+        private boolean waiting;
+        /**
+         * Position in the read buffer up to which no terminator exists
+         */
+        private int scanned;
+
+        /**
+         * Double the read buffer if the frame size limit allows it.
+         * @return If the buffer could grow
+         */
+        private boolean grow() {
+            if (in.capacity() >= MAX_FRAME_SIZE) {
+                return false;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            larger.put(in);
+            in = larger;
+            return true;
+        }
+
+        /**
+         * Move every complete frame of the read buffer to the pending
+         * requests. The buffer is scanned once and the unread bytes are
+         * shifted to the front once, however many frames were read.
+         */
+        private void frame() {
+            int end = in.position();
+            byte[] bytes = in.array();
+            int start = 0;
+            for (int i = scanned; i < end; i++) {
+                if (bytes[i] == FRAME_END) {
+                    String frame = new String(bytes, start, i + 1 - start,
+                            StandardCharsets.UTF_8).trim();
+                    if (!frame.isEmpty()) {
+                        pending.add(frame);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start > 0) {
+                in.flip();
+                in.position(start);
+                in.compact();
+            }
+            scanned = in.position();
+        }
+
+        /**
+         * Queue a response to be written back to the client.
+         * @param response The response
+         */
+        private void queue(String response) {
+            ByteBuffer buffer = ByteBuffer.wrap((response + NEW_LINE)
+                    .getBytes(StandardCharsets.UTF_8));
+            queued += buffer.remaining();
+            out.add(buffer);
+        }
+    }
+}